@@ -0,0 +1,206 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummary;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryRepository;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryWriter;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketTransactionRepository;
+import com.sypexfs.msin_bourse_enligne.market.service.MarketSummaryHistoryRecorder;
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderBookSnapshotStore;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderJournal;
+import com.sypexfs.msin_bourse_enligne.trading.repository.MarketOrderbookWriter;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderHistoryRepository;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderRepository;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Matching engine wired with in-memory stubs for the benchmarks
+ * Repositories accept every write and find nothing, transactions do nothing, the journal is disabled and
+ * executions, public orderbook and market summary writes are dropped instead of reaching the database
+ */
+final class BenchmarkSupport {
+
+    static final String SYMBOL = "BENCH";
+
+    static {
+        // The engine logs every order at INFO, which would be most of what gets measured
+        ((Logger) LoggerFactory.getLogger("com.sypexfs")).setLevel(Level.WARN);
+    }
+
+    private BenchmarkSupport() {
+    }
+
+    static OrderMatchingEngine newEngine() {
+        return newEngine(new OrderJournal());
+    }
+
+    static OrderMatchingEngine newEngine(OrderJournal journal) {
+        OrderMatchingEngine engine = new OrderMatchingEngine(
+            stub(OrderRepository.class),
+            stub(OrderHistoryRepository.class),
+            new MarketDataService(stub(MarketSummaryRepository.class), stub(MarketTransactionRepository.class),
+                new DiscardingSummaryWriter(), new DiscardingHistoryRecorder()),
+            new DiscardingPipeline(),
+            journal,
+            new OrderBookSnapshotStore(),
+            new DiscardingOrderbookWriter(),
+            new TransactionTemplate(stub(PlatformTransactionManager.class)));
+        set(engine, "configuredShards", 1);
+        set(engine, "defaultStpMode", SelfTradePrevention.CANCEL_NEWEST);
+        set(engine, "marketCloseTime", "15:30");
+        set(engine, "tradingDays", List.of("MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY"));
+        engine.initShards();
+        return engine;
+    }
+
+    static Order limitOrder(long id, long userId, boolean buy, BigDecimal price, BigDecimal quantity) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId(userId);
+        order.setSymbol(SYMBOL);
+        order.setSign(buy ? 1 : -1);
+        order.setOrderTypeId("LIMIT");
+        order.setPrice(price);
+        order.setQuantity(quantity);
+        order.setExecQty(BigDecimal.ZERO);
+        order.setStatId("PENDING");
+        order.setDateEntry(LocalDateTime.now());
+        return order;
+    }
+
+    static Order marketOrder(long id, long userId, boolean buy, BigDecimal quantity) {
+        Order order = limitOrder(id, userId, buy, null, quantity);
+        order.setOrderTypeId("MARKET");
+        return order;
+    }
+
+    /**
+     * Drop the market data events a book records, the feed publishers do this in production
+     */
+    static void drainFeeds(OrderBook orderBook) {
+        orderBook.drainOrderEvents();
+        orderBook.drainDepthUpdates();
+    }
+
+    static Order stopOrder(long id, long userId, boolean buy, BigDecimal stopPrice, BigDecimal quantity) {
+        Order order = limitOrder(id, userId, buy, null, quantity);
+        order.setOrderTypeId("STOP");
+        order.setStopPrice(stopPrice);
+        return order;
+    }
+
+    /**
+     * Price of the i-th level away from 100.00, one tick of 0.01 per level
+     */
+    static BigDecimal levelPrice(boolean buy, int level) {
+        return BigDecimal.valueOf(buy ? 9999 - level : 10001 + level, 2);
+    }
+
+    /**
+     * Repository accepting every write: saves return their argument, finders find nothing
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + "Stub";
+                };
+            }
+            Class<?> returnType = method.getReturnType();
+            if (method.getName().startsWith("save")) {
+                return args[0];
+            }
+            if (returnType == Optional.class) {
+                return Optional.empty();
+            }
+            if (List.class.isAssignableFrom(returnType)) {
+                return List.of();
+            }
+            if (returnType == boolean.class) {
+                return false;
+            }
+            if (returnType == int.class) {
+                return 0;
+            }
+            if (returnType == long.class) {
+                return 0L;
+            }
+            return null;
+        });
+    }
+
+    private static void set(Object target, String field, Object value) {
+        try {
+            Field f = target.getClass().getDeclaredField(field);
+            f.setAccessible(true);
+            f.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot set " + field, e);
+        }
+    }
+
+    private static final class DiscardingPipeline extends ExecutionPersistencePipeline {
+
+        DiscardingPipeline() {
+            super(null, null, null, null, null, null, null, null, null);
+        }
+
+        @Override
+        public void publishAfterCommit(List<ExecutionEvent> events) {
+        }
+    }
+
+    private static final class DiscardingOrderbookWriter extends MarketOrderbookWriter {
+
+        DiscardingOrderbookWriter() {
+            super(null);
+        }
+
+        @Override
+        public void setQuantity(Long orderId, BigDecimal quantity) {
+        }
+
+        @Override
+        public void markDeleted(Collection<Long> orderIds) {
+        }
+    }
+
+    private static final class DiscardingSummaryWriter extends MarketSummaryWriter {
+
+        DiscardingSummaryWriter() {
+            super(null);
+        }
+
+        @Override
+        public MarketSummary applyLastTrade(String symbol, BigDecimal price, BigDecimal quantity, BigDecimal open,
+                                            BigDecimal high, BigDecimal low, BigDecimal variation, LocalDateTime timestamp) {
+            return null;
+        }
+    }
+
+    private static final class DiscardingHistoryRecorder extends MarketSummaryHistoryRecorder {
+
+        DiscardingHistoryRecorder() {
+            super(null);
+        }
+
+        @Override
+        public void record(MarketSummary summary) {
+        }
+    }
+}
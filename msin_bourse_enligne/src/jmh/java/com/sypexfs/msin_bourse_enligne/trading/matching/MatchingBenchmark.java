@@ -0,0 +1,108 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orders through OrderMatchingEngine.processOrder against 1k to 1M resting sell orders
+ * Repositories are in-memory stubs, see {@link BenchmarkSupport}. Every consumed resting
+ * order is re-entered at the back of the best level so the book keeps its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingBenchmark {
+
+    private static final int LEVELS = 1000;
+    private static final long RESTING_USER = 1;
+    private static final long AGGRESSOR_USER = 2;
+    private static final BigDecimal QUANTITY = new BigDecimal("10");
+    private static final BigDecimal SWEEP_QUANTITY = new BigDecimal("100");
+
+    @Param({"1000", "100000", "1000000"})
+    public int restingOrders;
+
+    private OrderMatchingEngine engine;
+    private OrderBook orderBook;
+    private BigDecimal bestAsk;
+    private BigDecimal passiveBid;
+    private long nextId;
+    private int operations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = BenchmarkSupport.newEngine();
+        orderBook = engine.initializeOrderBook(BenchmarkSupport.SYMBOL);
+        for (int i = 0; i < restingOrders; i++) {
+            orderBook.addOrder(BenchmarkSupport.limitOrder(++nextId, RESTING_USER, false,
+                BenchmarkSupport.levelPrice(false, i % LEVELS), QUANTITY));
+        }
+        bestAsk = BenchmarkSupport.levelPrice(false, 0);
+        passiveBid = BenchmarkSupport.levelPrice(true, 10);
+        BenchmarkSupport.drainFeeds(orderBook);
+    }
+
+    /**
+     * Limit order filling exactly one resting order
+     */
+    @Benchmark
+    public MatchingResult limitOrderOneFill() {
+        MatchingResult result = engine.processOrder(
+            BenchmarkSupport.limitOrder(++nextId, AGGRESSOR_USER, true, bestAsk, QUANTITY));
+        replenish(1);
+        return result;
+    }
+
+    /**
+     * Market order filling exactly one resting order
+     */
+    @Benchmark
+    public MatchingResult marketOrderOneFill() {
+        MatchingResult result = engine.processOrder(
+            BenchmarkSupport.marketOrder(++nextId, AGGRESSOR_USER, true, QUANTITY));
+        replenish(1);
+        return result;
+    }
+
+    /**
+     * Market order sweeping ten resting orders
+     */
+    @Benchmark
+    public MatchingResult marketOrderTenFills() {
+        MatchingResult result = engine.processOrder(
+            BenchmarkSupport.marketOrder(++nextId, AGGRESSOR_USER, true, SWEEP_QUANTITY));
+        replenish(10);
+        return result;
+    }
+
+    /**
+     * Limit order that does not cross and rests, then is cancelled
+     */
+    @Benchmark
+    public MatchingResult limitOrderRests() {
+        Order order = BenchmarkSupport.limitOrder(++nextId, AGGRESSOR_USER, true, passiveBid, QUANTITY);
+        MatchingResult result = engine.processOrder(order);
+        orderBook.removeOrder(order.getId());
+        drainEvery1024();
+        return result;
+    }
+
+    private void replenish(int orders) {
+        for (int i = 0; i < orders; i++) {
+            orderBook.addOrder(BenchmarkSupport.limitOrder(++nextId, RESTING_USER, false, bestAsk, QUANTITY));
+        }
+        drainEvery1024();
+    }
+
+    private void drainEvery1024() {
+        if ((++operations & 1023) == 0) {
+            BenchmarkSupport.drainFeeds(orderBook);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order book primitives against books of 1k to 1M resting orders spread over 1000 levels per side
+ * Run with -prof gc for allocation per operation
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    private static final int LEVELS = 1000;
+    private static final int POOL = 1024;
+    private static final BigDecimal QUANTITY = new BigDecimal("10");
+
+    @Param({"1000", "100000", "1000000"})
+    public int restingOrders;
+
+    private OrderBook orderBook;
+    private Order[] resting;
+    private Order[] incoming;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        orderBook = new OrderBook(BenchmarkSupport.SYMBOL);
+        resting = new Order[restingOrders];
+        for (int i = 0; i < restingOrders; i++) {
+            boolean buy = (i & 1) == 0;
+            resting[i] = BenchmarkSupport.limitOrder(i + 1, 1, buy, BenchmarkSupport.levelPrice(buy, (i / 2) % LEVELS), QUANTITY);
+            orderBook.addOrder(resting[i]);
+        }
+        incoming = new Order[POOL];
+        for (int i = 0; i < POOL; i++) {
+            boolean buy = (i & 1) == 0;
+            incoming[i] = BenchmarkSupport.limitOrder(restingOrders + i + 1, 2, buy,
+                BenchmarkSupport.levelPrice(buy, (i * 7) % LEVELS), QUANTITY);
+        }
+        BenchmarkSupport.drainFeeds(orderBook);
+    }
+
+    /**
+     * New order joining the back of a level, then cancelled
+     */
+    @Benchmark
+    public boolean addAndRemove() {
+        Order order = incoming[next++ & (POOL - 1)];
+        orderBook.addOrder(order);
+        boolean removed = orderBook.removeOrder(order.getId());
+        drainEvery1024();
+        return removed;
+    }
+
+    /**
+     * Cancel of an order from the middle of a level, then re-entered at the back
+     */
+    @Benchmark
+    public boolean removeAndReAdd() {
+        Order order = resting[(int) ((next++ * 7919L) % restingOrders)];
+        boolean removed = orderBook.removeOrder(order.getId());
+        orderBook.addOrder(order);
+        drainEvery1024();
+        return removed;
+    }
+
+    @Benchmark
+    public OrderBookDepth getDepth() {
+        return orderBook.getDepth(10);
+    }
+
+    @Benchmark
+    public OrderBookStats getStats() {
+        return orderBook.getStats();
+    }
+
+    private void drainEvery1024() {
+        if ((next & 1023) == 0) {
+            BenchmarkSupport.drainFeeds(orderBook);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import com.sypexfs.msin_bourse_enligne.trading.journal.JournalEventType;
+import com.sypexfs.msin_bourse_enligne.trading.journal.JournalRecord;
+import com.sypexfs.msin_bourse_enligne.trading.journal.JournalReplay;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderJournal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Replays a recorded order journal through a fresh matching engine, as fast as it goes
+ * The input records are the ones the engine received: ACCEPTED orders, CANCELs and AMENDs.
+ * FILL, REDUCE and STOP_TRIGGER records are what the engine produced and are not fed
+ * back; the recorded FILLs are compared with the replayed ones instead. An order accepted
+ * again (startup reload) is only entered the first time.
+ *
+ * Nothing depends on the wall clock: DAY and GTD orders are entered without their expiry
+ * and their recorded expiry CANCELs remove them. Self-trade prevention always uses the
+ * engine default, the journal does not carry the order's mode.
+ *
+ * Output directory:
+ * - fills.txt: sequence of the input record, symbol, aggressor, passive order, price ticks, lots
+ * - books.txt: the books left at the end, resting orders in priority order then stops
+ * Both are plain text so two engine versions can be compared with diff; their SHA-256
+ * is printed with the timings of each iteration.
+ *
+ * Usage: mvn -Pbenchmark compile exec:java
+ *   -Dexec.mainClass=com.sypexfs.msin_bourse_enligne.trading.matching.OrderStreamReplay
+ *   -Dexec.args="journalDir outputDir [iterations]"
+ */
+public final class OrderStreamReplay {
+
+    private final List<JournalRecord> input = new ArrayList<>();
+    private final List<String> recordedFills = new ArrayList<>();
+
+    private OrderStreamReplay(Path journalDir) {
+        OrderJournal.read(journalDir, 0, record -> {
+            switch (record.getType()) {
+                case ACCEPTED, CANCEL, AMEND -> input.add(record);
+                case FILL -> recordedFills.add(fill(record.getSymbol(), record.getOrderId(), record.getRefOrderId(),
+                    record.getPriceTicks(), record.getLots()));
+                default -> {
+                }
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: OrderStreamReplay <journalDir> <outputDir> [iterations]");
+            System.exit(2);
+        }
+        Path outputDir = Paths.get(args[1]);
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+
+        OrderStreamReplay replay = new OrderStreamReplay(Paths.get(args[0]));
+        System.out.printf("Loaded %d input records and %d recorded fills%n", replay.input.size(), replay.recordedFills.size());
+
+        Files.createDirectories(outputDir);
+        String firstDigest = null;
+        for (int i = 1; i <= iterations; i++) {
+            Run run = replay.run();
+            run.write(outputDir);
+            String digest = run.digest();
+            System.out.printf("Iteration %d: %s%n", i, run.timings());
+            System.out.printf("  fills %d, sha-256 %s%n", run.fills.size(), digest);
+            if (firstDigest == null) {
+                firstDigest = digest;
+                System.out.println("  " + replay.compareWithRecording(run.fills));
+            } else if (!firstDigest.equals(digest)) {
+                System.out.println("  NOT DETERMINISTIC: output differs from iteration 1");
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Feed every input record through a new engine
+     */
+    private Run run() {
+        // Orders are mutated by the engine, each run gets its own copies, made before timing starts
+        List<Order> orders = new ArrayList<>(input.size());
+        for (JournalRecord record : input) {
+            orders.add(toOrder(record));
+        }
+
+        Run run = new Run(input.size());
+        OrderMatchingEngine engine = BenchmarkSupport.newEngine(run.fillCollector);
+        Set<Long> accepted = new HashSet<>();
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < input.size(); i++) {
+            JournalRecord record = input.get(i);
+            Order order = orders.get(i);
+            run.fillCollector.sequence = record.getSequence();
+            long eventStart = System.nanoTime();
+            switch (record.getType()) {
+                case ACCEPTED -> {
+                    if (accepted.add(record.getOrderId())) {
+                        engine.processOrder(order);
+                    }
+                }
+                case AMEND -> engine.amendOrder(order);
+                default -> engine.cancelOrder(order);
+            }
+            run.latencies[i] = System.nanoTime() - eventStart;
+
+            // Nobody reads the market data feeds here
+            if ((i & 1023) == 0) {
+                OrderBook orderBook = engine.getOrderBook(record.getSymbol());
+                if (orderBook != null) {
+                    BenchmarkSupport.drainFeeds(orderBook);
+                }
+            }
+        }
+        run.elapsedNanos = System.nanoTime() - startedAt;
+        run.books = books(engine);
+        return run;
+    }
+
+    /**
+     * Replayed fills against the FILL records of the recording, the sequence column aside
+     */
+    private String compareWithRecording(List<String> fills) {
+        int count = Math.min(fills.size(), recordedFills.size());
+        for (int i = 0; i < count; i++) {
+            if (!withoutSequence(fills.get(i)).equals(recordedFills.get(i))) {
+                return "differs from the recorded fills at fill " + (i + 1) + ": replayed [" + fills.get(i)
+                    + "], recorded [" + recordedFills.get(i) + "]";
+            }
+        }
+        if (fills.size() != recordedFills.size()) {
+            return "differs from the recorded fills: " + fills.size() + " replayed, " + recordedFills.size() + " recorded";
+        }
+        return "matches the recorded fills";
+    }
+
+    private static Order toOrder(JournalRecord record) {
+        if (record.getType() == JournalEventType.CANCEL) {
+            Order order = new Order();
+            order.setId(record.getOrderId());
+            order.setUserId(record.getUserId());
+            order.setSymbol(record.getSymbol());
+            order.setSign((int) record.getSide());
+            return order;
+        }
+        Order order = JournalReplay.toOrder(record);
+        if ("DAY".equals(order.getExpiryTypeId()) || "GTD".equals(order.getExpiryTypeId())) {
+            order.setExpiryTypeId("GTC");
+            order.setDateExpiry(null);
+            order.setTimeExpiry(null);
+        }
+        return order;
+    }
+
+    private static List<String> books(OrderMatchingEngine engine) {
+        List<String> lines = new ArrayList<>();
+        for (String symbol : new TreeSet<>(engine.getAllSymbols())) {
+            OrderBook orderBook = engine.getOrderBook(symbol);
+            for (Order order : orderBook.getBuyOrders()) {
+                lines.add(bookLine(symbol, "BUY", order, order.getPrice()));
+            }
+            for (Order order : orderBook.getSellOrders()) {
+                lines.add(bookLine(symbol, "SELL", order, order.getPrice()));
+            }
+            List<Order> stops = new ArrayList<>(orderBook.getStopOrders());
+            stops.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+            for (Order order : stops) {
+                lines.add(bookLine(symbol, order.getSign() > 0 ? "BUY_STOP" : "SELL_STOP", order, order.getStopPrice()));
+            }
+        }
+        return lines;
+    }
+
+    private static String bookLine(String symbol, String side, Order order, BigDecimal price) {
+        return symbol + " " + side + " " + order.getId() + " " + FixedPoint.toTicks(price) + " "
+            + FixedPoint.toLots(order.getRemainingQuantity());
+    }
+
+    private static String fill(String symbol, long aggressorId, long passiveId, long priceTicks, long lots) {
+        return symbol + " " + aggressorId + " " + passiveId + " " + priceTicks + " " + lots;
+    }
+
+    private static String withoutSequence(String fill) {
+        return fill.substring(fill.indexOf(' ') + 1);
+    }
+
+    /**
+     * Collects the fills the engine journals, which include those of triggered stops
+     * The journal itself stays disabled, nothing is written
+     */
+    private static final class FillCollector extends OrderJournal {
+        private final List<String> fills = new ArrayList<>();
+        private long sequence;
+
+        @Override
+        public long fill(Order aggressor, Order passive, long lots, long priceTicks) {
+            fills.add(sequence + " " + OrderStreamReplay.fill(aggressor.getSymbol(), aggressor.getId(), passive.getId(), priceTicks, lots));
+            return 0;
+        }
+    }
+
+    private static final class Run {
+        private final long[] latencies;
+        private final FillCollector fillCollector = new FillCollector();
+        private final List<String> fills = fillCollector.fills;
+        private List<String> books;
+        private long elapsedNanos;
+
+        Run(int events) {
+            this.latencies = new long[events];
+        }
+
+        String timings() {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            double seconds = elapsedNanos / 1e9;
+            return String.format("%d events in %.3f s, %.0f events/s, latency us p50 %.1f p99 %.1f p99.9 %.1f max %.1f",
+                sorted.length, seconds, sorted.length / seconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted.length > 0 ? sorted[sorted.length - 1] / 1e3 : 0);
+        }
+
+        void write(Path outputDir) {
+            writeLines(outputDir.resolve("fills.txt"), fills);
+            writeLines(outputDir.resolve("books.txt"), books);
+        }
+
+        String digest() {
+            try {
+                MessageDigest sha = MessageDigest.getInstance("SHA-256");
+                for (String line : fills) {
+                    sha.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                sha.update((byte) 0);
+                for (String line : books) {
+                    sha.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                return HexFormat.of().formatHex(sha.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1e3;
+        }
+
+        private static void writeLines(Path file, List<String> lines) {
+            try (Writer writer = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write " + file, e);
+            }
+        }
+    }
+}
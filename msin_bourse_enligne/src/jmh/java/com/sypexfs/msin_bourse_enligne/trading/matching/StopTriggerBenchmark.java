@@ -0,0 +1,61 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stop order scans after a trade, with 1k to 1M buy stops over 1000 stop prices above the market
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StopTriggerBenchmark {
+
+    private static final int STOP_PRICES = 1000;
+    private static final BigDecimal QUANTITY = new BigDecimal("10");
+
+    @Param({"1000", "100000", "1000000"})
+    public int stopOrders;
+
+    private OrderBook orderBook;
+    private long tradeBelowStops;
+    private long tradeAtFirstStop;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        orderBook = new OrderBook(BenchmarkSupport.SYMBOL);
+        for (int i = 0; i < stopOrders; i++) {
+            orderBook.addStopOrder(BenchmarkSupport.stopOrder(i + 1, 1, true,
+                BenchmarkSupport.levelPrice(false, 100 + i % STOP_PRICES), QUANTITY));
+        }
+        tradeBelowStops = FixedPoint.toTicks(BenchmarkSupport.levelPrice(false, 0));
+        tradeAtFirstStop = FixedPoint.toTicks(BenchmarkSupport.levelPrice(false, 100));
+    }
+
+    /**
+     * The common case: a trade that triggers nothing
+     */
+    @Benchmark
+    public List<Order> tradeTriggersNone() {
+        return orderBook.triggerStops(tradeBelowStops, tradeBelowStops);
+    }
+
+    /**
+     * A trade reaching the first stop price, the triggered stops are put back for the next call
+     */
+    @Benchmark
+    public List<Order> tradeTriggersOnePrice() {
+        List<Order> triggered = orderBook.triggerStops(tradeAtFirstStop, tradeAtFirstStop);
+        for (Order order : triggered) {
+            orderBook.addStopOrder(order);
+        }
+        return triggered;
+    }
+}
@@ -1,6 +1,7 @@
 package com.sypexfs.msin_bourse_enligne.config;
 
 import com.sypexfs.msin_bourse_enligne.market.websocket.MarketWebSocketHandler;
+import com.sypexfs.msin_bourse_enligne.trading.websocket.MarketByOrderWebSocketHandler;
 import com.sypexfs.msin_bourse_enligne.trading.websocket.TradingWebSocketHandler;
 import com.sypexfs.msin_bourse_enligne.portfolio.websocket.PortfolioWebSocketHandler;
 import lombok.RequiredArgsConstructor;
@@ -17,6 +18,7 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
     private final MarketWebSocketHandler marketWebSocketHandler;
     private final TradingWebSocketHandler tradingWebSocketHandler;
+    private final MarketByOrderWebSocketHandler marketByOrderWebSocketHandler;
     private final PortfolioWebSocketHandler portfolioWebSocketHandler;
     private final WebSocketAuthInterceptor webSocketAuthInterceptor;
 
@@ -32,6 +34,11 @@ public class WebSocketConfig implements WebSocketConfigurer {
                 .addInterceptors(webSocketAuthInterceptor)
                 .setAllowedOriginPatterns("*");
         
+        // Sequenced market-by-order feed with JWT authentication
+        registry.addHandler(marketByOrderWebSocketHandler, "/ws/mbo")
+                .addInterceptors(webSocketAuthInterceptor)
+                .setAllowedOriginPatterns("*");
+        
         // Portfolio WebSocket with JWT authentication
         registry.addHandler(portfolioWebSocketHandler, "/ws/portfolio")
                 .addInterceptors(webSocketAuthInterceptor)
@@ -1,14 +1,20 @@
 package com.sypexfs.msin_bourse_enligne.market.controller;
 
 import com.sypexfs.msin_bourse_enligne.common.dto.ApiResponse;
+import com.sypexfs.msin_bourse_enligne.market.dto.BulkLoadResult;
+import com.sypexfs.msin_bourse_enligne.market.service.MarketDataBulkLoader;
 import com.sypexfs.msin_bourse_enligne.market.service.MarketIndexSeederService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -17,6 +23,7 @@ import java.util.Map;
 public class MarketIndexSeederController {
 
     private final MarketIndexSeederService seederService;
+    private final MarketDataBulkLoader bulkLoader;
 
     // Seed MASI intraday data for today
     @PostMapping("/masi/today")
@@ -95,6 +102,21 @@ public class MarketIndexSeederController {
         return ResponseEntity.ok(ApiResponse.success(result, "All indices seeded successfully"));
     }
 
+    // Stream history into a market_schema table with COPY, the body is the data sent as text/csv or application/octet-stream
+    @PostMapping("/bulk/{table}")
+    public ResponseEntity<ApiResponse<BulkLoadResult>> bulkLoad(
+            @PathVariable String table,
+            @RequestParam(defaultValue = "CSV") MarketDataBulkLoader.Format format,
+            @RequestParam(required = false) List<String> columns,
+            @RequestParam(defaultValue = "true") boolean header,
+            HttpServletRequest request) throws IOException, SQLException {
+
+        BulkLoadResult result = bulkLoader.load(table, request.getInputStream(), format, columns, header,
+                request.getContentLengthLong());
+
+        return ResponseEntity.ok(ApiResponse.success(result, "Bulk load completed successfully"));
+    }
+
     // Clear all MASI data
     @DeleteMapping("/masi")
     public ResponseEntity<ApiResponse<String>> clearMasiData() {
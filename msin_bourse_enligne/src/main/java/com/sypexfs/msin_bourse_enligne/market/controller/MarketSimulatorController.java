@@ -1,6 +1,8 @@
 package com.sypexfs.msin_bourse_enligne.market.controller;
 
+import com.sypexfs.msin_bourse_enligne.market.dto.LoadGeneratorSettings;
 import com.sypexfs.msin_bourse_enligne.market.simulator.MarketPriceSimulatorThread;
+import com.sypexfs.msin_bourse_enligne.market.simulator.OrderLoadGenerator;
 import com.sypexfs.msin_bourse_enligne.market.simulator.OrderbookSimulatorThread;
 import com.sypexfs.msin_bourse_enligne.market.simulator.TransactionSimulatorThread;
 import com.sypexfs.msin_bourse_enligne.market.simulator.IndexSimulatorThread;
@@ -26,6 +28,7 @@ public class MarketSimulatorController {
 
     private final TransactionSimulatorThread transactionSimulator;
     private final IndexSimulatorThread indexSimulator;
+    private final OrderLoadGenerator loadGenerator;
 
     /**
      * Start all simulators
@@ -78,6 +81,7 @@ public class MarketSimulatorController {
             orderbookSimulator.stopSimulator();
             transactionSimulator.stopSimulator();
             indexSimulator.stopSimulator();
+            loadGenerator.stop();
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -238,6 +242,58 @@ public class MarketSimulatorController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Start a load generation run, settings left out keep their default
+     */
+    @PostMapping("/load/start")
+    public ResponseEntity<Map<String, Object>> startLoadGenerator(@RequestBody(required = false) LoadGeneratorSettings settings) {
+        log.info("Starting load generator");
+        
+        Map<String, Object> response = new HashMap<>();
+        try {
+            loadGenerator.start(settings != null ? settings : new LoadGeneratorSettings());
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        response.put("success", true);
+        response.put("message", "Load generator started");
+        response.put("running", loadGenerator.isRunning());
+        
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Stop the load generation run
+     */
+    @PostMapping("/load/stop")
+    public ResponseEntity<Map<String, Object>> stopLoadGenerator() {
+        log.info("Stopping load generator");
+        
+        loadGenerator.stop();
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Load generator stopped");
+        response.put("report", loadGenerator.getReport());
+        
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Rates, ack latency and fan-out lag of the current or last load generation run
+     */
+    @GetMapping("/load/report")
+    public ResponseEntity<Map<String, Object>> getLoadReport() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("report", loadGenerator.getReport());
+        
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Get status of all simulators
      */
@@ -260,6 +316,7 @@ public class MarketSimulatorController {
 
         status.put("transactionSimulator", transactionSimulator.isRunning());
         status.put("indexSimulator", indexSimulator.isRunning());
+        status.put("loadGenerator", loadGenerator.isRunning());
         return status;
     }
 }
@@ -0,0 +1,22 @@
+package com.sypexfs.msin_bourse_enligne.market.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk load into a market_schema table
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkLoadResult {
+
+    private String table;
+    private List<String> columns;
+    private long rows;
+    private long bytes;
+    private long elapsedMillis;
+}
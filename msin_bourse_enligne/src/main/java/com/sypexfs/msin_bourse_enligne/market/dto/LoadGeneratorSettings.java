@@ -0,0 +1,36 @@
+package com.sypexfs.msin_bourse_enligne.market.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Settings of a load generation run, every field has a default
+ * The order type mix is in percent of the orders sent, whatever is left after market,
+ * stop and cancel goes to limit orders.
+ */
+@Data
+@NoArgsConstructor
+public class LoadGeneratorSettings {
+
+    private int ordersPerSecond = 500;
+    private int durationSeconds = 60; // 0 = until stopped
+    private int threads = 8;
+
+    private List<String> symbols = List.of("ADH", "AFG", "AFI", "AFM");
+    private long firstUserId = 1;
+    private int users = 100;
+
+    private int marketPercent = 10;
+    private int stopPercent = 5;
+    private int cancelPercent = 15;
+
+    // Price used for a symbol whose book is empty
+    private BigDecimal referencePrice = BigDecimal.valueOf(100);
+
+    // WebSocket subscribers to /ws/market, each on the order book and depth channels of every symbol
+    private int subscribers = 0;
+    private String subscriberUsername;
+}
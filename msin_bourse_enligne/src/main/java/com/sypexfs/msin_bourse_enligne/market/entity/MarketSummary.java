@@ -13,7 +13,7 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "market_summaries", schema = "market_schema",
         indexes = {
-                @Index(name = "idx_summaries_symbol", columnList = "symbol"),
+                @Index(name = "uk_summaries_symbol", columnList = "symbol", unique = true),
                 @Index(name = "idx_summaries_sec_id", columnList = "sec_id")
         })
 @EntityListeners(AuditingEntityListener.class)
@@ -35,7 +35,8 @@ public class MarketSummary {
     @Column(name = "open_close_indicator", length = 10)
     private String openCloseIndicator;
 
-    @Column(length = 20)
+    // One row per symbol, the current state; past states go to market_summary_history (V18)
+    @Column(length = 20, nullable = false)
     private String symbol;
 
     @Column(length = 255)
@@ -0,0 +1,107 @@
+package com.sypexfs.msin_bourse_enligne.market.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Append-only snapshot of a market summary, one row per write of the current state
+ * Rows are inserted in batches by MarketSummaryHistoryRecorder, never updated
+ */
+@Entity
+@Table(name = "market_summary_history", schema = "market_schema",
+        indexes = {
+                @Index(name = "idx_summary_history_symbol_date", columnList = "symbol, date_trans")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MarketSummaryHistory {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 20, nullable = false)
+    private String symbol;
+
+    @Column(name = "sec_id", length = 50)
+    private String secId;
+
+    @Column(precision = 15, scale = 4)
+    private BigDecimal price;
+
+    @Column(precision = 10, scale = 4)
+    private BigDecimal variation;
+
+    @Column(name = "opening_price", precision = 15, scale = 4)
+    private BigDecimal openingPrice;
+
+    @Column(name = "closing_price", precision = 15, scale = 4)
+    private BigDecimal closingPrice;
+
+    @Column(name = "higher_price", precision = 15, scale = 4)
+    private BigDecimal higherPrice;
+
+    @Column(name = "lower_price", precision = 15, scale = 4)
+    private BigDecimal lowerPrice;
+
+    @Column(precision = 15, scale = 4)
+    private BigDecimal vwap;
+
+    @Column(precision = 15, scale = 2)
+    private BigDecimal quantity;
+
+    @Column(precision = 15, scale = 2)
+    private BigDecimal volume;
+
+    @Column(name = "date_trans", nullable = false)
+    private LocalDateTime dateTrans;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public static MarketSummaryHistory of(MarketSummary summary) {
+        MarketSummaryHistory history = new MarketSummaryHistory();
+        history.setSymbol(summary.getSymbol());
+        history.setSecId(summary.getSecId());
+        history.setPrice(summary.getPrice());
+        history.setVariation(summary.getVariation());
+        history.setOpeningPrice(summary.getOpeningPrice());
+        history.setClosingPrice(summary.getClosingPrice());
+        history.setHigherPrice(summary.getHigherPrice());
+        history.setLowerPrice(summary.getLowerPrice());
+        history.setVwap(summary.getVwap());
+        history.setQuantity(summary.getQuantity());
+        history.setVolume(summary.getVolume());
+        LocalDateTime now = LocalDateTime.now();
+        history.setDateTrans(summary.getDateTrans() != null ? summary.getDateTrans() : now);
+        history.setCreatedAt(now);
+        return history;
+    }
+
+    /**
+     * The snapshot as a summary, for the callers of the summary date range queries
+     */
+    public MarketSummary toSummary() {
+        MarketSummary summary = new MarketSummary();
+        summary.setSymbol(symbol);
+        summary.setSecId(secId);
+        summary.setPrice(price);
+        summary.setVariation(variation);
+        summary.setOpeningPrice(openingPrice);
+        summary.setClosingPrice(closingPrice);
+        summary.setHigherPrice(higherPrice);
+        summary.setLowerPrice(lowerPrice);
+        summary.setVwap(vwap);
+        summary.setQuantity(quantity);
+        summary.setVolume(volume);
+        summary.setDateTrans(dateTrans);
+        summary.setCreatedAt(createdAt);
+        return summary;
+    }
+}
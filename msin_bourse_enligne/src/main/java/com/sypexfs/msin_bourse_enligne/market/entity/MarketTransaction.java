@@ -25,7 +25,8 @@ import java.time.LocalDateTime;
 public class MarketTransaction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "market_transactions_seq")
+    @SequenceGenerator(name = "market_transactions_seq", sequenceName = "market_transactions_seq", schema = "market_schema", allocationSize = 50)
     private Long id;
 
     @Column(name = "market_place", length = 50)
@@ -34,7 +35,8 @@ public class MarketTransaction {
     @Column(name = "sec_id", length = 50)
     private String secId;
 
-    @Column(name = "exec_id", unique = true, nullable = false, length = 100)
+    // Unique together with date_trans, the partition key (V16)
+    @Column(name = "exec_id", nullable = false, length = 100)
     private String execId;
 
     @Column(name = "exec_type", length = 50)
@@ -0,0 +1,19 @@
+package com.sypexfs.msin_bourse_enligne.market.repository;
+
+import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummaryHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MarketSummaryHistoryRepository extends JpaRepository<MarketSummaryHistory, Long> {
+
+    @Query("SELECT h FROM MarketSummaryHistory h WHERE h.symbol = :symbol AND h.dateTrans BETWEEN :startDate AND :endDate ORDER BY h.dateTrans")
+    List<MarketSummaryHistory> findBySymbolAndDateRange(@Param("symbol") String symbol,
+                                                         @Param("startDate") LocalDateTime startDate,
+                                                         @Param("endDate") LocalDateTime endDate);
+}
@@ -8,18 +8,17 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface MarketSummaryRepository extends JpaRepository<MarketSummary, Long> {
 
+    // Unique on symbol (V18), served by uk_summaries_symbol
     Optional<MarketSummary> findBySymbol(String symbol);
 
-    List<MarketSummary> findBySymbolOrderByDateTransDesc(String symbol);
-
-    @Query("SELECT s FROM MarketSummary s WHERE s.symbol = :symbol ORDER BY s.dateTrans DESC")
-    Optional<MarketSummary> findLatestBySymbol(@Param("symbol") String symbol);
+    List<MarketSummary> findBySymbolIn(Collection<String> symbols);
 
     @Query("SELECT s FROM MarketSummary s ORDER BY s.variation DESC")
     List<MarketSummary> findTopGainers(Pageable pageable);
@@ -32,9 +31,4 @@ public interface MarketSummaryRepository extends JpaRepository<MarketSummary, Lo
 
     @Query("SELECT s FROM MarketSummary s WHERE s.dateTrans >= :startDate ORDER BY s.dateTrans DESC")
     List<MarketSummary> findRecentSummaries(@Param("startDate") LocalDateTime startDate);
-
-    @Query("SELECT s FROM MarketSummary s WHERE s.symbol = :symbol AND s.dateTrans BETWEEN :startDate AND :endDate ORDER BY s.dateTrans")
-    List<MarketSummary> findBySymbolAndDateRange(@Param("symbol") String symbol, 
-                                                   @Param("startDate") LocalDateTime startDate, 
-                                                   @Param("endDate") LocalDateTime endDate);
 }
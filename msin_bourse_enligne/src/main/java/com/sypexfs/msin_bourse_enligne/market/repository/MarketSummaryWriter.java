@@ -0,0 +1,183 @@
+package com.sypexfs.msin_bourse_enligne.market.repository;
+
+import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummary;
+import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummaryHistory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Upserts of the current market summary of a symbol, one row per symbol (V18)
+ * Writes never read the row first: ON CONFLICT (symbol) either creates it or updates it
+ * in place, trades accumulate the volume and extend the day range in the statement itself.
+ * Each write returns the stored row so it can be broadcast and appended to the history.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MarketSummaryWriter {
+
+    private static final RowMapper<MarketSummary> ROW_MAPPER = new BeanPropertyRowMapper<>(MarketSummary.class);
+
+    private static final String INSERT_SQL =
+        "INSERT INTO market_schema.market_summaries AS s (" +
+        "sec_id, market_place, open_close_indicator, symbol, name, last_closing_price, top, tov, " +
+        "closing_price, opening_price, date_trans, price, variation, higher_price, lower_price, " +
+        "higher_limit, lower_limit, static_higher_limit, static_lower_limit, vwap, quantity, volume, " +
+        "date_update, notional_exposer, underlying_ref_price, open_intrest, theoretical_price, auction_qty, " +
+        "auction_imbalance_qty, auction_price, auction_type, price_band_limit_sup, price_band_limit_inf, " +
+        "created_at) VALUES (" +
+        "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPSERT_SQL = INSERT_SQL +
+        " ON CONFLICT (symbol) DO UPDATE SET " +
+        "sec_id = EXCLUDED.sec_id, market_place = EXCLUDED.market_place, " +
+        "open_close_indicator = EXCLUDED.open_close_indicator, name = EXCLUDED.name, " +
+        "last_closing_price = EXCLUDED.last_closing_price, top = EXCLUDED.top, tov = EXCLUDED.tov, " +
+        "closing_price = EXCLUDED.closing_price, opening_price = EXCLUDED.opening_price, " +
+        "date_trans = EXCLUDED.date_trans, price = EXCLUDED.price, variation = EXCLUDED.variation, " +
+        "higher_price = EXCLUDED.higher_price, lower_price = EXCLUDED.lower_price, " +
+        "higher_limit = EXCLUDED.higher_limit, lower_limit = EXCLUDED.lower_limit, " +
+        "static_higher_limit = EXCLUDED.static_higher_limit, static_lower_limit = EXCLUDED.static_lower_limit, " +
+        "vwap = EXCLUDED.vwap, quantity = EXCLUDED.quantity, volume = EXCLUDED.volume, " +
+        "date_update = EXCLUDED.date_update, notional_exposer = EXCLUDED.notional_exposer, " +
+        "underlying_ref_price = EXCLUDED.underlying_ref_price, open_intrest = EXCLUDED.open_intrest, " +
+        "theoretical_price = EXCLUDED.theoretical_price, auction_qty = EXCLUDED.auction_qty, " +
+        "auction_imbalance_qty = EXCLUDED.auction_imbalance_qty, auction_price = EXCLUDED.auction_price, " +
+        "auction_type = EXCLUDED.auction_type, price_band_limit_sup = EXCLUDED.price_band_limit_sup, " +
+        "price_band_limit_inf = EXCLUDED.price_band_limit_inf " +
+        "RETURNING *";
+
+    private static final String INSERT_IF_ABSENT_SQL = INSERT_SQL + " ON CONFLICT (symbol) DO NOTHING RETURNING *";
+
+    // Public trade feed: variation against the previous trade, the day range widened by the trade
+    private static final String RECORD_TRADE_SQL =
+        "INSERT INTO market_schema.market_summaries AS s (symbol, price, quantity, volume, higher_price, lower_price, " +
+        "date_trans, date_update, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+        "ON CONFLICT (symbol) DO UPDATE SET price = EXCLUDED.price, quantity = EXCLUDED.quantity, " +
+        "volume = COALESCE(s.volume, 0) + EXCLUDED.volume, " +
+        "higher_price = GREATEST(s.higher_price, EXCLUDED.price), lower_price = LEAST(s.lower_price, EXCLUDED.price), " +
+        "variation = CASE WHEN s.price > 0 THEN ROUND((EXCLUDED.price - s.price) / s.price, 4) * 100 ELSE s.variation END, " +
+        "date_trans = EXCLUDED.date_trans, date_update = EXCLUDED.date_update " +
+        "RETURNING *";
+
+    // Matching engine: day statistics computed in memory, a null keeps the stored value
+    private static final String APPLY_LAST_TRADE_SQL =
+        "INSERT INTO market_schema.market_summaries AS s (symbol, price, volume, opening_price, higher_price, lower_price, " +
+        "variation, date_trans, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+        "ON CONFLICT (symbol) DO UPDATE SET price = EXCLUDED.price, " +
+        "volume = COALESCE(s.volume, 0) + EXCLUDED.volume, " +
+        "opening_price = COALESCE(EXCLUDED.opening_price, s.opening_price), " +
+        "higher_price = COALESCE(EXCLUDED.higher_price, s.higher_price), " +
+        "lower_price = COALESCE(EXCLUDED.lower_price, s.lower_price), " +
+        "variation = COALESCE(EXCLUDED.variation, s.variation), " +
+        "date_trans = EXCLUDED.date_trans " +
+        "RETURNING *";
+
+    private static final String APPEND_HISTORY_SQL =
+        "INSERT INTO market_schema.market_summary_history (symbol, sec_id, price, variation, opening_price, " +
+        "closing_price, higher_price, lower_price, vwap, quantity, volume, date_trans, created_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Types of values(), so null columns bind without asking the driver for the parameter types
+    private static final int[] VALUE_TYPES = {
+        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+        Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+        Types.TIMESTAMP, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+        Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+        Types.NUMERIC, Types.NUMERIC, Types.TIMESTAMP, Types.NUMERIC, Types.NUMERIC,
+        Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+        Types.VARCHAR, Types.NUMERIC, Types.NUMERIC, Types.TIMESTAMP
+    };
+
+    private static final int[] LAST_TRADE_TYPES = {
+        Types.VARCHAR, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC,
+        Types.NUMERIC, Types.TIMESTAMP, Types.TIMESTAMP
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Store the whole summary as the current state of its symbol
+     */
+    public MarketSummary upsert(MarketSummary summary) {
+        return jdbcTemplate.queryForObject(UPSERT_SQL, values(summary), VALUE_TYPES, ROW_MAPPER);
+    }
+
+    /**
+     * Create the summary of a symbol that has none, empty when one already exists
+     */
+    public Optional<MarketSummary> insertIfAbsent(MarketSummary summary) {
+        return jdbcTemplate.query(INSERT_IF_ABSENT_SQL, values(summary), VALUE_TYPES, ROW_MAPPER).stream().findFirst();
+    }
+
+    /**
+     * Apply a public trade to the summary of its symbol, creating it on the first trade
+     */
+    public MarketSummary recordTrade(String symbol, BigDecimal price, BigDecimal quantity, LocalDateTime timestamp) {
+        Timestamp at = Timestamp.valueOf(timestamp);
+        return jdbcTemplate.queryForObject(RECORD_TRADE_SQL, ROW_MAPPER,
+            symbol, price, quantity, quantity, price, price, at, at, at);
+    }
+
+    /**
+     * Apply the last trade of the matching engine with its day statistics
+     * open, high, low and variation may be null to keep the stored values
+     */
+    public MarketSummary applyLastTrade(String symbol, BigDecimal price, BigDecimal quantity, BigDecimal open,
+                                        BigDecimal high, BigDecimal low, BigDecimal variation, LocalDateTime timestamp) {
+        Timestamp at = Timestamp.valueOf(timestamp);
+        return jdbcTemplate.queryForObject(APPLY_LAST_TRADE_SQL,
+            new Object[]{symbol, price, quantity, open, high, low, variation, at, at}, LAST_TRADE_TYPES, ROW_MAPPER);
+    }
+
+    /**
+     * Append summary snapshots to the history, one batch
+     */
+    public void appendHistory(List<MarketSummaryHistory> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(APPEND_HISTORY_SQL, snapshots, snapshots.size(), (ps, snapshot) -> {
+            ps.setString(1, snapshot.getSymbol());
+            ps.setString(2, snapshot.getSecId());
+            ps.setBigDecimal(3, snapshot.getPrice());
+            ps.setBigDecimal(4, snapshot.getVariation());
+            ps.setBigDecimal(5, snapshot.getOpeningPrice());
+            ps.setBigDecimal(6, snapshot.getClosingPrice());
+            ps.setBigDecimal(7, snapshot.getHigherPrice());
+            ps.setBigDecimal(8, snapshot.getLowerPrice());
+            ps.setBigDecimal(9, snapshot.getVwap());
+            ps.setBigDecimal(10, snapshot.getQuantity());
+            ps.setBigDecimal(11, snapshot.getVolume());
+            ps.setTimestamp(12, Timestamp.valueOf(snapshot.getDateTrans()));
+            ps.setTimestamp(13, Timestamp.valueOf(snapshot.getCreatedAt()));
+        });
+    }
+
+    private static Object[] values(MarketSummary s) {
+        return new Object[]{
+            s.getSecId(), s.getMarketPlace(), s.getOpenCloseIndicator(), s.getSymbol(), s.getName(),
+            s.getLastClosingPrice(), s.getTop(), s.getTov(), s.getClosingPrice(), s.getOpeningPrice(),
+            timestamp(s.getDateTrans()), s.getPrice(), s.getVariation(), s.getHigherPrice(), s.getLowerPrice(),
+            s.getHigherLimit(), s.getLowerLimit(), s.getStaticHigherLimit(), s.getStaticLowerLimit(), s.getVwap(),
+            s.getQuantity(), s.getVolume(), timestamp(s.getDateUpdate()), s.getNotionalExposer(),
+            s.getUnderlyingRefPrice(), s.getOpenIntrest(), s.getTheoreticalPrice(), s.getAuctionQty(),
+            s.getAuctionImbalanceQty(), s.getAuctionPrice(), s.getAuctionType(), s.getPriceBandLimitSup(),
+            s.getPriceBandLimitInf(),
+            timestamp(s.getCreatedAt() != null ? s.getCreatedAt() : LocalDateTime.now())
+        };
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
@@ -0,0 +1,76 @@
+package com.sypexfs.msin_bourse_enligne.market.service;
+
+import com.sypexfs.msin_bourse_enligne.market.dto.BulkLoadResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Command line entry to the bulk loader, the application exits once the files are loaded
+ *
+ * Usage: java -jar app.jar --spring.main.web-application-type=none
+ *   --bulk-load.table=market_transactions --bulk-load.file=trades-2024.csv.gz [--bulk-load.file=...]
+ *   [--bulk-load.format=CSV|BINARY] [--bulk-load.columns=symbol,date_trans,...] [--bulk-load.header=true]
+ * Files ending in .gz are decompressed on the fly.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MarketDataBulkLoadRunner implements ApplicationRunner {
+
+    private final MarketDataBulkLoader bulkLoader;
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("bulk-load.table")) {
+            return;
+        }
+        String table = option(args, "bulk-load.table", null);
+        MarketDataBulkLoader.Format format = MarketDataBulkLoader.Format.valueOf(option(args, "bulk-load.format", "CSV").toUpperCase());
+        String columnOption = option(args, "bulk-load.columns", null);
+        List<String> columns = columnOption != null ? Arrays.stream(columnOption.split(",")).map(String::strip).toList() : null;
+        boolean header = Boolean.parseBoolean(option(args, "bulk-load.header", "true"));
+        List<String> files = args.getOptionValues("bulk-load.file");
+
+        int exitCode = 0;
+        try {
+            if (files == null || files.isEmpty()) {
+                throw new IllegalArgumentException("--bulk-load.file is required");
+            }
+            for (String file : files) {
+                Path path = Paths.get(file);
+                boolean gzipped = file.endsWith(".gz");
+                try (InputStream input = gzipped
+                        ? new GZIPInputStream(Files.newInputStream(path), 64 * 1024)
+                        : Files.newInputStream(path)) {
+                    BulkLoadResult result = bulkLoader.load(table, input, format, columns, header, gzipped ? -1 : Files.size(path));
+                    log.info("Loaded {}: {} rows in {} ms", path, result.getRows(), result.getElapsedMillis());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Bulk load into {} failed", table, e);
+            exitCode = 1;
+        }
+
+        int status = exitCode;
+        System.exit(SpringApplication.exit(context, () -> status));
+    }
+
+    private static String option(ApplicationArguments args, String name, String defaultValue) {
+        List<String> values = args.getOptionValues(name);
+        return values != null && !values.isEmpty() ? values.get(0) : defaultValue;
+    }
+}
@@ -0,0 +1,255 @@
+package com.sypexfs.msin_bourse_enligne.market.service;
+
+import com.sypexfs.msin_bourse_enligne.market.dto.BulkLoadResult;
+import com.sypexfs.msin_bourse_enligne.trading.service.TablePartitionManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk loader for market_schema tables, for years of tick and index history
+ * The input is streamed to PostgreSQL with COPY, nothing is held in memory beyond the copy
+ * buffer whatever its size. A partitioned table is loaded through a temporary staging table:
+ * the months the rows cover get their partitions before the rows are moved in one INSERT.
+ * Columns left out of the input take their defaults (ids from the table sequence).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MarketDataBulkLoader {
+
+    public enum Format {
+        CSV,    // comma separated, first line naming the columns unless they are given
+        BINARY  // PostgreSQL COPY BINARY
+    }
+
+    private static final String SCHEMA = "market_schema";
+    private static final String STAGING_TABLE = "bulk_load_staging";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String TABLE_COLUMNS_SQL =
+        "SELECT a.attname FROM pg_attribute a " +
+        "JOIN pg_class c ON c.oid = a.attrelid " +
+        "JOIN pg_namespace n ON n.oid = c.relnamespace " +
+        "WHERE n.nspname = ? AND c.relname = ? AND c.relkind IN ('r', 'p') AND NOT c.relispartition " +
+        "AND a.attnum > 0 AND NOT a.attisdropped ORDER BY a.attnum";
+
+    private final DataSource dataSource;
+    private final TablePartitionManager partitionManager;
+
+    @Value("${app.market.bulk-load.progress-interval-mb:64}")
+    private long progressIntervalMb;
+
+    /**
+     * Stream rows into a market_schema table
+     *
+     * @param columns columns of the input in order, null or empty to take them from the CSV
+     *                header or, for binary input, to cover every column of the table
+     * @param header whether CSV input starts with a header line, always read when columns are not given
+     * @param totalBytes size of the input when known, -1 otherwise
+     */
+    public BulkLoadResult load(String table, InputStream input, Format format, List<String> columns,
+                               boolean header, long totalBytes) throws IOException, SQLException {
+        long startedAt = System.currentTimeMillis();
+        ProgressInputStream progress = new ProgressInputStream(input, table, totalBytes, progressIntervalMb * 1024 * 1024);
+
+        boolean skipHeader = header;
+        if ((columns == null || columns.isEmpty()) && format == Format.CSV) {
+            columns = readHeader(progress);
+            skipHeader = false;
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            List<String> tableColumns = tableColumns(connection, table);
+            if (columns == null || columns.isEmpty()) {
+                columns = tableColumns;
+            }
+            for (String column : columns) {
+                if (!tableColumns.contains(column)) {
+                    throw new IllegalArgumentException("Unknown column " + column + " in " + SCHEMA + "." + table);
+                }
+            }
+
+            String columnList = columns.stream().map(column -> "\"" + column + "\"").collect(Collectors.joining(", "));
+            String options = format == Format.BINARY ? "FORMAT binary" : "FORMAT csv" + (skipHeader ? ", HEADER true" : "");
+            String target = SCHEMA + ".\"" + table + "\"";
+
+            long rows;
+            String partitionKey = partitionManager.partitionKey(SCHEMA, table);
+            if (partitionKey == null) {
+                rows = copy(connection, target, target, columnList, options, progress);
+            } else {
+                rows = copyThroughStaging(connection, table, target, partitionKey, columnList, options, progress);
+            }
+
+            long elapsedMillis = System.currentTimeMillis() - startedAt;
+            log.info("Bulk loaded {} rows ({} MB) into {} in {} ms", rows, progress.bytesRead / (1024 * 1024), target, elapsedMillis);
+            return new BulkLoadResult(table, columns, rows, progress.bytesRead, elapsedMillis);
+        }
+    }
+
+    private long copy(Connection connection, String copyInto, String target, String columnList, String options,
+                      InputStream input) throws IOException, SQLException {
+        try {
+            return connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY " + copyInto + " (" + columnList + ") FROM STDIN WITH (" + options + ")", input, COPY_BUFFER_SIZE);
+        } catch (SQLException e) {
+            // Bad rows are the caller's, the message names the offending line
+            if (e.getSQLState() != null && (e.getSQLState().startsWith("22") || e.getSQLState().startsWith("23"))) {
+                throw new IllegalArgumentException("Bulk load into " + target + " failed: " + e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Copy into a session staging table, create the partitions of the months found, then move the rows
+     * Each step commits on its own so the partitions can be created while no lock is held on the table
+     */
+    private long copyThroughStaging(Connection connection, String table, String target, String partitionKey,
+                                    String columnList, String options, InputStream input) throws IOException, SQLException {
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS pg_temp." + STAGING_TABLE);
+            statement.execute("CREATE TEMP TABLE " + STAGING_TABLE + " (LIKE " + target + " INCLUDING DEFAULTS)");
+            try {
+                long rows = copy(connection, STAGING_TABLE, target, columnList, options, input);
+                if (rows == 0) {
+                    return 0;
+                }
+
+                try (ResultSet range = statement.executeQuery(
+                        "SELECT MIN(\"" + partitionKey + "\"), MAX(\"" + partitionKey + "\") FROM " + STAGING_TABLE)) {
+                    range.next();
+                    Timestamp first = range.getTimestamp(1);
+                    Timestamp last = range.getTimestamp(2);
+                    if (first != null) {
+                        partitionManager.createPartitions(SCHEMA, table,
+                            YearMonth.from(first.toLocalDateTime()), YearMonth.from(last.toLocalDateTime()));
+                    }
+                }
+
+                try (PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO " + target + " (" + columnList + ") SELECT " + columnList + " FROM " + STAGING_TABLE)) {
+                    return insert.executeUpdate();
+                } catch (SQLException e) {
+                    if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                        throw new IllegalArgumentException("Bulk load into " + target + " failed: " + e.getMessage(), e);
+                    }
+                    throw e;
+                }
+            } finally {
+                statement.execute("DROP TABLE IF EXISTS pg_temp." + STAGING_TABLE);
+            }
+        }
+    }
+
+    private List<String> tableColumns(Connection connection, String table) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(TABLE_COLUMNS_SQL)) {
+            statement.setString(1, SCHEMA);
+            statement.setString(2, table);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.add(resultSet.getString(1));
+                }
+            }
+        }
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Unknown table " + SCHEMA + "." + table);
+        }
+        return columns;
+    }
+
+    /**
+     * Read the CSV header line, leaving the stream on the first data row
+     */
+    private static List<String> readHeader(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        String header = line.toString(StandardCharsets.UTF_8).replace("\uFEFF", "").strip();
+        if (header.isEmpty()) {
+            throw new IllegalArgumentException("CSV input has no header line naming its columns");
+        }
+        return Arrays.stream(header.split(","))
+            .map(column -> column.strip().replace("\"", ""))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the bytes handed to COPY and logs the progress every interval
+     */
+    private static final class ProgressInputStream extends FilterInputStream {
+        private final String table;
+        private final long totalBytes;
+        private final long interval;
+        private final long startedAt = System.currentTimeMillis();
+        private long bytesRead;
+        private long nextReport;
+
+        ProgressInputStream(InputStream input, String table, long totalBytes, long interval) {
+            super(input);
+            this.table = table;
+            this.totalBytes = totalBytes;
+            this.interval = Math.max(interval, 1);
+            this.nextReport = this.interval;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                advance(n);
+            }
+            return n;
+        }
+
+        private void advance(long n) {
+            bytesRead += n;
+            if (bytesRead < nextReport) {
+                return;
+            }
+            nextReport = bytesRead + interval;
+            double seconds = Math.max(System.currentTimeMillis() - startedAt, 1) / 1000.0;
+            double megabytes = bytesRead / (1024.0 * 1024.0);
+            if (totalBytes > 0) {
+                log.info("Bulk load into {}: {} MB read ({}%), {} MB/s", table, Math.round(megabytes),
+                         bytesRead * 100 / totalBytes, Math.round(megabytes / seconds));
+            } else {
+                log.info("Bulk load into {}: {} MB read, {} MB/s", table, Math.round(megabytes), Math.round(megabytes / seconds));
+            }
+        }
+    }
+}
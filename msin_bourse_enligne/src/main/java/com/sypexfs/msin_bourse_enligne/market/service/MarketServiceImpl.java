@@ -21,6 +21,9 @@ public class MarketServiceImpl implements MarketService {
 
     private final MarketInstrumentRepository instrumentRepository;
     private final MarketSummaryRepository summaryRepository;
+    private final MarketSummaryWriter summaryWriter;
+    private final MarketSummaryHistoryRepository summaryHistoryRepository;
+    private final MarketSummaryHistoryRecorder summaryHistoryRecorder;
     private final MarketIndexRepository indexRepository;
     private final MarketIndexSummaryRepository indexSummaryRepository;
     private final MarketOrderbookRepository orderbookRepository;
@@ -90,7 +93,7 @@ public class MarketServiceImpl implements MarketService {
     @Override
     public Optional<MarketSummary> getLatestSummaryBySymbol(String symbol) {
         log.debug("Fetching latest summary for symbol: {}", symbol);
-        return summaryRepository.findLatestBySymbol(symbol);
+        return summaryRepository.findBySymbol(symbol);
     }
 
     @Override
@@ -117,14 +120,18 @@ public class MarketServiceImpl implements MarketService {
     @Override
     public List<MarketSummary> getSummariesByDateRange(String symbol, LocalDateTime startDate, LocalDateTime endDate) {
         log.debug("Fetching summaries for symbol: {} between {} and {}", symbol, startDate, endDate);
-        return summaryRepository.findBySymbolAndDateRange(symbol, startDate, endDate);
+        return summaryHistoryRepository.findBySymbolAndDateRange(symbol, startDate, endDate).stream()
+            .map(MarketSummaryHistory::toSummary)
+            .toList();
     }
 
     @Override
     @Transactional
     public MarketSummary saveSummary(MarketSummary summary) {
         log.debug("Saving market summary for symbol: {}", summary.getSymbol());
-        return summaryRepository.save(summary);
+        MarketSummary saved = summaryWriter.upsert(summary);
+        summaryHistoryRecorder.record(saved);
+        return saved;
     }
 
     // ==================== Index Operations ====================
@@ -0,0 +1,85 @@
+package com.sypexfs.msin_bourse_enligne.market.service;
+
+import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummary;
+import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummaryHistory;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds market_summary_history off the trading path
+ * Writers of the current summary hand over a snapshot, queued in memory and inserted in
+ * batches on a fixed delay. A full queue drops the snapshot rather than slow down a tick,
+ * the current summary itself is never affected.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MarketSummaryHistoryRecorder {
+
+    private final MarketSummaryWriter marketSummaryWriter;
+
+    // Snapshots waiting for the next flush, dropped beyond this
+    @Value("${app.market.summary-history.queue-capacity:100000}")
+    private int queueCapacity;
+
+    // Maximum snapshots inserted per batch
+    @Value("${app.market.summary-history.batch-size:1000}")
+    private int batchSize;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private BlockingQueue<MarketSummaryHistory> queue;
+
+    @PostConstruct
+    void start() {
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Queue a snapshot of the summary as just stored
+     */
+    public void record(MarketSummary summary) {
+        if (summary == null || summary.getSymbol() == null) {
+            return;
+        }
+        if (!queue.offer(MarketSummaryHistory.of(summary))) {
+            long count = dropped.incrementAndGet();
+            if (count == 1 || count % 10_000 == 0) {
+                log.warn("Market summary history queue full, {} snapshots dropped so far", count);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.market.summary-history.flush-interval-ms:1000}")
+    public void flush() {
+        List<MarketSummaryHistory> batch = new ArrayList<>(Math.min(batchSize, queue.size()));
+        try {
+            while (queue.drainTo(batch, batchSize) > 0) {
+                marketSummaryWriter.appendHistory(batch);
+                batch.clear();
+            }
+        } catch (Exception e) {
+            log.error("Error appending {} market summary snapshots to the history", batch.size(), e);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        flush();
+        if (dropped.get() > 0) {
+            log.info("Market summary history recorder stopped, {} snapshots were dropped", dropped.get());
+        }
+    }
+}
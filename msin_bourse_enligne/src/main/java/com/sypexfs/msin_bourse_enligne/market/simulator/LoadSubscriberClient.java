@@ -0,0 +1,91 @@
+package com.sypexfs.msin_bourse_enligne.market.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One simulated market data subscriber of the load generator
+ * Connects to /ws/market like a browser would, subscribes to the order book and depth
+ * channels of the given symbols and records for every data message the lag between
+ * its broadcast timestamp and its arrival
+ */
+@Slf4j
+class LoadSubscriberClient extends TextWebSocketHandler {
+
+    private static final List<String> CHANNELS = List.of("market.orderbook", "market.depth");
+
+    private final ObjectMapper objectMapper;
+    private final List<String> symbols;
+    private final Timer fanOutLag;
+    private final Counter messages;
+    private volatile WebSocketSession session;
+
+    LoadSubscriberClient(ObjectMapper objectMapper, List<String> symbols, Timer fanOutLag, Counter messages) {
+        this.objectMapper = objectMapper;
+        this.symbols = symbols;
+        this.fanOutLag = fanOutLag;
+        this.messages = messages;
+    }
+
+    void connect(WebSocketClient client, String url) throws Exception {
+        session = client.execute(this, url).get(10, TimeUnit.SECONDS);
+    }
+
+    void close() {
+        WebSocketSession current = session;
+        if (current != null && current.isOpen()) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.debug("Error closing load subscriber session: {}", e.getMessage());
+            }
+        }
+    }
+
+    boolean isOpen() {
+        WebSocketSession current = session;
+        return current != null && current.isOpen();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        for (String symbol : symbols) {
+            for (String channel : CHANNELS) {
+                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(
+                    Map.of("type", "subscribe", "channel", channel, "symbol", symbol))));
+            }
+        }
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        long receivedAt = System.currentTimeMillis();
+        JsonNode response = objectMapper.readTree(message.getPayload());
+        if (!"data".equals(response.path("type").asText()) && !"delta".equals(response.path("type").asText())) {
+            return;
+        }
+        messages.increment();
+        long sentAt = response.path("timestamp").asLong(0);
+        if (sentAt > 0) {
+            fanOutLag.record(Math.max(0, receivedAt - sentAt), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        log.debug("Load subscriber session {} closed: {}", session.getId(), status);
+    }
+}
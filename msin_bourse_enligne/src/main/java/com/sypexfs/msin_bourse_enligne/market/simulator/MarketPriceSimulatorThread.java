@@ -3,6 +3,8 @@ package com.sypexfs.msin_bourse_enligne.market.simulator;
 import com.sypexfs.msin_bourse_enligne.market.dto.MarketMapper;
 import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummary;
 import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryRepository;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryWriter;
+import com.sypexfs.msin_bourse_enligne.market.service.MarketSummaryHistoryRecorder;
 import com.sypexfs.msin_bourse_enligne.market.websocket.MarketWebSocketHandler;
 import com.sypexfs.msin_bourse_enligne.market.service.MarketService;
 import com.sypexfs.msin_bourse_enligne.market.dto.MarketOverviewDto;
@@ -17,7 +19,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
 
 /**
  * Market Price Simulator Thread
@@ -29,6 +30,8 @@ import java.util.stream.Collectors;
 public class MarketPriceSimulatorThread implements Runnable {
 
     private final MarketSummaryRepository summaryRepository;
+    private final MarketSummaryWriter summaryWriter;
+    private final MarketSummaryHistoryRecorder historyRecorder;
     private final MarketWebSocketHandler webSocketHandler;
     private final MarketMapper marketMapper;
     private final MarketService marketService;
@@ -48,9 +51,7 @@ public class MarketPriceSimulatorThread implements Runnable {
         while (running && !Thread.currentThread().isInterrupted()) {
             try {
                 // Get market summaries for allowed symbols only
-                List<MarketSummary> summaries = summaryRepository.findAll().stream()
-                    .filter(s -> ALLOWED_SYMBOLS.contains(s.getSymbol()))
-                    .collect(Collectors.toList());
+                List<MarketSummary> summaries = summaryRepository.findBySymbolIn(ALLOWED_SYMBOLS);
                 
                 if (!summaries.isEmpty()) {
                     // Randomly select a summary to update
@@ -60,7 +61,8 @@ public class MarketPriceSimulatorThread implements Runnable {
                     updateMarketPrice(summary);
                     
                     // Save to database
-                    MarketSummary updatedSummary = summaryRepository.save(summary);
+                    MarketSummary updatedSummary = summaryWriter.upsert(summary);
+                    historyRecorder.record(updatedSummary);
                     
                     // Broadcast via WebSocket
                     webSocketHandler.broadcastMarketSummary(
@@ -0,0 +1,339 @@
+package com.sypexfs.msin_bourse_enligne.market.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sypexfs.msin_bourse_enligne.auth.service.JwtService;
+import com.sypexfs.msin_bourse_enligne.market.dto.LoadGeneratorSettings;
+import com.sypexfs.msin_bourse_enligne.trading.dto.OrderRequest;
+import com.sypexfs.msin_bourse_enligne.trading.dto.OrderResponse;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBook;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderMatchingEngine;
+import com.sypexfs.msin_bourse_enligne.trading.service.TradingService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sustained order load through the real order entry path
+ * Orders are sent to TradingService at a fixed rate from a pool of worker threads, so
+ * they go through persistence, matching, journaling and the WebSocket broadcasts like
+ * user orders. Ack latency is measured from the time an order was due to be sent, not
+ * from when a worker picked it up: once the node saturates the backlog shows in the
+ * latency instead of silently lowering the rate.
+ *
+ * Metrics (also on /actuator/prometheus while a run exists):
+ * - loadgen.order.ack: order entry to response, tagged by type
+ * - loadgen.fanout.lag: broadcast timestamp to arrival at a simulated subscriber
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderLoadGenerator implements DisposableBean {
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final int TRACKED_ORDERS = 4096;
+    private static final BigDecimal TICK = new BigDecimal("0.01");
+
+    private final TradingService tradingService;
+    private final OrderMatchingEngine matchingEngine;
+    private final MeterRegistry meterRegistry;
+    private final JwtService jwtService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    private Run run;
+
+    /**
+     * Start a run, replacing the metrics of the previous one
+     */
+    public synchronized void start(LoadGeneratorSettings settings) {
+        if (isRunning()) {
+            throw new IllegalStateException("Load generator is already running");
+        }
+        if (settings.getOrdersPerSecond() <= 0 || settings.getThreads() <= 0 || settings.getUsers() <= 0
+                || settings.getSymbols() == null || settings.getSymbols().isEmpty()) {
+            throw new IllegalArgumentException("Order rate, threads, users and symbols are required");
+        }
+        if (settings.getSubscribers() > 0 && settings.getSubscriberUsername() == null) {
+            throw new IllegalArgumentException("Subscriber username is required to open WebSocket subscribers");
+        }
+        if (run != null) {
+            run.removeMeters();
+        }
+        run = new Run(settings);
+        run.start();
+    }
+
+    public synchronized void stop() {
+        if (run != null) {
+            run.stop();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return run != null && run.running;
+    }
+
+    /**
+     * Counters and latency percentiles of the current or last run
+     */
+    public synchronized Map<String, Object> getReport() {
+        return run != null ? run.report() : Map.of("running", false);
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+    }
+
+    private final class Run {
+
+        private final LoadGeneratorSettings settings;
+        private final List<Meter> meters = new ArrayList<>();
+        private final Map<String, Timer> ackTimers = new LinkedHashMap<>();
+        private final Timer fanOutLag;
+        private final Counter fanOutMessages;
+        private final Counter errors;
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        // Recently accepted orders, cancels pick from here: order id and owner
+        private final AtomicReferenceArray<long[]> recentOrders = new AtomicReferenceArray<>(TRACKED_ORDERS);
+        private final AtomicLong recentCount = new AtomicLong();
+        private final List<LoadSubscriberClient> subscribers = new ArrayList<>();
+
+        private ThreadPoolExecutor workers;
+        private ScheduledExecutorService pacer;
+        private volatile boolean running;
+        private long startedAt;
+        private long stoppedAt;
+
+        Run(LoadGeneratorSettings settings) {
+            this.settings = settings;
+            for (String type : List.of("MARKET", "LIMIT", "STOP", "CANCEL")) {
+                ackTimers.put(type, register(Timer.builder("loadgen.order.ack")
+                    .description("Order entry latency under generated load, from the scheduled send time")
+                    .tag("type", type)
+                    .publishPercentiles(PERCENTILES)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)));
+            }
+            fanOutLag = register(Timer.builder("loadgen.fanout.lag")
+                .description("Market data broadcast to arrival at a simulated subscriber")
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+            fanOutMessages = register(Counter.builder("loadgen.fanout.messages").register(meterRegistry));
+            errors = register(Counter.builder("loadgen.order.errors").register(meterRegistry));
+        }
+
+        void start() {
+            openSubscribers();
+
+            workers = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(), 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("loadgen-worker"));
+            pacer = Executors.newSingleThreadScheduledExecutor(daemonThreads("loadgen-pacer"));
+            running = true;
+            startedAt = System.nanoTime();
+            long intervalNanos = Math.max(1, 1_000_000_000L / settings.getOrdersPerSecond());
+            pacer.scheduleAtFixedRate(() -> pace(intervalNanos), 0, 1, TimeUnit.MILLISECONDS);
+            log.info("Load generator started: {} orders/s on {} symbol(s), {} user(s), {} subscriber(s)",
+                settings.getOrdersPerSecond(), settings.getSymbols().size(), settings.getUsers(), subscribers.size());
+        }
+
+        /**
+         * Hand out every order due by now, each with the time it was due
+         */
+        private void pace(long intervalNanos) {
+            long now = System.nanoTime();
+            if (settings.getDurationSeconds() > 0 && now - startedAt >= TimeUnit.SECONDS.toNanos(settings.getDurationSeconds())) {
+                stop();
+                return;
+            }
+            long due = (now - startedAt) / intervalNanos + 1;
+            while (running && sent.get() < due) {
+                long dueAt = startedAt + sent.getAndIncrement() * intervalNanos;
+                workers.execute(() -> sendOrder(dueAt));
+            }
+        }
+
+        private void sendOrder(long dueAt) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long userId = settings.getFirstUserId() + random.nextInt(settings.getUsers());
+            String symbol = settings.getSymbols().get(random.nextInt(settings.getSymbols().size()));
+            int pick = random.nextInt(100);
+            String type = pick < settings.getMarketPercent() ? "MARKET"
+                : pick < settings.getMarketPercent() + settings.getStopPercent() ? "STOP"
+                : pick < settings.getMarketPercent() + settings.getStopPercent() + settings.getCancelPercent() ? "CANCEL"
+                : "LIMIT";
+
+            try {
+                if ("CANCEL".equals(type)) {
+                    long[] target = pickRecentOrder(random);
+                    if (target == null) {
+                        return;
+                    }
+                    tradingService.cancelOrder(target[0], target[1], "Load generator");
+                } else {
+                    OrderResponse response = tradingService.createOrder(userId, orderRequest(type, symbol, random));
+                    if ("PENDING".equals(response.getStatId()) || "PARTIAL".equals(response.getStatId())) {
+                        recentOrders.set((int) (recentCount.getAndIncrement() % TRACKED_ORDERS), new long[]{response.getId(), userId});
+                    }
+                }
+                ackTimers.get(type).record(System.nanoTime() - dueAt, TimeUnit.NANOSECONDS);
+            } catch (RuntimeException e) {
+                // Cancels racing a fill are expected, everything counts as an error all the same
+                errors.increment();
+                log.debug("Load generator {} order failed: {}", type, e.getMessage());
+            } finally {
+                completed.incrementAndGet();
+            }
+        }
+
+        private OrderRequest orderRequest(String type, String symbol, ThreadLocalRandom random) {
+            boolean buy = random.nextBoolean();
+            BigDecimal reference = referencePrice(symbol);
+            OrderRequest request = new OrderRequest();
+            request.setSymbol(symbol);
+            request.setSign(buy ? 1 : -1);
+            request.setOrderTypeId(type);
+            request.setExpiryTypeId("MARKET".equals(type) ? "IOC" : "DAY");
+            request.setQuantity(BigDecimal.valueOf(random.nextInt(1, 101)));
+            if ("LIMIT".equals(type)) {
+                // Mostly passive, about one in six crosses the reference price
+                int ticks = random.nextInt(-10, 3);
+                request.setPrice(offset(reference, buy ? ticks : -ticks));
+            } else if ("STOP".equals(type)) {
+                int ticks = random.nextInt(5, 21);
+                request.setStopPrice(offset(reference, buy ? ticks : -ticks));
+            }
+            return request;
+        }
+
+        private BigDecimal referencePrice(String symbol) {
+            OrderBook orderBook = matchingEngine.getOrderBook(symbol);
+            BigDecimal mid = orderBook != null ? orderBook.getMidPrice() : null;
+            return mid != null ? mid.setScale(2, RoundingMode.HALF_UP) : settings.getReferencePrice();
+        }
+
+        private BigDecimal offset(BigDecimal price, int ticks) {
+            return price.add(TICK.multiply(BigDecimal.valueOf(ticks))).max(TICK);
+        }
+
+        private long[] pickRecentOrder(ThreadLocalRandom random) {
+            long count = Math.min(recentCount.get(), TRACKED_ORDERS);
+            if (count == 0) {
+                return null;
+            }
+            // Taken out so two workers never cancel the same order
+            return recentOrders.getAndSet(random.nextInt((int) count), null);
+        }
+
+        private void openSubscribers() {
+            if (settings.getSubscribers() <= 0) {
+                return;
+            }
+            StandardWebSocketClient client = new StandardWebSocketClient();
+            String url = "ws://localhost:" + serverPort + "/ws/market?token="
+                + jwtService.generateToken(settings.getSubscriberUsername());
+            for (int i = 0; i < settings.getSubscribers(); i++) {
+                LoadSubscriberClient subscriber = new LoadSubscriberClient(objectMapper, settings.getSymbols(), fanOutLag, fanOutMessages);
+                try {
+                    subscriber.connect(client, url);
+                    subscribers.add(subscriber);
+                } catch (Exception e) {
+                    log.error("Load subscriber {} could not connect: {}", i, e.getMessage());
+                }
+            }
+        }
+
+        synchronized void stop() {
+            if (!running) {
+                return;
+            }
+            running = false;
+            stoppedAt = System.nanoTime();
+            pacer.shutdownNow();
+            workers.shutdown();
+            try {
+                if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                    workers.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            subscribers.forEach(LoadSubscriberClient::close);
+            log.info("Load generator stopped after {} orders", completed.get());
+        }
+
+        Map<String, Object> report() {
+            long elapsedNanos = (running ? System.nanoTime() : stoppedAt) - startedAt;
+            double seconds = elapsedNanos / 1e9;
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("running", running);
+            report.put("settings", settings);
+            report.put("elapsedSeconds", seconds);
+            report.put("ordersSent", sent.get());
+            report.put("ordersCompleted", completed.get());
+            report.put("ordersPerSecond", seconds > 0 ? completed.get() / seconds : 0);
+            report.put("backlog", workers != null ? workers.getQueue().size() : 0);
+            report.put("errors", (long) errors.count());
+
+            Map<String, Object> ack = new LinkedHashMap<>();
+            ackTimers.forEach((type, timer) -> ack.put(type, latency(timer)));
+            report.put("orderAckMillis", ack);
+            report.put("subscribersConnected", subscribers.stream().filter(LoadSubscriberClient::isOpen).count());
+            report.put("fanOutMessages", (long) fanOutMessages.count());
+            report.put("fanOutLagMillis", latency(fanOutLag));
+            return report;
+        }
+
+        private Map<String, Object> latency(Timer timer) {
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("count", timer.count());
+            latency.put("mean", timer.mean(TimeUnit.MILLISECONDS));
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                String percentile = BigDecimal.valueOf(value.percentile() * 100).stripTrailingZeros().toPlainString();
+                latency.put("p" + percentile, value.value(TimeUnit.MILLISECONDS));
+            }
+            latency.put("max", timer.max(TimeUnit.MILLISECONDS));
+            return latency;
+        }
+
+        private <M extends Meter> M register(M meter) {
+            meters.add(meter);
+            return meter;
+        }
+
+        void removeMeters() {
+            meters.forEach(meterRegistry::remove);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicLong count = new AtomicLong();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
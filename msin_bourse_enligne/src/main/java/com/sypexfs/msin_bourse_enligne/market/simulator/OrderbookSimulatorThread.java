@@ -58,7 +58,7 @@ public class OrderbookSimulatorThread implements Runnable {
                     String symbol = instrument.getSymbol();
                     
                     // Get current price from summary
-                    Optional<MarketSummary> summaryOpt = summaryRepository.findLatestBySymbol(symbol);
+                    Optional<MarketSummary> summaryOpt = summaryRepository.findBySymbol(symbol);
                     
                     if (summaryOpt.isPresent()) {
                         MarketSummary summary = summaryOpt.get();
@@ -67,7 +67,7 @@ public class TransactionSimulatorThread implements Runnable {
                     log.debug("Selected symbol for transaction: {}", symbol);
                     
                     // Get current price from summary
-                    Optional<MarketSummary> summaryOpt = summaryRepository.findLatestBySymbol(symbol);
+                    Optional<MarketSummary> summaryOpt = summaryRepository.findBySymbol(symbol);
                     
                     if (summaryOpt.isPresent()) {
                         MarketSummary summary = summaryOpt.get();
@@ -337,6 +337,7 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
         return Set.of(
             "market.summary",
             "market.orderbook",
+            "market.depth",
             "market.transactions",
             "market.indices",
             "market.news",
@@ -368,6 +369,16 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
         return sessions.size();
     }
 
+    public boolean hasSubscribers(String channel) {
+        Set<String> subscribers = channelSubscriptions.get(channel);
+        return subscribers != null && !subscribers.isEmpty();
+    }
+
+    public Set<String> getSubscribers(String channel) {
+        Set<String> subscribers = channelSubscriptions.get(channel);
+        return subscribers != null ? Set.copyOf(subscribers) : Set.of();
+    }
+
     public Map<String, Integer> getChannelSubscriptionCounts() {
         Map<String, Integer> counts = new ConcurrentHashMap<>();
         channelSubscriptions.forEach((channel, subscribers) -> 
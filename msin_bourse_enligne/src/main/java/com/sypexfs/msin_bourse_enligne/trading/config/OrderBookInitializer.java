@@ -3,7 +3,8 @@ package com.sypexfs.msin_bourse_enligne.trading.config;
 import com.sypexfs.msin_bourse_enligne.market.entity.MarketInstrument;
 import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummary;
 import com.sypexfs.msin_bourse_enligne.market.repository.MarketInstrumentRepository;
-import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryRepository;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryWriter;
+import com.sypexfs.msin_bourse_enligne.market.service.MarketSummaryHistoryRecorder;
 import com.sypexfs.msin_bourse_enligne.trading.matching.OrderMatchingEngine;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +13,7 @@ import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Initializes order books for all market instruments on application startup
@@ -24,7 +26,8 @@ public class OrderBookInitializer implements ApplicationRunner {
 
     private final MarketInstrumentRepository instrumentRepository;
     private final OrderMatchingEngine matchingEngine;
-    private final MarketSummaryRepository summaryRepository;
+    private final MarketSummaryWriter summaryWriter;
+    private final MarketSummaryHistoryRecorder historyRecorder;
 
     @Override
     public void run(ApplicationArguments args) {
@@ -46,20 +49,21 @@ public class OrderBookInitializer implements ApplicationRunner {
             matchingEngine.initializeOrderBook(symbol);
             count++;
 
-            // Initialize MarketSummary if missing
-            if (summaryRepository.findLatestBySymbol(symbol).isEmpty()) {
-                MarketSummary summary = new MarketSummary();
-                summary.setSymbol(symbol);
-                summary.setName(instrument.getName());
-                summary.setPrice(java.math.BigDecimal.valueOf(100.00));
-                summary.setClosingPrice(java.math.BigDecimal.valueOf(100.00));
-                summary.setOpeningPrice(java.math.BigDecimal.valueOf(100.00));
-                summary.setVariation(java.math.BigDecimal.ZERO);
-                summary.setVolume(java.math.BigDecimal.ZERO);
-                summary.setDateTrans(java.time.LocalDateTime.now());
-                summary.setCreatedAt(java.time.LocalDateTime.now());
-                
-                summaryRepository.save(summary);
+            // Initialize MarketSummary if missing, an existing row is left as it is
+            MarketSummary summary = new MarketSummary();
+            summary.setSymbol(symbol);
+            summary.setName(instrument.getName());
+            summary.setPrice(java.math.BigDecimal.valueOf(100.00));
+            summary.setClosingPrice(java.math.BigDecimal.valueOf(100.00));
+            summary.setOpeningPrice(java.math.BigDecimal.valueOf(100.00));
+            summary.setVariation(java.math.BigDecimal.ZERO);
+            summary.setVolume(java.math.BigDecimal.ZERO);
+            summary.setDateTrans(java.time.LocalDateTime.now());
+            summary.setCreatedAt(java.time.LocalDateTime.now());
+
+            Optional<MarketSummary> created = summaryWriter.insertIfAbsent(summary);
+            if (created.isPresent()) {
+                historyRecorder.record(created.get());
                 summaryCount++;
                 log.info("Created default MarketSummary for symbol: {}", symbol);
             }
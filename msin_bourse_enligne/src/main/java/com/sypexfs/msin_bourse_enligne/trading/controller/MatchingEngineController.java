@@ -21,6 +21,7 @@ public class MatchingEngineController {
     private final OrderMatchingEngine matchingEngine;
     private final MarketDataService marketDataService;
     private final OrderExecutionService executionService;
+    private final ExecutionPersistencePipeline executionPipeline;
 
     /**
      * Get order book for a symbol
@@ -58,6 +59,61 @@ public class MatchingEngineController {
         return ResponseEntity.ok(stats);
     }
 
+    /**
+     * Get the trading phase and indicative auction equilibrium of a book
+     * GET /api/matching/auction/{symbol}
+     */
+    @GetMapping("/auction/{symbol}")
+    public ResponseEntity<java.util.Map<String, Object>> getAuctionStatus(@PathVariable String symbol) {
+        log.info("Fetching auction status for symbol: {}", symbol);
+        
+        OrderBook orderBook = matchingEngine.getOrderBook(symbol);
+        if (orderBook == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        java.util.Map<String, Object> status = new java.util.LinkedHashMap<>();
+        status.put("symbol", symbol);
+        status.put("phase", orderBook.getPhase());
+        status.put("indicative", matchingEngine.getIndicativeUncross(symbol));
+        return ResponseEntity.ok(status);
+    }
+
+    /**
+     * Uncross a book now and resume continuous matching (admin only)
+     * POST /api/matching/auction/{symbol}/uncross
+     */
+    @PostMapping("/auction/{symbol}/uncross")
+    public ResponseEntity<AuctionQuote> uncrossAuction(@PathVariable String symbol) {
+        log.info("Manually uncrossing order book for symbol: {}", symbol);
+        
+        return ResponseEntity.ok(matchingEngine.uncrossAuction(symbol));
+    }
+
+    /**
+     * Get matching shard statistics
+     * GET /api/matching/shards
+     */
+    @GetMapping("/shards")
+    public ResponseEntity<java.util.List<MatchingShardStats>> getShardStats() {
+        log.info("Fetching matching shard statistics");
+        
+        return ResponseEntity.ok(matchingEngine.getShardStats());
+    }
+
+    /**
+     * Get execution persistence pipeline status
+     * GET /api/matching/persistence
+     */
+    @GetMapping("/persistence")
+    public ResponseEntity<java.util.Map<String, Long>> getPersistenceStatus() {
+        return ResponseEntity.ok(java.util.Map.of(
+            "backlog", (long) executionPipeline.getBacklog(),
+            "persisted", executionPipeline.getPersistedEvents(),
+            "failed", executionPipeline.getFailedEvents()
+        ));
+    }
+
     /**
      * Get market status for a symbol
      * GET /api/matching/market/{symbol}
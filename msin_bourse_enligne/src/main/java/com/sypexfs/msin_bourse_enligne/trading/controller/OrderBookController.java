@@ -1,10 +1,13 @@
 package com.sypexfs.msin_bourse_enligne.trading.controller;
 
 import com.sypexfs.msin_bourse_enligne.common.dto.ApiResponse;
+import com.sypexfs.msin_bourse_enligne.trading.matching.MarketByOrderSnapshot;
 import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBook;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBookEvent;
 import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBookDepth;
 import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBookStats;
 import com.sypexfs.msin_bourse_enligne.trading.matching.OrderMatchingEngine;
+import com.sypexfs.msin_bourse_enligne.trading.websocket.MarketByOrderWebSocketHandler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -26,6 +29,7 @@ import java.util.stream.Collectors;
 public class OrderBookController {
 
     private final OrderMatchingEngine matchingEngine;
+    private final MarketByOrderWebSocketHandler marketByOrderHandler;
 
     /**
      * Get live order book depth for a symbol
@@ -57,6 +61,62 @@ public class OrderBookController {
         ));
     }
 
+    /**
+     * Get every resting order of a symbol, tagged with the market-by-order sequence
+     * Clients resync from this after a gap in the /ws/mbo feed
+     * 
+     * @param symbol Stock symbol
+     * @return Resting orders in priority order and the sequence they reflect
+     */
+    @GetMapping("/{symbol}/orders")
+    public ResponseEntity<ApiResponse<MarketByOrderSnapshot>> getMarketByOrder(
+            @PathVariable String symbol) {
+        
+        log.debug("Fetching market-by-order snapshot for symbol: {}", symbol);
+        
+        OrderBook orderBook = matchingEngine.getOrderBook(symbol);
+        if (orderBook == null) {
+            return ResponseEntity.ok(ApiResponse.error(
+                "Order book not found for symbol: " + symbol,
+                "ORDERBOOK_NOT_FOUND"
+            ));
+        }
+        
+        return ResponseEntity.ok(ApiResponse.success(
+            orderBook.getMarketByOrder(),
+            "Market-by-order snapshot retrieved successfully"
+        ));
+    }
+
+    /**
+     * Get the market-by-order events published after a sequence
+     * Fills a small gap without a snapshot while the events are still retained
+     * 
+     * @param symbol Stock symbol
+     * @param after Last sequence the client applied
+     * @return Events in sequence order
+     */
+    @GetMapping("/{symbol}/orders/events")
+    public ResponseEntity<ApiResponse<List<OrderBookEvent>>> getMarketByOrderEvents(
+            @PathVariable String symbol,
+            @RequestParam long after) {
+        
+        log.debug("Fetching market-by-order events for symbol: {} after {}", symbol, after);
+        
+        List<OrderBookEvent> events = marketByOrderHandler.getEventsAfter(symbol, after);
+        if (events == null) {
+            return ResponseEntity.ok(ApiResponse.error(
+                "Events after sequence " + after + " are no longer retained, resync from /orderbook/" + symbol + "/orders",
+                "SEQUENCE_NOT_RETAINED"
+            ));
+        }
+        
+        return ResponseEntity.ok(ApiResponse.success(
+            events,
+            "Market-by-order events retrieved successfully"
+        ));
+    }
+
     /**
      * Get order book statistics for a symbol
      * Includes total orders, volumes, best bid/ask, spread, mid-price
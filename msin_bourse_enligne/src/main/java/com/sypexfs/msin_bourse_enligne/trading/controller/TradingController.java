@@ -39,6 +39,20 @@ public class TradingController {
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    /**
+     * Create a batch of orders in one call
+     * POST /api/trading/orders/batch
+     */
+    @PostMapping("/orders/batch")
+    public ResponseEntity<List<OrderResponse>> createOrders(
+            @Valid @RequestBody BatchOrderRequest request,
+            Authentication authentication) {
+        log.info("Creating {} orders for user: {}", request.getOrders().size(), authentication.getName());
+        Long userId = getUserIdFromAuth(authentication);
+        List<OrderResponse> response = tradingService.createOrders(userId, request.getOrders());
+        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    }
+
     /**
      * Get order by ID
      * GET /api/trading/orders/{orderId}
@@ -211,6 +225,22 @@ public class TradingController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Cancel all open orders, optionally for one symbol and one side (1 buy, -1 sell)
+     * POST /api/trading/orders/cancel-all
+     */
+    @PostMapping("/orders/cancel-all")
+    public ResponseEntity<List<OrderResponse>> cancelAllOrders(
+            @RequestParam(required = false) String symbol,
+            @RequestParam(required = false) Integer side,
+            @RequestParam(required = false) String reason,
+            Authentication authentication) {
+        log.info("Cancelling all orders for user: {}", authentication.getName());
+        Long userId = getUserIdFromAuth(authentication);
+        List<OrderResponse> response = tradingService.cancelAllOrders(userId, symbol, side, reason);
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Delete an order
      * DELETE /api/trading/orders/{orderId}
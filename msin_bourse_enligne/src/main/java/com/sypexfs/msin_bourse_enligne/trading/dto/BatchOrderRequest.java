@@ -0,0 +1,22 @@
+package com.sypexfs.msin_bourse_enligne.trading.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchOrderRequest {
+
+    // Validated together: one invalid order rejects the whole batch
+    @NotEmpty(message = "At least one order is required")
+    @Size(max = 1000, message = "A batch must not exceed 1000 orders")
+    @Valid
+    private List<OrderRequest> orders;
+}
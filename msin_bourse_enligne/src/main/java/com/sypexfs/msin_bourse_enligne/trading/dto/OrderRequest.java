@@ -40,8 +40,8 @@ public class OrderRequest {
     private LocalTime timeExpiry;
 
     @NotBlank(message = "Expiry type is required")
-    @Pattern(regexp = "DAY|GTC|IOC|FOK", message = "Expiry type must be DAY, GTC, IOC, or FOK")
-    private String expiryTypeId; // 'DAY', 'GTC', 'IOC', 'FOK'
+    @Pattern(regexp = "DAY|GTC|GTD|IOC|FOK", message = "Expiry type must be DAY, GTC, GTD, IOC, or FOK")
+    private String expiryTypeId; // 'DAY', 'GTC', 'GTD' (until dateExpiry), 'IOC', 'FOK'
 
     @NotBlank(message = "Order type is required")
     @Pattern(regexp = "MARKET|LIMIT|STOP|STOP_LIMIT", message = "Order type must be MARKET, LIMIT, STOP, or STOP_LIMIT")
@@ -72,4 +72,7 @@ public class OrderRequest {
     private String classId;
 
     private String accountType;
+
+    @Pattern(regexp = "NONE|CANCEL_NEWEST|CANCEL_OLDEST|DECREMENT", message = "STP mode must be NONE, CANCEL_NEWEST, CANCEL_OLDEST, or DECREMENT")
+    private String stpMode; // self-trade prevention, engine default when absent
 }
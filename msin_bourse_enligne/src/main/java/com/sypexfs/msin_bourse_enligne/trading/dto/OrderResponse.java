@@ -46,6 +46,7 @@ public class OrderResponse {
     private String externalRef;
     private String classId;
     private String accountType;
+    private String stpMode;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     
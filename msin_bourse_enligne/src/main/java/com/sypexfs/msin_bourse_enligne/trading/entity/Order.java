@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.DynamicUpdate;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
@@ -21,16 +22,19 @@ import java.time.LocalTime;
                 @Index(name = "idx_orders_status", columnList = "stat_id"),
                 @Index(name = "idx_orders_date", columnList = "date_entry"),
                 @Index(name = "idx_orders_user_status", columnList = "user_id, stat_id"),
+                @Index(name = "idx_orders_user_date", columnList = "user_id, date_entry"),
                 @Index(name = "idx_orders_symbol_date", columnList = "symbol, date_entry")
         })
 @EntityListeners(AuditingEntityListener.class)
+@DynamicUpdate // Execution columns are written concurrently by the matching engine and its pipeline, an amend must not carry them
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Order {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", schema = "trading_schema", allocationSize = 50)
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -120,6 +124,9 @@ public class Order {
     @Column(name = "account_type", length = 50)
     private String accountType;
 
+    @Column(name = "stp_mode", length = 20)
+    private String stpMode; // 'NONE', 'CANCEL_NEWEST', 'CANCEL_OLDEST', 'DECREMENT', null = engine default
+
     @CreatedDate
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -141,6 +148,18 @@ public class Order {
         return quantity.subtract(execQty);
     }
 
+    /**
+     * Quantity shown in the public book: the displayed slice of an iceberg order, the
+     * whole remainder otherwise
+     */
+    public BigDecimal getVisibleQuantity() {
+        BigDecimal remaining = getRemainingQuantity();
+        if (displayedQuantity == null || displayedQuantity.signum() <= 0) {
+            return remaining;
+        }
+        return displayedQuantity.min(remaining);
+    }
+
     public boolean isBuyOrder() {
         return sign != null && sign == 1;
     }
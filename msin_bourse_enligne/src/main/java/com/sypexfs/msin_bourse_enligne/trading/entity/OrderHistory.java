@@ -14,7 +14,8 @@ import java.time.LocalDateTime;
 @Table(name = "order_history", schema = "trading_schema",
         indexes = {
                 @Index(name = "idx_order_history_order", columnList = "order_id"),
-                @Index(name = "idx_order_history_date", columnList = "changed_at")
+                @Index(name = "idx_order_history_date", columnList = "changed_at"),
+                @Index(name = "idx_order_history_journal_sequence", columnList = "journal_sequence")
         })
 @EntityListeners(AuditingEntityListener.class)
 @Data
@@ -23,11 +24,13 @@ import java.time.LocalDateTime;
 public class OrderHistory {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_history_seq")
+    @SequenceGenerator(name = "order_history_seq", sequenceName = "order_history_seq", schema = "trading_schema", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "order_id", nullable = false)
+    // orders is partitioned by date_entry, its key (id, date_entry) cannot be referenced by order_id alone
+    @JoinColumn(name = "order_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Order order;
 
     @Column(name = "previous_status", length = 50)
@@ -48,6 +51,10 @@ public class OrderHistory {
     @Column(name = "changed_by")
     private Long changedBy;
 
+    // Journal FILL record an execution's history row was written for, replay skips it
+    @Column(name = "journal_sequence")
+    private Long journalSequence;
+
     @CreatedDate
     @Column(name = "changed_at", nullable = false, updatable = false)
     private LocalDateTime changedAt;
@@ -26,11 +26,13 @@ import java.time.LocalDateTime;
 public class UserTransaction {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_transactions_seq")
+    @SequenceGenerator(name = "user_transactions_seq", sequenceName = "user_transactions_seq", schema = "trading_schema", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "order_id", insertable = false, updatable = false)
+    // orders is partitioned by date_entry, its key (id, date_entry) cannot be referenced by order_id alone
+    @JoinColumn(name = "order_id", insertable = false, updatable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Order order;
 
     @Column(name = "order_id")
@@ -0,0 +1,13 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+/**
+ * When journal writes are forced to disk
+ */
+public enum FsyncPolicy {
+    // Force after every record, slowest but nothing acknowledged is ever lost
+    EVERY_EVENT,
+    // Force once per processed order, before the order is acknowledged
+    BATCH,
+    // Force on a fixed interval, a crash can lose the last interval
+    PERIODIC
+}
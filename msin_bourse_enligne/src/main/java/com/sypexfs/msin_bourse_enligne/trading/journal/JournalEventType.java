@@ -0,0 +1,19 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+/**
+ * Matching engine events recorded in the journal
+ */
+public enum JournalEventType {
+    ACCEPTED,
+    FILL,
+    CANCEL,
+    STOP_TRIGGER,
+    REDUCE,
+    AMEND;
+
+    private static final JournalEventType[] VALUES = values();
+
+    public static JournalEventType fromCode(int code) {
+        return VALUES[code];
+    }
+}
@@ -0,0 +1,187 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import com.sypexfs.msin_bourse_enligne.trading.matching.FixedPoint;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+
+/**
+ * One journal entry
+ * Prices and quantities are stored as fixed-point ticks and lots. Field meaning by type:
+ * - ACCEPTED: the order as it entered the engine, lots is the quantity and execLots what was already executed,
+ *   displayLots the iceberg slice size (0 when fully visible), expiresAt the DAY/GTD deadline in epoch millis (0 when none),
+ *   dateEntry the order's entry time in epoch millis, which locates its row in the partitioned orders table,
+ *   stpMode the order's own self-trade prevention mode (null for the engine default)
+ * - FILL: orderId is the aggressor, refOrderId the passive order, lots and priceTicks the trade,
+ *   execLots and refExecLots what each order has executed after it, orderType AUCTION when both orders rested
+ * - CANCEL: the order left the book
+ * - STOP_TRIGGER: the stop order was converted, orderType is the new type
+ * - REDUCE: the order quantity was reduced by lots without a trade (self-trade decrement)
+ * - AMEND: the order's new state, same fields as ACCEPTED
+ */
+@Getter
+@AllArgsConstructor
+public class JournalRecord {
+
+    // orderType of a FILL between two resting orders
+    public static final String AUCTION_FILL = "AUCTION";
+
+    // type, sequence, timestamp, orderId, refOrderId, userId, side, priceTicks, stopTicks, lots, execLots, refExecLots,
+    // displayLots, expiresAt, dateEntry
+    static final int FIXED_BYTES = 1 + 8 + 8 + 8 + 8 + 8 + 1 + 8 + 8 + 8 + 8 + 8 + 8 + 8 + 8;
+
+    private final JournalEventType type;
+    private long sequence;
+    private final long timestamp;
+    private final long orderId;
+    private final long refOrderId;
+    private final long userId;
+    private final byte side;
+    private final long priceTicks;
+    private final long stopTicks;
+    private final long lots;
+    private final long execLots;
+    private final long refExecLots;
+    private final long displayLots;
+    private final long expiresAt;
+    private final long dateEntry;
+    private final String symbol;
+    private final String orderType;
+    private final String timeInForce;
+    private final String stpMode;
+
+    /**
+     * ACCEPTED record carrying the order's current state, also used as snapshot entry
+     */
+    static JournalRecord accepted(Order order) {
+        return orderState(JournalEventType.ACCEPTED, order);
+    }
+
+    static JournalRecord amended(Order order) {
+        return orderState(JournalEventType.AMEND, order);
+    }
+
+    private static JournalRecord orderState(JournalEventType type, Order order) {
+        long now = System.currentTimeMillis();
+        return new JournalRecord(type, 0, now,
+            order.getId(), 0, userId(order), side(order),
+            ticks(order.getPrice()), ticks(order.getStopPrice()),
+            lots(order.getQuantity()), lots(order.getExecQty()), 0, lots(order.getDisplayedQuantity()), expiresAt(order),
+            dateEntry(order, now), order.getSymbol(), order.getOrderTypeId(), order.getExpiryTypeId(), order.getStpMode());
+    }
+
+    void assignSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    int encodedLength() {
+        return FIXED_BYTES + stringLength(symbol) + stringLength(orderType) + stringLength(timeInForce)
+            + stringLength(stpMode);
+    }
+
+    void encode(ByteBuffer buffer) {
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(sequence);
+        buffer.putLong(timestamp);
+        buffer.putLong(orderId);
+        buffer.putLong(refOrderId);
+        buffer.putLong(userId);
+        buffer.put(side);
+        buffer.putLong(priceTicks);
+        buffer.putLong(stopTicks);
+        buffer.putLong(lots);
+        buffer.putLong(execLots);
+        buffer.putLong(refExecLots);
+        buffer.putLong(displayLots);
+        buffer.putLong(expiresAt);
+        buffer.putLong(dateEntry);
+        putString(buffer, symbol);
+        putString(buffer, orderType);
+        putString(buffer, timeInForce);
+        putString(buffer, stpMode);
+    }
+
+    static JournalRecord decode(ByteBuffer buffer) {
+        return new JournalRecord(
+            JournalEventType.fromCode(buffer.get()),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.get(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            buffer.getLong(),
+            getString(buffer),
+            getString(buffer),
+            getString(buffer),
+            getString(buffer)
+        );
+    }
+
+    private static int stringLength(String value) {
+        return 2 + (value != null ? value.getBytes(StandardCharsets.UTF_8).length : 0);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long ticks(BigDecimal price) {
+        return price != null ? FixedPoint.toTicks(price) : 0;
+    }
+
+    static long lots(BigDecimal quantity) {
+        return quantity != null ? FixedPoint.toLots(quantity) : 0;
+    }
+
+    static long userId(Order order) {
+        return order.getUserId() != null ? order.getUserId() : 0;
+    }
+
+    static long expiresAt(Order order) {
+        if (order.getDateExpiry() == null || order.getTimeExpiry() == null) {
+            return 0;
+        }
+        return order.getDateExpiry().atTime(order.getTimeExpiry())
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static long dateEntry(Order order, long fallback) {
+        if (order.getDateEntry() == null) {
+            return fallback;
+        }
+        return order.getDateEntry().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static byte side(Order order) {
+        return (byte) (order.isBuyOrder() ? 1 : -1);
+    }
+}
@@ -0,0 +1,176 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import com.sypexfs.msin_bourse_enligne.trading.matching.FixedPoint;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds the open orders of the matching engine from journal records
+ * Open orders are the accepted ones minus fills and cancels. They are kept in
+ * acceptance order so resting them again restores time priority.
+ * Records at or below the starting sequence are already reflected and are skipped.
+ */
+public class JournalReplay {
+
+    private final Map<Long, Order> openOrders = new LinkedHashMap<>();
+    private final long fromSequence;
+    private long lastSequence;
+
+    public JournalReplay(long fromSequence) {
+        this.fromSequence = fromSequence;
+        this.lastSequence = fromSequence;
+    }
+
+    /**
+     * Start from the open orders of a book snapshot
+     */
+    public static JournalReplay fromSnapshot(OrderBookSnapshot snapshot) {
+        JournalReplay replay = new JournalReplay(snapshot.getSequence());
+        for (JournalRecord record : snapshot.getOrders()) {
+            replay.openOrders.put(record.getOrderId(), toOrder(record));
+        }
+        return replay;
+    }
+
+    public void apply(JournalRecord record) {
+        if (record.getSequence() <= fromSequence) {
+            return;
+        }
+        lastSequence = record.getSequence();
+        switch (record.getType()) {
+            case ACCEPTED:
+                // A re-accepted order (stop re-submitted, startup reload) replaces the previous state
+                openOrders.remove(record.getOrderId());
+                openOrders.put(record.getOrderId(), toOrder(record));
+                break;
+            case FILL:
+                applyFill(record.getOrderId(), record.getLots());
+                applyFill(record.getRefOrderId(), record.getLots());
+                break;
+            case CANCEL:
+                openOrders.remove(record.getOrderId());
+                break;
+            case REDUCE:
+                Order reducedOrder = openOrders.get(record.getOrderId());
+                if (reducedOrder != null) {
+                    reducedOrder.setQuantity(reducedOrder.getQuantity().subtract(FixedPoint.toQuantity(record.getLots())));
+                    if (reducedOrder.getRemainingQuantity().signum() <= 0) {
+                        openOrders.remove(record.getOrderId());
+                    }
+                }
+                break;
+            case AMEND:
+                applyAmend(record);
+                break;
+            case STOP_TRIGGER:
+                Order stopOrder = openOrders.get(record.getOrderId());
+                if (stopOrder != null) {
+                    stopOrder.setOrderTypeId(record.getOrderType());
+                }
+                break;
+        }
+    }
+
+    /**
+     * Orders that belong in a book: limit orders with quantity left and untriggered stops
+     */
+    public List<Order> getOpenOrders() {
+        List<Order> result = new ArrayList<>(openOrders.size());
+        for (Order order : openOrders.values()) {
+            if (order.getRemainingQuantity().compareTo(BigDecimal.ZERO) <= 0) {
+                continue;
+            }
+            // Market orders never rest, whatever was left of them was dropped
+            if ("MARKET".equals(order.getOrderTypeId())) {
+                continue;
+            }
+            result.add(order);
+        }
+        return result;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    private void applyFill(long orderId, long lots) {
+        Order order = openOrders.get(orderId);
+        if (order == null) {
+            return;
+        }
+        BigDecimal execQty = order.getExecQty().add(FixedPoint.toQuantity(lots));
+        order.setExecQty(execQty);
+        if (execQty.compareTo(order.getQuantity()) >= 0) {
+            order.setStatId("FILLED");
+            openOrders.remove(orderId);
+        } else {
+            order.setStatId("PARTIAL");
+        }
+    }
+
+    /**
+     * Same priority rule as the book: the order keeps its place only when the price is
+     * unchanged and neither the remaining nor the displayed quantity grew
+     */
+    private void applyAmend(JournalRecord record) {
+        Order order = openOrders.get(record.getOrderId());
+        if (order == null) {
+            return;
+        }
+        long execLots = JournalRecord.lots(order.getExecQty());
+        long oldRemaining = JournalRecord.lots(order.getQuantity()) - execLots;
+        long newRemaining = record.getLots() - execLots;
+        boolean keepsPriority = JournalRecord.ticks(order.getPrice()) == record.getPriceTicks()
+            && newRemaining <= oldRemaining
+            && shownLots(record.getDisplayLots(), newRemaining) <= shownLots(JournalRecord.lots(order.getDisplayedQuantity()), oldRemaining);
+        
+        Order amended = toOrder(record);
+        amended.setExecQty(order.getExecQty());
+        amended.setStatId(order.getStatId());
+        amended.setDateEntry(order.getDateEntry());
+        if (!keepsPriority) {
+            // Re-inserting moves the order behind everything accepted so far
+            openOrders.remove(record.getOrderId());
+        }
+        openOrders.put(record.getOrderId(), amended);
+    }
+
+    private static long shownLots(long displayLots, long remainingLots) {
+        return displayLots > 0 && displayLots < remainingLots ? displayLots : remainingLots;
+    }
+
+    /**
+     * Order as carried by an ACCEPTED or AMEND record
+     */
+    public static Order toOrder(JournalRecord record) {
+        Order order = new Order();
+        order.setId(record.getOrderId());
+        order.setUserId(record.getUserId());
+        order.setSymbol(record.getSymbol());
+        order.setSign((int) record.getSide());
+        order.setOrderTypeId(record.getOrderType());
+        order.setPrice(record.getPriceTicks() != 0 ? FixedPoint.toPrice(record.getPriceTicks()) : null);
+        order.setStopPrice(record.getStopTicks() != 0 ? FixedPoint.toPrice(record.getStopTicks()) : null);
+        order.setQuantity(FixedPoint.toQuantity(record.getLots()));
+        order.setExecQty(FixedPoint.toQuantity(record.getExecLots()));
+        order.setDisplayedQuantity(record.getDisplayLots() != 0 ? FixedPoint.toQuantity(record.getDisplayLots()) : null);
+        order.setStatId(record.getExecLots() > 0 ? "PARTIAL" : "PENDING");
+        order.setDateEntry(LocalDateTime.ofInstant(Instant.ofEpochMilli(record.getDateEntry()), ZoneId.systemDefault()));
+        order.setExpiryTypeId(record.getTimeInForce());
+        order.setStpMode(record.getStpMode());
+        if (record.getExpiresAt() > 0) {
+            LocalDateTime expiresAt = LocalDateTime.ofInstant(Instant.ofEpochMilli(record.getExpiresAt()), ZoneId.systemDefault());
+            order.setDateExpiry(expiresAt.toLocalDate());
+            order.setTimeExpiry(expiresAt.toLocalTime());
+        }
+        return order;
+    }
+}
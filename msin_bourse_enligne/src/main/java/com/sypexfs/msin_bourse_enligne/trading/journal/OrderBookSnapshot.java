@@ -0,0 +1,32 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Open orders of one book as of a journal sequence number
+ * Orders are kept as ACCEPTED records so they share the journal encoding
+ */
+@Getter
+@AllArgsConstructor
+public class OrderBookSnapshot {
+    private final String symbol;
+    private final long sequence;
+    private final List<JournalRecord> orders;
+
+    /**
+     * Capture the current state of the given orders, must run while the book is not being matched
+     */
+    public static OrderBookSnapshot capture(String symbol, long sequence, Collection<Order> orders) {
+        List<JournalRecord> records = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            records.add(JournalRecord.accepted(order));
+        }
+        return new OrderBookSnapshot(symbol, sequence, records);
+    }
+}
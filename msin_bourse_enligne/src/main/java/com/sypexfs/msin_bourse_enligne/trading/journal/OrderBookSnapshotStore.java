@@ -0,0 +1,152 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Binary order book snapshots on local disk
+ * One file per symbol: [int magic][int version][long sequence][symbol][int count] followed by
+ * length-prefixed ACCEPTED records. Files are written to a temporary name and moved into
+ * place so a crash never leaves a half-written snapshot behind. A round file records the
+ * journal sequence from which every book is covered by a snapshot or by the journal tail.
+ */
+@Component
+@Slf4j
+public class OrderBookSnapshotStore {
+
+    private static final int MAGIC = 0x4F42534E; // "OBSN"
+    private static final int VERSION = 6;
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String ROUND_FILE = "snapshot.round";
+
+    @Value("${app.trading.snapshot.directory:./data/snapshots}")
+    private String directory;
+
+    /**
+     * Write a book snapshot, replacing the previous one for the symbol
+     */
+    public void write(OrderBookSnapshot snapshot) throws IOException {
+        byte[] symbol = snapshot.getSymbol().getBytes(StandardCharsets.UTF_8);
+        int size = 4 + 4 + 8 + 2 + symbol.length + 4;
+        for (JournalRecord record : snapshot.getOrders()) {
+            size += 4 + record.encodedLength();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(snapshot.getSequence());
+        buffer.putShort((short) symbol.length);
+        buffer.put(symbol);
+        buffer.putInt(snapshot.getOrders().size());
+        for (JournalRecord record : snapshot.getOrders()) {
+            buffer.putInt(record.encodedLength());
+            record.encode(buffer);
+        }
+        buffer.flip();
+
+        Path dir = snapshotDir();
+        Path target = dir.resolve(fileName(snapshot.getSymbol()));
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load every snapshot, decoding the files in parallel
+     * Unreadable files are logged and skipped
+     */
+    public List<OrderBookSnapshot> loadAll() {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(snapshotDir())) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(SNAPSHOT_SUFFIX)).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list order book snapshots", e);
+        }
+
+        return new ArrayList<>(files.parallelStream()
+            .map(this::read)
+            .filter(Objects::nonNull)
+            .toList());
+    }
+
+    /**
+     * Journal sequence of the last complete snapshot round, 0 when there is none
+     */
+    public long readRoundSequence() {
+        Path round = snapshotDir().resolve(ROUND_FILE);
+        if (!Files.exists(round)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(round).trim());
+        } catch (IOException | NumberFormatException e) {
+            log.error("Unreadable snapshot round file, replaying the whole journal: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    public void writeRoundSequence(long sequence) throws IOException {
+        Path dir = snapshotDir();
+        Path temp = dir.resolve(ROUND_FILE + ".tmp");
+        Files.writeString(temp, Long.toString(sequence));
+        Files.move(temp, dir.resolve(ROUND_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private OrderBookSnapshot read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                log.error("Ignoring order book snapshot {} with unknown format", file.getFileName());
+                return null;
+            }
+            long sequence = buffer.getLong();
+            byte[] symbol = new byte[buffer.getShort()];
+            buffer.get(symbol);
+            int count = buffer.getInt();
+
+            List<JournalRecord> orders = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                orders.add(JournalRecord.decode(buffer.slice(buffer.position(), length)));
+                buffer.position(buffer.position() + length);
+            }
+            return new OrderBookSnapshot(new String(symbol, StandardCharsets.UTF_8), sequence, orders);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to read order book snapshot {}: {}", file.getFileName(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private Path snapshotDir() {
+        Path dir = Paths.get(directory);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create snapshot directory " + dir, e);
+        }
+        return dir;
+    }
+
+    private static String fileName(String symbol) {
+        return "book-" + symbol.replaceAll("[^A-Za-z0-9_.-]", "_") + SNAPSHOT_SUFFIX;
+    }
+}
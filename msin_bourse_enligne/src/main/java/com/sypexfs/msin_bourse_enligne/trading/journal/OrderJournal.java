@@ -0,0 +1,501 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of matching engine events
+ * Records go to memory-mapped segment files named after their first sequence number.
+ * Each record is framed as [int length][int crc32][body]; a zero length marks the end
+ * of the written part of a segment and a bad checksum marks a torn tail, which is
+ * where replay stops and where appends resume after a restart.
+ * FILL records stay unapplied until the persistence pipeline has written their executions;
+ * the sequence below the first unapplied one is saved as the watermark replayed from on startup.
+ */
+@Component
+@Slf4j
+public class OrderJournal {
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String WATERMARK_FILE = "pipeline.watermark";
+
+    @Getter
+    @Value("${app.trading.journal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.trading.journal.directory:./data/journal}")
+    private String directory;
+
+    @Value("${app.trading.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Getter
+    @Value("${app.trading.journal.fsync:BATCH}")
+    private FsyncPolicy fsyncPolicy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(512);
+
+    private Path journalDir;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int dirtyFrom = -1;
+    private long nextSequence = 1;
+
+    // FILL records whose executions are not in the database yet, with the number of executions left
+    private final ConcurrentSkipListMap<Long, Integer> unappliedFills = new ConcurrentSkipListMap<>();
+    private volatile long savedAppliedSequence;
+
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            log.info("Order journal disabled");
+            return;
+        }
+
+        journalDir = Paths.get(directory);
+        Files.createDirectories(journalDir);
+
+        List<Path> segments = listSegments(journalDir);
+        if (segments.isEmpty()) {
+            openSegment(journalDir.resolve(segmentName(1)), 0);
+        } else {
+            Path last = segments.get(segments.size() - 1);
+            long[] lastSequence = {segmentFirstSequence(last) - 1};
+            int end = readSegment(last, record -> lastSequence[0] = record.getSequence());
+            nextSequence = lastSequence[0] + 1;
+            openSegment(last, end);
+        }
+
+        // Fills past the watermark were still on their way to the database at the last stop
+        savedAppliedSequence = readAppliedSequence();
+        read(journalDir, savedAppliedSequence, record -> {
+            if (record.getType() == JournalEventType.FILL) {
+                unappliedFills.put(record.getSequence(), executions(record));
+            }
+        });
+        log.info("Order journal opened in {} at sequence {} (fsync: {}, {} fill(s) past the pipeline watermark)",
+                 journalDir, nextSequence, fsyncPolicy, unappliedFills.size());
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        if (!enabled || channel == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+        saveAppliedSequence();
+    }
+
+    /**
+     * Record an order entering the engine
+     */
+    public void orderAccepted(Order order) {
+        append(JournalRecord.accepted(order));
+    }
+
+    /**
+     * Record a trade between an aggressor and a resting order, before either order is updated
+     * The passive order's execution stays unapplied until {@link #fillApplied} is called
+     *
+     * @return sequence number of the record, 0 when the journal is disabled
+     */
+    public long fill(Order aggressor, Order passive, long lots, long priceTicks) {
+        return append(fillRecord(aggressor, passive, lots, priceTicks, null));
+    }
+
+    /**
+     * Record an auction trade between two resting orders, both executions stay unapplied
+     */
+    public long auctionFill(Order buyOrder, Order sellOrder, long lots, long priceTicks) {
+        return append(fillRecord(buyOrder, sellOrder, lots, priceTicks, JournalRecord.AUCTION_FILL));
+    }
+
+    private static JournalRecord fillRecord(Order aggressor, Order passive, long lots, long priceTicks, String kind) {
+        return new JournalRecord(JournalEventType.FILL, 0, System.currentTimeMillis(),
+            aggressor.getId(), passive.getId(), 0, JournalRecord.side(aggressor),
+            priceTicks, 0, lots, JournalRecord.lots(aggressor.getExecQty()) + lots,
+            JournalRecord.lots(passive.getExecQty()) + lots, 0, 0, 0,
+            aggressor.getSymbol(), kind, null, null);
+    }
+
+    /**
+     * Record an order leaving the book without being filled
+     */
+    public void cancel(Order order) {
+        append(new JournalRecord(JournalEventType.CANCEL, 0, System.currentTimeMillis(),
+            order.getId(), 0, JournalRecord.userId(order), JournalRecord.side(order),
+            0, 0, 0, 0, 0, 0, 0, 0,
+            order.getSymbol(), null, null, null));
+    }
+
+    /**
+     * Record an order quantity reduced without a trade
+     */
+    public void reduce(Order order, long lots) {
+        append(new JournalRecord(JournalEventType.REDUCE, 0, System.currentTimeMillis(),
+            order.getId(), 0, JournalRecord.userId(order), JournalRecord.side(order),
+            0, 0, lots, 0, 0, 0, 0, 0,
+            order.getSymbol(), null, null, null));
+    }
+
+    /**
+     * Record an order amended in the book
+     */
+    public void amend(Order order) {
+        append(JournalRecord.amended(order));
+    }
+
+    /**
+     * Record a stop order being converted to its executable type
+     */
+    public void stopTriggered(Order order) {
+        append(new JournalRecord(JournalEventType.STOP_TRIGGER, 0, System.currentTimeMillis(),
+            order.getId(), 0, JournalRecord.userId(order), JournalRecord.side(order),
+            JournalRecord.ticks(order.getPrice()), JournalRecord.ticks(order.getStopPrice()), 0, 0, 0, 0, 0, 0,
+            order.getSymbol(), order.getOrderTypeId(), null, null));
+    }
+
+    /**
+     * Make the records of the current order durable before it is acknowledged
+     * Only forces under the BATCH policy, the other policies handle it themselves
+     */
+    public void commitBatch() {
+        if (enabled && fsyncPolicy == FsyncPolicy.BATCH) {
+            flush();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.trading.journal.flush-interval-ms:10}")
+    void periodicFlush() {
+        if (enabled && fsyncPolicy == FsyncPolicy.PERIODIC) {
+            flush();
+        }
+    }
+
+    /**
+     * Force everything written since the last flush to disk
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            forceDirty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mark one execution of a FILL record as written to the database, or as never to be written
+     */
+    public void fillApplied(long sequence) {
+        if (sequence > 0) {
+            unappliedFills.computeIfPresent(sequence, (key, left) -> left > 1 ? left - 1 : null);
+        }
+    }
+
+    /**
+     * Sequence number below the first unapplied FILL record, every execution up to it is in the database
+     */
+    public long getAppliedSequence() {
+        lock.lock();
+        try {
+            return unappliedFills.isEmpty() ? nextSequence - 1 : unappliedFills.firstKey() - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * FILL records found unapplied when the journal was opened and not applied since
+     */
+    public List<JournalRecord> getUnappliedFills() {
+        List<JournalRecord> fills = new ArrayList<>();
+        replay(savedAppliedSequence, record -> {
+            if (record.getType() == JournalEventType.FILL && unappliedFills.containsKey(record.getSequence())) {
+                fills.add(record);
+            }
+        });
+        return fills;
+    }
+
+    /**
+     * Save the applied sequence as the watermark the next start replays fills from
+     */
+    @Scheduled(fixedDelayString = "${app.trading.journal.watermark-interval-ms:1000}")
+    void saveAppliedSequence() {
+        if (!enabled) {
+            return;
+        }
+        long applied = getAppliedSequence();
+        if (applied == savedAppliedSequence) {
+            return;
+        }
+        try {
+            Path temp = journalDir.resolve(WATERMARK_FILE + ".tmp");
+            Files.writeString(temp, Long.toString(applied));
+            Files.move(temp, journalDir.resolve(WATERMARK_FILE),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedAppliedSequence = applied;
+        } catch (IOException e) {
+            log.error("Failed to save the pipeline watermark: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sequence number of the last record written, 0 when the journal is empty
+     */
+    public long getLastSequence() {
+        lock.lock();
+        try {
+            return nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replay every record with a sequence number above fromSequence, in order
+     */
+    public void replay(long fromSequence, Consumer<JournalRecord> consumer) {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            forceDirty();
+            read(journalDir, fromSequence, consumer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read the records of a journal directory without opening it for writing
+     * Used by offline tools working on a copy of a recorded journal
+     */
+    public static void read(Path directory, long fromSequence, Consumer<JournalRecord> consumer) {
+        try {
+            List<Path> segments = listSegments(directory);
+            for (int i = 0; i < segments.size(); i++) {
+                // Skip segments that end before the requested sequence
+                if (i + 1 < segments.size() && segmentFirstSequence(segments.get(i + 1)) <= fromSequence + 1) {
+                    continue;
+                }
+                readSegment(segments.get(i), record -> {
+                    if (record.getSequence() > fromSequence) {
+                        consumer.accept(record);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read order journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Delete segments whose records all have a sequence number at or below the given one
+     * The segment being written is always kept, and so are the fills past the saved watermark
+     */
+    public void truncateBefore(long sequence) {
+        if (!enabled) {
+            return;
+        }
+        sequence = Math.min(sequence, savedAppliedSequence);
+        lock.lock();
+        try {
+            List<Path> segments = listSegments(journalDir);
+            int deleted = 0;
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (segmentFirstSequence(segments.get(i + 1)) > sequence + 1) {
+                    break;
+                }
+                Files.deleteIfExists(segments.get(i));
+                deleted++;
+            }
+            if (deleted > 0) {
+                log.info("Order journal truncated: {} segment(s) up to sequence {} removed", deleted, sequence);
+            }
+        } catch (IOException e) {
+            log.error("Failed to truncate order journal: {}", e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long append(JournalRecord record) {
+        if (!enabled) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long sequence = nextSequence;
+            record.assignSequence(sequence);
+            int length = record.encodedLength();
+            if (scratch.capacity() < length) {
+                scratch = ByteBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+            }
+            scratch.clear();
+            record.encode(scratch);
+            scratch.flip();
+
+            crc.reset();
+            crc.update(scratch.array(), 0, length);
+
+            // Keep room for the zero length terminator
+            if (buffer.remaining() < HEADER_BYTES + length + 4) {
+                rollSegment();
+            }
+
+            int position = buffer.position();
+            buffer.putInt(length);
+            buffer.putInt((int) crc.getValue());
+            buffer.put(scratch);
+            nextSequence++;
+            if (record.getType() == JournalEventType.FILL) {
+                unappliedFills.put(sequence, executions(record));
+            }
+
+            if (fsyncPolicy == FsyncPolicy.EVERY_EVENT) {
+                buffer.force(position, HEADER_BYTES + length);
+            } else if (dirtyFrom < 0) {
+                dirtyFrom = position;
+            }
+            return sequence;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to order journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Watermark saved by the last run, the whole journal when it predates the watermark
+     */
+    private long readAppliedSequence() {
+        Path watermark = journalDir.resolve(WATERMARK_FILE);
+        if (!Files.exists(watermark)) {
+            return nextSequence - 1;
+        }
+        try {
+            return Long.parseLong(Files.readString(watermark).trim());
+        } catch (IOException | NumberFormatException e) {
+            log.error("Unreadable pipeline watermark, replaying every fill in the journal: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private static int executions(JournalRecord record) {
+        return JournalRecord.AUCTION_FILL.equals(record.getOrderType()) ? 2 : 1;
+    }
+
+    private void forceDirty() {
+        if (dirtyFrom >= 0) {
+            buffer.force(dirtyFrom, buffer.position() - dirtyFrom);
+            dirtyFrom = -1;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        forceDirty();
+        channel.close();
+        openSegment(journalDir.resolve(segmentName(nextSequence)), 0);
+        log.info("Order journal rolled to new segment at sequence {}", nextSequence);
+    }
+
+    private void openSegment(Path path, int position) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentSizeMb * 1024 * 1024);
+        buffer.position(position);
+        // Clear a possibly torn record so the next append is not followed by garbage
+        if (buffer.remaining() >= 4) {
+            buffer.putInt(position, 0);
+        }
+        dirtyFrom = -1;
+    }
+
+    /**
+     * Read the valid records of a segment
+     *
+     * @return position right after the last valid record
+     */
+    private static int readSegment(Path path, Consumer<JournalRecord> consumer) throws IOException {
+        try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer data = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            CRC32 readCrc = new CRC32();
+            int end = 0;
+            while (data.remaining() >= HEADER_BYTES) {
+                int length = data.getInt();
+                int checksum = data.getInt();
+                if (length <= 0 || length > data.remaining()) {
+                    break;
+                }
+
+                ByteBuffer body = data.slice(data.position(), length);
+                readCrc.reset();
+                readCrc.update(body.duplicate());
+                if ((int) readCrc.getValue() != checksum) {
+                    log.warn("Torn record in journal segment {} at offset {}, ignoring the rest", path.getFileName(), end);
+                    break;
+                }
+
+                consumer.accept(JournalRecord.decode(body));
+                data.position(data.position() + length);
+                end = data.position();
+            }
+            return end;
+        }
+    }
+
+    private static List<Path> listSegments(Path journalDir) throws IOException {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files
+                .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentFirstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,19 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Equilibrium of a call auction: the uncross price and the volume it executes
+ * Surplus is the buy volume minus the sell volume left unmatched at that price
+ */
+@Data
+@AllArgsConstructor
+public class AuctionQuote {
+    private String symbol;
+    private BigDecimal price;
+    private BigDecimal volume;
+    private BigDecimal surplus;
+}
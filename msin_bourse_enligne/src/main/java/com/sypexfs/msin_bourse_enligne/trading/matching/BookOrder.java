@@ -4,15 +4,14 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
 
 /**
- * Key for ordering orders by price-time priority
+ * Resting order as seen in the market-by-order view, quantity is the shown part
  */
 @Data
 @AllArgsConstructor
-public class PriceTimeKey {
+public class BookOrder {
+    private long orderId;
     private BigDecimal price;
-    private LocalDateTime timestamp;
-    private Long orderId; // For uniqueness
+    private BigDecimal quantity;
 }
@@ -0,0 +1,22 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Market-by-price change of one level
+ * Carries the level's new visible volume and order count, a zero volume means the level is gone.
+ * Sequence numbers are per book and gap free, they continue from {@link OrderBookDepth#getSequence()}.
+ */
+@Data
+@AllArgsConstructor
+public class DepthUpdate {
+    private String symbol;
+    private long sequence;
+    private String side; // BUY or SELL
+    private BigDecimal price;
+    private BigDecimal volume;
+    private int orderCount;
+}
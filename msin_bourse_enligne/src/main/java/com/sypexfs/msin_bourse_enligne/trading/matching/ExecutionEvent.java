@@ -0,0 +1,44 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.UserTransaction;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Execution emitted by the matching engine for the persistence pipeline
+ * Carries the passive order state as it was right after the fill, so events can be
+ * written in any order without moving an order backwards
+ * Transactions are null on order-only events: an auction trade updates both of its
+ * resting orders but books its transactions once
+ */
+@Getter
+@AllArgsConstructor
+public class ExecutionEvent {
+    private final String symbol;
+    private final Long passiveOrderId;
+    private final Long passiveUserId;
+    private final String passiveStatus;
+    private final BigDecimal previousExecQty;
+    private final BigDecimal passiveExecQty;
+    private final BigDecimal passiveExecAvgPrice;
+    private final BigDecimal passiveRemainingQty;
+    // Part of the remaining quantity shown in the book, less than the remainder for icebergs
+    private final BigDecimal passiveDisplayedQty;
+    // Lets the order update skip the orders partitions older than the order
+    private final LocalDateTime passiveDateEntry;
+    private final UserTransaction aggressorTransaction;
+    private final UserTransaction passiveTransaction;
+    // FILL record of the trade, 0 when the journal is disabled
+    private final long journalSequence;
+
+    public boolean isPassiveFilled() {
+        return "FILLED".equals(passiveStatus);
+    }
+
+    public boolean isPassiveIceberg() {
+        return passiveDisplayedQty.compareTo(passiveRemainingQty) < 0;
+    }
+}
@@ -0,0 +1,379 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.portfolio.service.PortfolioUpdateService;
+import com.sypexfs.msin_bourse_enligne.trading.entity.OrderHistory;
+import com.sypexfs.msin_bourse_enligne.trading.entity.UserTransaction;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderJournal;
+import com.sypexfs.msin_bourse_enligne.trading.repository.MarketOrderbookWriter;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderHistoryRepository;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderRepository;
+import com.sypexfs.msin_bourse_enligne.trading.repository.UserTransactionRepository;
+import com.sypexfs.msin_bourse_enligne.trading.service.TransactionSyncService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists executions off the matching critical section
+ * The engine publishes {@link ExecutionEvent}s into a bounded in-memory ring once the
+ * matching transaction has committed, and a single drainer thread writes them in
+ * batches: passive order updates go out as one JDBC batch, transactions, history and
+ * public orderbook rows are flushed together in one database transaction.
+ * Market sync and portfolio updates run after that transaction commits, and the journal
+ * is told which FILL records are in the database so its watermark can move past them.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ExecutionPersistencePipeline {
+
+    // Guarded so a late or replayed event never moves an order backwards, the guard sits in
+    // the SET list so an older event still matches its row: no row means no committed order
+    // An order cancelled after the fill was matched keeps its status but still records the fill
+    // The date_entry bound prunes the older orders partitions, with a day of slack for recovered orders
+    private static final String UPDATE_PASSIVE_ORDER_SQL =
+        "UPDATE trading_schema.orders SET exec_qty = GREATEST(COALESCE(exec_qty, 0), ?), " +
+        "exec_avg_price = CASE WHEN COALESCE(exec_qty, 0) <= ? THEN ? ELSE exec_avg_price END, " +
+        "stat_id = CASE WHEN stat_id IN ('CANCELLED', 'REJECTED') OR COALESCE(exec_qty, 0) > ? " +
+        "THEN stat_id ELSE ? END, updated_at = ? " +
+        "WHERE id = ? AND date_entry >= ?";
+
+    private static final Timestamp NO_ENTRY_BOUND = Timestamp.valueOf(LocalDateTime.of(1970, 1, 1, 0, 0));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderRepository orderRepository;
+    private final UserTransactionRepository userTransactionRepository;
+    private final OrderHistoryRepository orderHistoryRepository;
+    private final MarketOrderbookWriter marketOrderbookWriter;
+    private final TransactionSyncService transactionSyncService;
+    private final PortfolioUpdateService portfolioUpdateService;
+    private final OrderJournal journal;
+
+    // Ring capacity, publishers block once it is full
+    @Value("${app.trading.persistence.ring-size:65536}")
+    private int ringSize;
+
+    // Maximum executions written per database transaction
+    @Value("${app.trading.persistence.batch-size:500}")
+    private int batchSize;
+
+    // Times an execution whose passive order row is not visible yet is written again
+    // The passive order may rest in a transaction that commits after the aggressor's
+    @Value("${app.trading.persistence.retry-attempts:20}")
+    private int retryAttempts;
+
+    @Value("${app.trading.persistence.retry-delay-ms:250}")
+    private long retryDelayMs;
+
+    private final AtomicLong persistedEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+    private final AtomicLong unmatchedUpdates = new AtomicLong();
+
+    // Executions waiting for their passive order row, in due order
+    private final Queue<PendingRetry> retries = new ConcurrentLinkedQueue<>();
+    private final Map<ExecutionEvent, Integer> attempts = new ConcurrentHashMap<>();
+
+    private BlockingQueue<ExecutionEvent> ring;
+    private Thread drainer;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        ring = new ArrayBlockingQueue<>(ringSize);
+        running = true;
+        drainer = new Thread(this::drainLoop, "execution-persistence");
+        drainer.setDaemon(true);
+        drainer.start();
+        log.info("Execution persistence pipeline started (ring: {}, batch: {})", ringSize, batchSize);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        drainer.join(TimeUnit.SECONDS.toMillis(30));
+        log.info("Execution persistence pipeline stopped, {} executions left unwritten",
+                 ring.size() + retries.size());
+    }
+
+    /**
+     * Publish executions once the current transaction commits
+     * The aggressor order is inserted by the caller's transaction, so nothing that
+     * references it may be written before that row is visible
+     */
+    public void publishAfterCommit(List<ExecutionEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(events);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    // Rolled back trades are never written
+                    if (status != STATUS_COMMITTED) {
+                        events.forEach(event -> journal.fillApplied(event.getJournalSequence()));
+                    }
+                }
+            });
+        } else {
+            publish(events);
+        }
+    }
+
+    /**
+     * Number of executions waiting in the ring
+     */
+    public int getBacklog() {
+        return ring.size();
+    }
+
+    public long getPersistedEvents() {
+        return persistedEvents.get();
+    }
+
+    public long getFailedEvents() {
+        return failedEvents.get();
+    }
+
+    /**
+     * Passive order updates that matched no row, each one is retried until the bound
+     */
+    public long getUnmatchedUpdates() {
+        return unmatchedUpdates.get();
+    }
+
+    /**
+     * Number of executions waiting for their passive order row
+     */
+    public int getPendingRetries() {
+        return retries.size();
+    }
+
+    private void publish(List<ExecutionEvent> events) {
+        for (ExecutionEvent event : events) {
+            try {
+                ring.put(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while publishing execution for order {}, writing it inline",
+                         event.getPassiveOrderId());
+                persistBatch(List.of(event));
+            }
+        }
+    }
+
+    private void drainLoop() {
+        List<ExecutionEvent> batch = new ArrayList<>(batchSize);
+        while (running || !ring.isEmpty() || !retries.isEmpty()) {
+            try {
+                ExecutionEvent first = ring.poll(100, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    ring.drainTo(batch, batchSize - 1);
+                }
+                drainDueRetries(batch);
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                persistBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Unexpected error in execution persistence pipeline", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void drainDueRetries(List<ExecutionEvent> batch) {
+        long now = System.nanoTime();
+        PendingRetry retry;
+        while ((retry = retries.peek()) != null && retry.dueAt() - now <= 0) {
+            batch.add(retries.poll().event());
+        }
+    }
+
+    private void persistBatch(List<ExecutionEvent> batch) {
+        List<ExecutionEvent> written = writeInTransaction(batch);
+        persistedEvents.addAndGet(written.size());
+        if (!attempts.isEmpty()) {
+            written.forEach(attempts::remove);
+        }
+        written.forEach(event -> journal.fillApplied(event.getJournalSequence()));
+
+        for (ExecutionEvent event : written) {
+            if (event.getAggressorTransaction() == null) {
+                continue;
+            }
+            // Sync only the aggressor transaction to market data to avoid duplicates
+            transactionSyncService.syncUserTransactionToMarket(event.getAggressorTransaction());
+            updatePortfolio(event.getAggressorTransaction());
+            updatePortfolio(event.getPassiveTransaction());
+        }
+    }
+
+    /**
+     * Write a batch in one transaction, falling back to one execution per transaction
+     * so a single bad row does not drop the whole batch
+     * Failed executions stay unapplied in the journal and are replayed on the next start
+     */
+    private List<ExecutionEvent> writeInTransaction(List<ExecutionEvent> batch) {
+        try {
+            List<ExecutionEvent> unmatched = transactionTemplate.execute(status -> writeBatch(batch));
+            if (unmatched == null || unmatched.isEmpty()) {
+                return batch;
+            }
+            unmatched.forEach(this::retryLater);
+            List<ExecutionEvent> written = new ArrayList<>(batch);
+            written.removeAll(unmatched);
+            return written;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                ExecutionEvent event = batch.get(0);
+                failedEvents.incrementAndGet();
+                log.error("Failed to persist execution for passive order {}: {}",
+                          event.getPassiveOrderId(), e.getMessage(), e);
+                return List.of();
+            }
+
+            log.warn("Failed to persist batch of {} executions, retrying one by one: {}",
+                     batch.size(), e.getMessage());
+            List<ExecutionEvent> written = new ArrayList<>(batch.size());
+            for (ExecutionEvent event : batch) {
+                written.addAll(writeInTransaction(List.of(event)));
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Write the executions whose passive order row exists, returning the ones that matched none
+     */
+    private List<ExecutionEvent> writeBatch(List<ExecutionEvent> batch) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_PASSIVE_ORDER_SQL, batch, batch.size(), (ps, event) -> {
+            ps.setBigDecimal(1, event.getPassiveExecQty());
+            ps.setBigDecimal(2, event.getPassiveExecQty());
+            ps.setBigDecimal(3, event.getPassiveExecAvgPrice());
+            ps.setBigDecimal(4, event.getPassiveExecQty());
+            ps.setString(5, event.getPassiveStatus());
+            ps.setTimestamp(6, now);
+            ps.setLong(7, event.getPassiveOrderId());
+            ps.setTimestamp(8, event.getPassiveDateEntry() != null
+                ? Timestamp.valueOf(event.getPassiveDateEntry().toLocalDate().minusDays(1).atStartOfDay())
+                : NO_ENTRY_BOUND);
+        });
+        List<ExecutionEvent> unmatched = unmatchedUpdates(batch, counts[0]);
+        List<ExecutionEvent> matched = batch;
+        if (!unmatched.isEmpty()) {
+            matched = new ArrayList<>(batch);
+            matched.removeAll(unmatched);
+        }
+
+        List<UserTransaction> transactions = new ArrayList<>(matched.size() * 2);
+        List<OrderHistory> histories = new ArrayList<>(matched.size());
+        for (ExecutionEvent event : matched) {
+            if (event.getAggressorTransaction() != null) {
+                transactions.add(event.getAggressorTransaction());
+                transactions.add(event.getPassiveTransaction());
+            }
+            histories.add(createOrderHistory(event));
+        }
+        userTransactionRepository.saveAll(transactions);
+        orderHistoryRepository.saveAll(histories);
+
+        updateMarketOrderbook(matched);
+        return unmatched;
+    }
+
+    /**
+     * Passive order updates that matched no row, the order is not committed yet or was rolled back
+     */
+    private List<ExecutionEvent> unmatchedUpdates(List<ExecutionEvent> batch, int[] counts) {
+        List<ExecutionEvent> unmatched = List.of();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                if (unmatched.isEmpty()) {
+                    unmatched = new ArrayList<>();
+                }
+                unmatched.add(batch.get(i));
+                unmatchedUpdates.incrementAndGet();
+            }
+        }
+        return unmatched;
+    }
+
+    /**
+     * Hold an execution until its passive order row is visible, giving up after the retry bound
+     */
+    private void retryLater(ExecutionEvent event) {
+        int attempt = attempts.merge(event, 1, Integer::sum);
+        if (attempt > retryAttempts) {
+            attempts.remove(event);
+            failedEvents.incrementAndGet();
+            log.error("Execution for passive order {} matched no order row after {} attempts (exec qty {})",
+                      event.getPassiveOrderId(), attempt, event.getPassiveExecQty());
+            return;
+        }
+        log.debug("Passive order {} not visible yet, retrying its execution", event.getPassiveOrderId());
+        retries.add(new PendingRetry(event, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMs)));
+    }
+
+    private OrderHistory createOrderHistory(ExecutionEvent event) {
+        OrderHistory history = new OrderHistory();
+        history.setOrder(orderRepository.getReferenceById(event.getPassiveOrderId()));
+        history.setPreviousStatus(event.getPassiveStatus());
+        history.setNewStatus(event.getPassiveStatus());
+        history.setPreviousExecQty(event.getPreviousExecQty());
+        history.setNewExecQty(event.getPassiveExecQty());
+        history.setChangeReason("Order matched");
+        history.setChangedBy(event.getPassiveUserId());
+        history.setJournalSequence(event.getJournalSequence() > 0 ? event.getJournalSequence() : null);
+        return history;
+    }
+
+    /**
+     * Reflect passive fills in the public orderbook table with a single statement per batch
+     */
+    private void updateMarketOrderbook(List<ExecutionEvent> batch) {
+        marketOrderbookWriter.applyFills(batch);
+    }
+
+    private record PendingRetry(ExecutionEvent event, long dueAt) {
+    }
+
+    private void updatePortfolio(UserTransaction transaction) {
+        try {
+            portfolioUpdateService.processTransaction(transaction);
+        } catch (Exception e) {
+            log.error("Failed to update portfolio for transaction {}: {}",
+                      transaction.getId(), e.getMessage(), e);
+            // Don't fail the trade execution, just log the error
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point conversions used inside the matching hot path
+ * Prices are held as ticks of 0.0001 and quantities as lots of 0.01, matching the
+ * scale-4 price and scale-2 quantity columns of the orders table. Values are
+ * converted on entry to the book and back only at the persistence and DTO boundary.
+ */
+public final class FixedPoint {
+
+    public static final int PRICE_SCALE = 4;
+    public static final int QUANTITY_SCALE = 2;
+
+    private FixedPoint() {
+    }
+
+    /**
+     * Convert a price to ticks, rounding to the price column scale
+     */
+    public static long toTicks(BigDecimal price) {
+        return price.setScale(PRICE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Convert a quantity to lots, rounding to the quantity column scale
+     */
+    public static long toLots(BigDecimal quantity) {
+        return quantity.setScale(QUANTITY_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toPrice(long ticks) {
+        return BigDecimal.valueOf(ticks, PRICE_SCALE);
+    }
+
+    public static BigDecimal toQuantity(long lots) {
+        return BigDecimal.valueOf(lots, QUANTITY_SCALE);
+    }
+}
@@ -0,0 +1,19 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Every resting order of a book in priority order
+ * The sequence is the last {@link OrderBookEvent} reflected in the orders
+ */
+@Data
+@AllArgsConstructor
+public class MarketByOrderSnapshot {
+    private String symbol;
+    private long sequence;
+    private List<BookOrder> bids;
+    private List<BookOrder> asks;
+}
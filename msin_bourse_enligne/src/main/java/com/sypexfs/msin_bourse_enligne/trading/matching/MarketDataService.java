@@ -3,7 +3,9 @@ package com.sypexfs.msin_bourse_enligne.trading.matching;
 import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummary;
 import com.sypexfs.msin_bourse_enligne.market.entity.MarketTransaction;
 import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryRepository;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryWriter;
 import com.sypexfs.msin_bourse_enligne.market.repository.MarketTransactionRepository;
+import com.sypexfs.msin_bourse_enligne.market.service.MarketSummaryHistoryRecorder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -27,6 +29,8 @@ public class MarketDataService {
 
     private final MarketSummaryRepository summaryRepository;
     private final MarketTransactionRepository marketTransactionRepository;
+    private final MarketSummaryWriter summaryWriter;
+    private final MarketSummaryHistoryRecorder historyRecorder;
     
     // Cache for current prices (symbol -> price)
     private final Map<String, BigDecimal> priceCache = new ConcurrentHashMap<>();
@@ -45,7 +49,7 @@ public class MarketDataService {
         }
         
         // Fallback to database
-        Optional<MarketSummary> summary = summaryRepository.findLatestBySymbol(symbol);
+        Optional<MarketSummary> summary = summaryRepository.findBySymbol(symbol);
         if (summary.isPresent() && summary.get().getPrice() != null) {
             BigDecimal price = summary.get().getPrice();
             priceCache.put(symbol, price);
@@ -77,44 +81,31 @@ public class MarketDataService {
 
     /**
      * Update market summary with latest trade
+     * One upsert on the symbol row, the volume is accumulated by the statement
      */
     private void updateMarketSummary(String symbol, BigDecimal price, BigDecimal quantity, LocalDateTime timestamp) {
-        Optional<MarketSummary> existingSummary = summaryRepository.findLatestBySymbol(symbol);
-        
-        MarketSummary summary;
-        if (existingSummary.isPresent()) {
-            summary = existingSummary.get();
-        } else {
-            summary = new MarketSummary();
-            summary.setSymbol(symbol);
-            summary.setDateTrans(timestamp);
-        }
-        
-        // Update price and volume
-        summary.setPrice(price);
-        summary.setDateTrans(timestamp);
-        
-        // Update volume
-        BigDecimal currentVolume = summary.getVolume() != null ? summary.getVolume() : BigDecimal.ZERO;
-        summary.setVolume(currentVolume.add(quantity));
-        
+        BigDecimal open = null;
+        BigDecimal high = null;
+        BigDecimal low = null;
+        BigDecimal variation = null;
+
         // Update daily high/low
         DailyStats stats = dailyStatsCache.get(symbol);
         if (stats != null) {
-            summary.setHigherPrice(stats.getHigh());
-            summary.setLowerPrice(stats.getLow());
-            summary.setOpeningPrice(stats.getOpen());
-            
+            open = stats.getOpen();
+            high = stats.getHigh();
+            low = stats.getLow();
+
             // Calculate variation
             if (stats.getOpen() != null && stats.getOpen().compareTo(BigDecimal.ZERO) > 0) {
-                BigDecimal variation = price.subtract(stats.getOpen())
+                variation = price.subtract(stats.getOpen())
                     .divide(stats.getOpen(), 4, RoundingMode.HALF_UP)
                     .multiply(BigDecimal.valueOf(100));
-                summary.setVariation(variation);
             }
         }
-        
-        summaryRepository.save(summary);
+
+        MarketSummary summary = summaryWriter.applyLastTrade(symbol, price, quantity, open, high, low, variation, timestamp);
+        historyRecorder.record(summary);
         log.debug("Updated market summary for {}: price={}", symbol, price);
     }
 
@@ -126,7 +117,7 @@ public class MarketDataService {
             DailyStats stats = new DailyStats();
             
             // Load from database
-            Optional<MarketSummary> summary = summaryRepository.findLatestBySymbol(symbol);
+            Optional<MarketSummary> summary = summaryRepository.findBySymbol(symbol);
             if (summary.isPresent()) {
                 MarketSummary s = summary.get();
                 stats.setOpen(s.getOpeningPrice());
@@ -182,7 +173,7 @@ public class MarketDataService {
      */
     public MarketStatus getMarketStatus(String symbol) {
         BigDecimal currentPrice = getCurrentPrice(symbol);
-        Optional<MarketSummary> summary = summaryRepository.findLatestBySymbol(symbol);
+        Optional<MarketSummary> summary = summaryRepository.findBySymbol(symbol);
         MarketSummary s = summary.orElse(null);
         
         DailyStats stats = getDailyStats(symbol);
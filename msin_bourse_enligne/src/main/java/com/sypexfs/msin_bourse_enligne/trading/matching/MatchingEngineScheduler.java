@@ -2,27 +2,45 @@ package com.sypexfs.msin_bourse_enligne.trading.matching;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * Scheduler for matching engine tasks
- * - Loads pending orders on startup
+ * - Recovers the order books on startup, back in the auction call when restarted during one
+ * - Snapshots the order books periodically
  * - Checks stop orders periodically
- * - Resets daily statistics at market open
+ * - Expires DAY/GTD orders
+ * - Runs the opening and closing call auctions
+ * - Resets daily statistics and uncrosses the opening auction at market open
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class MatchingEngineScheduler {
 
+    // Market open: daily reset and opening uncross
+    private static final String MARKET_OPEN_CRON = "0 0 9 * * MON-FRI";
+
     private final OrderMatchingEngine matchingEngine;
     private final MarketDataService marketDataService;
 
+    @Value("${app.trading.auction.opening-call-cron:0 30 8 * * MON-FRI}")
+    private String openingCallCron;
+
+    @Value("${app.trading.auction.closing-call-cron:0 20 15 * * MON-FRI}")
+    private String closingCallCron;
+
+    @Value("${app.trading.auction.closing-uncross-cron:0 30 15 * * MON-FRI}")
+    private String closingUncrossCron;
+
     /**
      * Initialize matching engine on application startup
      */
@@ -30,8 +48,19 @@ public class MatchingEngineScheduler {
     public void onApplicationReady() {
         log.info("Initializing matching engine on startup");
         
-        // Load pending orders from database
-        matchingEngine.loadPendingOrders();
+        // Rebuild books from snapshots and journal, the database is only used on first start
+        if (!matchingEngine.recoverOrderBooks()) {
+            matchingEngine.loadPendingOrders();
+        }
+        
+        // The call is not persisted: a restart during one reopens it and leaves the uncross to its scheduled end,
+        // outside a call the books left crossed by an earlier restart are resolved before trading
+        if (inAuctionCall(LocalDateTime.now())) {
+            log.info("Restarted during an auction call, the books are uncrossed when it ends");
+            matchingEngine.startAuctionCall();
+        } else {
+            matchingEngine.uncrossAuctions();
+        }
         
         // Initialize market data cache
         marketDataService.initializeMarketData();
@@ -62,9 +91,35 @@ public class MatchingEngineScheduler {
     }
 
     /**
-     * Reset daily statistics at market open (9:00 AM)
+     * Expire DAY/GTD orders every second
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void expireOrders() {
+        try {
+            matchingEngine.expireOrders();
+        } catch (Exception e) {
+            log.error("Error expiring orders", e);
+        }
+    }
+
+    /**
+     * Snapshot every order book so restarts only replay the recent journal
      */
-    @Scheduled(cron = "0 0 9 * * MON-FRI")
+    @Scheduled(fixedDelayString = "${app.trading.snapshot.interval-ms:60000}", 
+               initialDelayString = "${app.trading.snapshot.interval-ms:60000}")
+    public void snapshotOrderBooks() {
+        try {
+            matchingEngine.snapshotOrderBooks();
+        } catch (Exception e) {
+            log.error("Error taking order book snapshots", e);
+        }
+    }
+
+    /**
+     * Reset daily statistics at market open (9:00 AM), then uncross the opening auction
+     * so the opening trades count in the new day
+     */
+    @Scheduled(cron = MARKET_OPEN_CRON)
     public void resetDailyStatistics() {
         log.info("Resetting daily statistics at market open");
         try {
@@ -72,6 +127,51 @@ public class MatchingEngineScheduler {
         } catch (Exception e) {
             log.error("Error resetting daily statistics", e);
         }
+        
+        try {
+            matchingEngine.uncrossAuctions();
+        } catch (Exception e) {
+            log.error("Error uncrossing the opening auction", e);
+        }
+    }
+
+    /**
+     * Start the opening auction call
+     */
+    @Scheduled(cron = "${app.trading.auction.opening-call-cron:0 30 8 * * MON-FRI}")
+    public void startOpeningAuction() {
+        log.info("Starting opening auction call");
+        try {
+            matchingEngine.startAuctionCall();
+        } catch (Exception e) {
+            log.error("Error starting the opening auction call", e);
+        }
+    }
+
+    /**
+     * Start the closing auction call
+     */
+    @Scheduled(cron = "${app.trading.auction.closing-call-cron:0 20 15 * * MON-FRI}")
+    public void startClosingAuction() {
+        log.info("Starting closing auction call");
+        try {
+            matchingEngine.startAuctionCall();
+        } catch (Exception e) {
+            log.error("Error starting the closing auction call", e);
+        }
+    }
+
+    /**
+     * Uncross the closing auction at market close
+     */
+    @Scheduled(cron = "${app.trading.auction.closing-uncross-cron:0 30 15 * * MON-FRI}")
+    public void uncrossClosingAuction() {
+        log.info("Uncrossing closing auction");
+        try {
+            matchingEngine.uncrossAuctions();
+        } catch (Exception e) {
+            log.error("Error uncrossing the closing auction", e);
+        }
     }
 
     /**
@@ -107,6 +207,22 @@ public class MatchingEngineScheduler {
         }
     }
 
+    /**
+     * Whether the schedule puts a time inside a call: the call's uncross fires before it starts again
+     */
+    boolean inAuctionCall(LocalDateTime time) {
+        return inCall(time, openingCallCron, MARKET_OPEN_CRON) || inCall(time, closingCallCron, closingUncrossCron);
+    }
+
+    private static boolean inCall(LocalDateTime time, String callCron, String uncrossCron) {
+        if (Scheduled.CRON_DISABLED.equals(callCron) || Scheduled.CRON_DISABLED.equals(uncrossCron)) {
+            return false;
+        }
+        LocalDateTime nextStart = CronExpression.parse(callCron).next(time);
+        LocalDateTime nextUncross = CronExpression.parse(uncrossCron).next(time);
+        return nextUncross != null && (nextStart == null || nextUncross.isBefore(nextStart));
+    }
+
     /**
      * Get list of active symbols
      */
@@ -0,0 +1,116 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single-writer lane for a hash bucket of symbols
+ * Every mutation of an order book owned by the shard happens while holding its lock,
+ * so orders for one symbol are matched strictly in arrival order while symbols
+ * living in other shards are matched in parallel
+ */
+@Getter
+public class MatchingShard {
+
+    private final int index;
+
+    // Fair lock: waiting submitters are admitted in FIFO order (the shard's inbound queue)
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    private final Set<String> symbols = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong processedOrders = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    // DAY/GTD expirations of the shard's resting orders, 1 second ticks
+    @Getter(AccessLevel.NONE)
+    private final TimingWheel<Order> expiryWheel = new TimingWheel<>(1000, 64, System.currentTimeMillis());
+
+    // Self-trade writes of the current holder
+    @Getter(AccessLevel.NONE)
+    private SelfTradeWrites selfTradeWrites = new SelfTradeWrites();
+
+    public MatchingShard(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Acquire exclusive write access to the shard's books
+     * Returns the acquisition timestamp to be passed back to {@link #release(long)}
+     */
+    public long acquire() {
+        long requestedAt = System.nanoTime();
+        lock.lock();
+        long acquiredAt = System.nanoTime();
+        waitNanos.addAndGet(acquiredAt - requestedAt);
+        return acquiredAt;
+    }
+
+    /**
+     * Release write access and account the time spent holding it
+     */
+    public void release(long acquiredAt) {
+        try {
+            busyNanos.addAndGet(System.nanoTime() - acquiredAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void register(String symbol) {
+        symbols.add(symbol);
+    }
+
+    /**
+     * Expiry wheel of the shard, only used while holding the shard
+     */
+    TimingWheel<Order> expiries() {
+        return expiryWheel;
+    }
+
+    /**
+     * Self-trade writes collected by the current holder, only used while holding the shard
+     */
+    SelfTradeWrites selfTradeWrites() {
+        return selfTradeWrites;
+    }
+
+    /**
+     * Hand over the self-trade writes collected so far, to be called before releasing the shard
+     *
+     * @return null when there is nothing to write
+     */
+    SelfTradeWrites takeSelfTradeWrites() {
+        if (selfTradeWrites.isEmpty()) {
+            return null;
+        }
+        SelfTradeWrites taken = selfTradeWrites;
+        selfTradeWrites = new SelfTradeWrites();
+        return taken;
+    }
+
+    public void recordProcessed() {
+        processedOrders.incrementAndGet();
+    }
+
+    /**
+     * Snapshot of the shard counters
+     */
+    public MatchingShardStats getStats() {
+        return new MatchingShardStats(
+            index,
+            symbols.size(),
+            processedOrders.get(),
+            lock.getQueueLength(),
+            waitNanos.get() / 1_000_000,
+            busyNanos.get() / 1_000_000
+        );
+    }
+}
@@ -0,0 +1,20 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Matching shard statistics
+ * Comparing these counters with shards=1 (single global lock) and shards=N
+ * gives the throughput and contention difference between both modes
+ */
+@Data
+@AllArgsConstructor
+public class MatchingShardStats {
+    private int shard;
+    private int symbols;
+    private long processedOrders;
+    private int queuedSubmitters;
+    private long totalWaitMillis;
+    private long totalBusyMillis;
+}
@@ -2,278 +2,701 @@ package com.sypexfs.msin_bourse_enligne.trading.matching;
 
 import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.math.BigDecimal;
 import java.util.*;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.stream.Collectors;
 
 /**
  * Order book for a single symbol
- * Maintains buy and sell orders sorted by price-time priority
+ * Orders are bucketed by price level: each side is a sorted map of levels and each
+ * level holds its orders in a FIFO queue with a running aggregate quantity.
+ * Best bid/ask and level volume are O(1), top-N depth is O(N levels) and
+ * cancel by order id is O(1) through the order id index. Amending a resting order
+ * is O(1) when it keeps its place and O(log levels) when it moves, see {@link #amendOrder}.
+ *
+ * Prices and quantities are held internally as fixed-point ticks and lots
+ * (see {@link FixedPoint}); BigDecimal values only appear at the public API.
+ *
+ * Iceberg orders only show their displayed slice in depth, volumes and stats. When a
+ * slice is consumed the next one is shown and re-queued at the back of its level, all
+ * within the fill, while hidden lots still count as liquidity for fill-or-kill checks.
+ *
+ * During a call auction orders rest without matching, the book may be crossed until
+ * it is uncrossed at the equilibrium price, see {@link #getIndicativeUncross}.
+ *
+ * Every change to a level's visible volume marks the level, changes are coalesced per price
+ * until {@link #drainDepthUpdates} turns them into sequenced market-by-price deltas.
+ *
+ * Changes to resting orders are also recorded as sequenced market-by-order events, drained
+ * with {@link #drainOrderEvents}. Stop orders are not shown until they rest. Events are kept
+ * as primitives in a reused buffer and only turned into objects when drained; a book nobody
+ * drains keeps neither events nor changed levels, and pending events are dropped past
+ * {@link #MAX_PENDING_EVENTS}, readers see the sequence gap and resync from a snapshot.
+ *
+ * Readers of the top of book never take the book's lock: every mutation ends by publishing an
+ * immutable {@link TopOfBook} through a volatile field, best bid/ask, spread, mid and stats are
+ * derived from one such snapshot. Depth is built under the lock and cached with the version of
+ * the snapshot it was built from, later reads are served from the cache until the book changes.
+ *
+ * A per-user index of resting and stop orders backs mass cancel and lets matching skip
+ * self-trade checks for users with nothing in the book.
+ *
+ * Stop orders are indexed by stop price per side, so a price move only visits the
+ * stops it crosses: buy stops from the lowest stop price up, sell stops from the highest down.
  */
 @Slf4j
-@Getter
 public class OrderBook {
     
+    static final int MAX_PENDING_EVENTS = 16_384;
+    
+    // Pending event layout, one stride per event
+    private static final int EVENT_FIELDS = 7;
+    private static final int EVENT_SEQUENCE = 0;
+    private static final int EVENT_TYPE = 1;
+    private static final int EVENT_ORDER_ID = 2;
+    private static final int EVENT_BUY = 3;
+    private static final int EVENT_PRICE = 4;
+    private static final int EVENT_SHOWN = 5;
+    private static final int EVENT_TRADED = 6;
+    
+    private static final int ADD = 0;
+    private static final int MODIFY = 1;
+    private static final int DELETE = 2;
+    private static final int TRADE = 3;
+    private static final String[] EVENT_TYPES = {"ADD", "MODIFY", "DELETE", "TRADE"};
+    private static final long NO_TRADE = -1;
+    
+    @Getter
     private final String symbol;
     
-    // Buy orders: sorted by price DESC (highest first), then by time ASC
-    private final TreeMap<PriceTimeKey, Order> buyOrders;
+    // Changed under the owning shard, read without it by market data endpoints
+    @Getter
+    @Setter
+    private volatile TradingPhase phase = TradingPhase.CONTINUOUS;
     
-    // Sell orders: sorted by price ASC (lowest first), then by time ASC
-    private final TreeMap<PriceTimeKey, Order> sellOrders;
+    // Buy levels: sorted by price DESC (highest first)
+    private final TreeMap<Long, PriceLevelQueue> bidLevels;
     
-    // Stop orders waiting to be triggered
-    private final List<Order> stopOrders;
+    // Sell levels: sorted by price ASC (lowest first)
+    private final TreeMap<Long, PriceLevelQueue> askLevels;
     
-    // Order ID to PriceTimeKey mapping for quick lookup
-    private final Map<Long, PriceTimeKey> orderKeyMap;
+    // Cached top of book, refreshed whenever a level is created or emptied
+    private PriceLevelQueue bestBidLevel;
+    private PriceLevelQueue bestAskLevel;
     
-    public OrderBook(String symbol) {
-        this.symbol = symbol;
+    // Running side totals, visible lots only
+    private int buyOrderCount;
+    private int sellOrderCount;
+    private long totalBuyLots;
+    private long totalSellLots;
+    
+    // Stop orders waiting to be triggered, by stop price then arrival
+    private final TreeMap<Long, Map<Long, Order>> buyStops;
+    private final TreeMap<Long, Map<Long, Order>> sellStops;
+    private final Map<Long, IndexedStop> stopIndex;
+    
+    // Order ID to book entry mapping for O(1) lookup and cancel
+    private final Map<Long, OrderBookEntry> orderKeyMap;
+    
+    // User ID to the IDs of the user's resting and stop orders, in arrival order
+    private final Map<Long, Set<Long>> userOrders;
+    
+    // Level prices changed since the last drain, and the last depth update sequence
+    // Only tracked once a depth feed has drained the book
+    private final Set<Long> changedBids;
+    private final Set<Long> changedAsks;
+    private long depthSequence;
+    private boolean depthDrained;
+    
+    // Market-by-order events not drained yet, numbered as they happen
+    // Only kept once a market-by-order feed has drained the book, the sequence always moves
+    private long[] pendingEvents;
+    private int pendingEventCount;
+    private long orderEventSequence;
+    private boolean orderEventsDrained;
+    private long droppedOrderEvents;
+    
+    // Published after every mutation, read without the lock
+    private volatile TopOfBook top = TopOfBook.EMPTY;
+    private volatile DepthCache depthCache;
+    
+    /**
+     * Immutable top of book, ticks are 0 when the side is empty
+     */
+    private record TopOfBook(long version, long bidTicks, long askTicks,
+                             int buyOrders, int sellOrders, long buyLots, long sellLots) {
+        static final TopOfBook EMPTY = new TopOfBook(0, 0, 0, 0, 0, 0, 0);
         
-        // Buy orders: higher price has priority
-        this.buyOrders = new TreeMap<>((k1, k2) -> {
-            // Handle null prices (MARKET orders)
-            if (k1.getPrice() == null && k2.getPrice() == null) {
-                return k1.getTimestamp().compareTo(k2.getTimestamp());
-            }
-            if (k1.getPrice() == null) return 1; // null prices go last
-            if (k2.getPrice() == null) return -1;
-            
-            int priceCompare = k2.getPrice().compareTo(k1.getPrice()); // DESC
-            if (priceCompare != 0) return priceCompare;
-            return k1.getTimestamp().compareTo(k2.getTimestamp()); // ASC
-        });
+        BigDecimal bestBid() {
+            return bidTicks > 0 ? FixedPoint.toPrice(bidTicks) : null;
+        }
         
-        // Sell orders: lower price has priority
-        this.sellOrders = new TreeMap<>((k1, k2) -> {
-            // Handle null prices (MARKET orders)
-            if (k1.getPrice() == null && k2.getPrice() == null) {
-                return k1.getTimestamp().compareTo(k2.getTimestamp());
-            }
-            if (k1.getPrice() == null) return 1; // null prices go last
-            if (k2.getPrice() == null) return -1;
-            
-            int priceCompare = k1.getPrice().compareTo(k2.getPrice()); // ASC
-            if (priceCompare != 0) return priceCompare;
-            return k1.getTimestamp().compareTo(k2.getTimestamp()); // ASC
-        });
+        BigDecimal bestAsk() {
+            return askTicks > 0 ? FixedPoint.toPrice(askTicks) : null;
+        }
         
-        this.stopOrders = new ArrayList<>();
+        BigDecimal spread() {
+            return bidTicks > 0 && askTicks > 0 ? FixedPoint.toPrice(askTicks - bidTicks) : null;
+        }
+        
+        BigDecimal midPrice() {
+            return bidTicks > 0 && askTicks > 0
+                ? bestBid().add(bestAsk()).divide(BigDecimal.valueOf(2), 4, java.math.RoundingMode.HALF_UP)
+                : null;
+        }
+    }
+    
+    /**
+     * Waiting stop order with the stop price it is bucketed under
+     * An amend may change the order's stop price before it is re-indexed, the bucket is found from here
+     */
+    private record IndexedStop(Order order, long stopTicks) {
+    }
+    
+    /**
+     * Depth of the given number of levels built at a top of book version, lists are immutable
+     */
+    private record DepthCache(long version, int levels, OrderBookDepth depth) {
+    }
+    
+    public OrderBook(String symbol) {
+        this.symbol = symbol;
+        this.bidLevels = new TreeMap<>(Comparator.reverseOrder());
+        this.askLevels = new TreeMap<>();
+        this.buyStops = new TreeMap<>();
+        this.sellStops = new TreeMap<>(Comparator.reverseOrder());
+        this.stopIndex = new HashMap<>();
         this.orderKeyMap = new HashMap<>();
+        this.userOrders = new HashMap<>();
+        this.changedBids = new LinkedHashSet<>();
+        this.changedAsks = new LinkedHashSet<>();
+        this.pendingEvents = new long[64 * EVENT_FIELDS];
     }
     
     /**
-     * Add order to the book
+     * Add order to the back of its price level
      */
     public synchronized void addOrder(Order order) {
-        PriceTimeKey key = new PriceTimeKey(order.getPrice(), order.getDateEntry(), order.getId());
+        if (order.getPrice() == null) {
+            log.warn("Ignoring order {} without limit price for book {}", order.getId(), symbol);
+            return;
+        }
+        if (orderKeyMap.containsKey(order.getId())) {
+            removeOrder(order.getId());
+        }
         
-        if (order.isBuyOrder()) {
-            buyOrders.put(key, order);
-        } else {
-            sellOrders.put(key, order);
+        OrderBookEntry entry = new OrderBookEntry(order);
+        if (entry.remainingLots <= 0) {
+            // Nothing left to rest, matching must never see an empty entry
+            return;
         }
         
-        orderKeyMap.put(order.getId(), key);
+        link(entry);
+        orderKeyMap.put(order.getId(), entry);
+        indexUser(order);
+        recordEvent(ADD, entry, entry.priceTicks, entry.visibleLots, NO_TRADE);
+        publishTop();
+        
         log.debug("Added {} order to book: {} at price {}", 
-                  order.isBuyOrder() ? "BUY" : "SELL", order.getId(), order.getPrice());
+                  entry.buy ? "BUY" : "SELL", order.getId(), order.getPrice());
+    }
+    
+    /**
+     * Apply an amend made to a resting order's price, quantity or displayed quantity
+     * The entry is updated in place and keeps its time priority when the price is unchanged
+     * and neither its remaining nor its displayed quantity grew. Otherwise the same entry is
+     * moved to the back of the level at its new price. The order must not cross the book,
+     * the caller matches crossing amends as new orders.
+     *
+     * @return false when the order is not resting
+     */
+    public synchronized boolean amendOrder(Long orderId) {
+        OrderBookEntry entry = orderKeyMap.get(orderId);
+        if (entry == null) {
+            return false;
+        }
+        Order order = entry.order;
+        long priceTicks = FixedPoint.toTicks(order.getPrice());
+        long remainingLots = FixedPoint.toLots(order.getRemainingQuantity());
+        if (remainingLots <= 0) {
+            orderKeyMap.remove(orderId);
+            unlink(entry);
+            recordEvent(DELETE, entry, entry.priceTicks, 0, NO_TRADE);
+            publishTop();
+            return true;
+        }
+        long peakLots = OrderBookEntry.peakLots(order, remainingLots);
+        long shownLots = peakLots > 0 ? peakLots : remainingLots;
+        long previouslyShownLots = entry.isIceberg() ? entry.peakLots : entry.remainingLots;
+        
+        if (priceTicks == entry.priceTicks && remainingLots <= entry.remainingLots && shownLots <= previouslyShownLots) {
+            // What is left of the current slice stays shown, capped by the new peak
+            long visibleLots = peakLots > 0 ? Math.min(entry.visibleLots, peakLots) : remainingLots;
+            long visibleDelta = visibleLots - entry.visibleLots;
+            entry.peakLots = peakLots;
+            entry.level.resize(entry, remainingLots, visibleLots);
+            markChanged(entry.buy, entry.priceTicks);
+            recordEvent(MODIFY, entry, entry.priceTicks, entry.visibleLots, NO_TRADE);
+            if (entry.buy) {
+                totalBuyLots += visibleDelta;
+            } else {
+                totalSellLots += visibleDelta;
+            }
+        } else {
+            // Loses priority: shown to market-by-order subscribers as leaving and joining the back
+            detach(entry);
+            recordEvent(DELETE, entry, entry.priceTicks, 0, NO_TRADE);
+            entry.priceTicks = priceTicks;
+            entry.peakLots = peakLots;
+            entry.remainingLots = remainingLots;
+            entry.visibleLots = shownLots;
+            link(entry);
+            recordEvent(ADD, entry, entry.priceTicks, entry.visibleLots, NO_TRADE);
+        }
+        publishTop();
+        
+        log.debug("Amended order {} in book {}: {} lots at {}", orderId, symbol, remainingLots, order.getPrice());
+        return true;
+    }
+    
+    /**
+     * Resting order or waiting stop order with the given ID, null when it is not in the book
+     */
+    public synchronized Order getOrder(Long orderId) {
+        OrderBookEntry entry = orderKeyMap.get(orderId);
+        if (entry != null) {
+            return entry.order;
+        }
+        IndexedStop stop = stopIndex.get(orderId);
+        return stop != null ? stop.order() : null;
     }
     
     /**
      * Add stop order to waiting list
      */
     public synchronized void addStopOrder(Order order) {
-        stopOrders.add(order);
+        if (stopIndex.containsKey(order.getId())) {
+            removeStopOrder(order.getId());
+        }
+        long stopTicks = FixedPoint.toTicks(order.getStopPrice());
+        (order.isBuyOrder() ? buyStops : sellStops)
+            .computeIfAbsent(stopTicks, k -> new LinkedHashMap<>())
+            .put(order.getId(), order);
+        stopIndex.put(order.getId(), new IndexedStop(order, stopTicks));
+        indexUser(order);
         log.debug("Added STOP order to waiting list: {}", order.getId());
     }
     
     /**
      * Remove order from the book
+     *
+     * @return true when the order was resting or waiting as a stop
      */
-    public synchronized void removeOrder(Long orderId) {
-        PriceTimeKey key = orderKeyMap.remove(orderId);
-        if (key != null) {
-            Order order = buyOrders.remove(key);
-            if (order == null) {
-                order = sellOrders.remove(key);
+    public synchronized boolean removeOrder(Long orderId) {
+        OrderBookEntry entry = orderKeyMap.remove(orderId);
+        if (entry != null) {
+            unlink(entry);
+            recordEvent(DELETE, entry, entry.priceTicks, 0, NO_TRADE);
+            publishTop();
+            log.debug("Removed order from book: {}", orderId);
+        }
+        
+        // Also check stop orders
+        return removeStopOrder(orderId) || entry != null;
+    }
+    
+    /**
+     * Remove every resting and stop order of a user, optionally only on one side
+     *
+     * @param side 1 for buy orders, -1 for sell orders, null for both
+     * @return the removed orders
+     */
+    public synchronized List<Order> removeUserOrders(Long userId, Integer side) {
+        Set<Long> orderIds = userOrders.get(userId);
+        if (orderIds == null) {
+            return List.of();
+        }
+        
+        List<Order> removed = new ArrayList<>();
+        for (Long orderId : new ArrayList<>(orderIds)) {
+            Order order = getOrder(orderId);
+            if (order == null || (side != null && !side.equals(order.getSign()))) {
+                continue;
+            }
+            removeOrder(orderId);
+            removed.add(order);
+        }
+        return removed;
+    }
+    
+    /**
+     * Check whether a user has any resting or stop order in the book
+     */
+    synchronized boolean hasOrdersFor(Long userId) {
+        return userOrders.containsKey(userId);
+    }
+    
+    /**
+     * Account for a fill against a resting order at the given trade price
+     * The order leaves the book once nothing remains, an iceberg whose slice was
+     * consumed shows its next slice at the back of the level
+     *
+     * @return lots still resting after the fill, 0 when the order left the book
+     */
+    public synchronized long applyFill(Long orderId, long lots, long tradePriceTicks) {
+        OrderBookEntry entry = orderKeyMap.get(orderId);
+        if (entry == null) {
+            return 0;
+        }
+        
+        entry.level.reduce(entry, lots);
+        markChanged(entry.buy, entry.priceTicks);
+        if (entry.buy) {
+            totalBuyLots -= lots;
+        } else {
+            totalSellLots -= lots;
+        }
+        
+        if (entry.remainingLots <= 0) {
+            orderKeyMap.remove(orderId);
+            unlink(entry);
+            recordEvent(TRADE, entry, tradePriceTicks, entry.visibleLots, lots);
+            publishTop();
+            return 0;
+        }
+        recordEvent(TRADE, entry, tradePriceTicks, entry.visibleLots, lots);
+        if (entry.visibleLots <= 0) {
+            long slice = entry.level.replenish(entry);
+            if (entry.buy) {
+                totalBuyLots += slice;
+            } else {
+                totalSellLots += slice;
+            }
+            recordEvent(ADD, entry, entry.priceTicks, entry.visibleLots, NO_TRADE);
+        }
+        publishTop();
+        return entry.remainingLots;
+    }
+    
+    /**
+     * Lots of a resting order shown in the book, 0 when it is not resting
+     */
+    synchronized long visibleLots(Long orderId) {
+        OrderBookEntry entry = orderKeyMap.get(orderId);
+        return entry != null ? entry.visibleLots : 0;
+    }
+    
+    /**
+     * Check whether an order is resting in the book
+     */
+    public synchronized boolean containsOrder(Long orderId) {
+        return orderKeyMap.containsKey(orderId);
+    }
+    
+    /**
+     * Highest priority resting entry on one side, read straight from the live book
+     * Matching consumes the book through this: a fully filled entry is unlinked by
+     * applyFill, so the next call returns the following entry or the next level's head
+     */
+    synchronized OrderBookEntry peekBest(boolean buySide) {
+        PriceLevelQueue level = buySide ? bestBidLevel : bestAskLevel;
+        return level != null ? level.head : null;
+    }
+    
+    /**
+     * Check from the level aggregates whether an aggressor could fill the given lots
+     * without walking past its limit, the book is left untouched
+     * Hidden iceberg lots count since they are executed as slices replenish
+     * With a self-trade prevention mode, levels holding the user's own orders are walked
+     * entry by entry: own lots never count, and the check fails where the mode would stop
+     * the aggressor before it is filled
+     *
+     * @param stpMode the aggressor's mode, NONE when it cannot self-trade
+     */
+    synchronized boolean hasLiquidityFor(boolean aggressorBuy, long limitTicks, long lots,
+                                         Long userId, SelfTradePrevention stpMode) {
+        TreeMap<Long, PriceLevelQueue> levels = aggressorBuy ? askLevels : bidLevels;
+        boolean selfTrade = stpMode != SelfTradePrevention.NONE && userId != null;
+        long needed = lots;
+        for (PriceLevelQueue level : levels.values()) {
+            if (aggressorBuy ? level.priceTicks > limitTicks : level.priceTicks < limitTicks) {
+                break;
+            }
+            if (!selfTrade) {
+                needed -= level.totalLots;
+            } else {
+                // Slices shown ahead of an entry trade before it, the hidden rest re-queues behind the level
+                long shown = 0;
+                long hidden = 0;
+                for (OrderBookEntry entry = level.head; entry != null; entry = entry.next) {
+                    if (!userId.equals(entry.order.getUserId())) {
+                        shown += entry.visibleLots;
+                        hidden += entry.remainingLots - entry.visibleLots;
+                        continue;
+                    }
+                    if (stpMode == SelfTradePrevention.CANCEL_OLDEST) {
+                        continue;
+                    }
+                    long reached = needed - shown;
+                    if (reached <= 0) {
+                        return true;
+                    }
+                    if (stpMode == SelfTradePrevention.DECREMENT && entry.remainingLots < reached) {
+                        // The own order is cancelled and the aggressor shrinks by its size
+                        needed -= entry.remainingLots;
+                        continue;
+                    }
+                    return false;
+                }
+                needed -= shown + hidden;
+            }
+            if (needed <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Auction equilibrium computed in one pass over the aggregated levels
+     * The price maximizes the executable volume, ties go to the smallest surplus and then
+     * to the price closest to the reference price. Hidden iceberg lots take part.
+     *
+     * @return null when the book is not crossed
+     */
+    public synchronized AuctionQuote getIndicativeUncross(BigDecimal referencePrice) {
+        if (bestBidLevel == null || bestAskLevel == null || bestBidLevel.priceTicks < bestAskLevel.priceTicks) {
+            return null;
+        }
+        long referenceTicks = referencePrice != null ? FixedPoint.toTicks(referencePrice) : -1;
+        
+        long totalBid = 0;
+        for (PriceLevelQueue level : bidLevels.values()) {
+            totalBid += level.totalLots;
+        }
+        
+        // Walk every level price upwards: sells at or below the price and buys at or above it cross
+        Iterator<PriceLevelQueue> bids = bidLevels.descendingMap().values().iterator();
+        Iterator<PriceLevelQueue> asks = askLevels.values().iterator();
+        PriceLevelQueue bid = bids.hasNext() ? bids.next() : null;
+        PriceLevelQueue ask = asks.hasNext() ? asks.next() : null;
+        long bidBelow = 0;
+        long askAtOrBelow = 0;
+        
+        long bestPrice = 0;
+        long bestVolume = 0;
+        long bestSurplus = 0;
+        while (bid != null || ask != null) {
+            long price = bid == null ? ask.priceTicks
+                : ask == null ? bid.priceTicks
+                : Math.min(bid.priceTicks, ask.priceTicks);
+            if (ask != null && ask.priceTicks == price) {
+                askAtOrBelow += ask.totalLots;
+                ask = asks.hasNext() ? asks.next() : null;
             }
-            if (order != null) {
-                log.debug("Removed order from book: {}", orderId);
+            
+            long bidAtOrAbove = totalBid - bidBelow;
+            long volume = Math.min(bidAtOrAbove, askAtOrBelow);
+            long surplus = bidAtOrAbove - askAtOrBelow;
+            if (volume > 0 && (volume > bestVolume
+                    || (volume == bestVolume && Math.abs(surplus) < Math.abs(bestSurplus))
+                    || (volume == bestVolume && Math.abs(surplus) == Math.abs(bestSurplus) && referenceTicks >= 0
+                        && Math.abs(price - referenceTicks) < Math.abs(bestPrice - referenceTicks)))) {
+                bestPrice = price;
+                bestVolume = volume;
+                bestSurplus = surplus;
+            }
+            
+            if (bid != null && bid.priceTicks == price) {
+                bidBelow += bid.totalLots;
+                bid = bids.hasNext() ? bids.next() : null;
             }
         }
         
-        // Also check stop orders
-        stopOrders.removeIf(o -> o.getId().equals(orderId));
+        return new AuctionQuote(symbol, FixedPoint.toPrice(bestPrice),
+            FixedPoint.toQuantity(bestVolume), FixedPoint.toQuantity(bestSurplus));
     }
     
     /**
      * Get all buy orders sorted by priority
      */
     public synchronized List<Order> getBuyOrders() {
-        return new ArrayList<>(buyOrders.values());
+        return collectOrders(bidLevels);
     }
     
     /**
      * Get all sell orders sorted by priority
      */
     public synchronized List<Order> getSellOrders() {
-        return new ArrayList<>(sellOrders.values());
+        return collectOrders(askLevels);
+    }
+    
+    /**
+     * Get stop orders waiting to be triggered
+     */
+    public synchronized List<Order> getStopOrders() {
+        List<Order> orders = new ArrayList<>(stopIndex.size());
+        buyStops.values().forEach(bucket -> orders.addAll(bucket.values()));
+        sellStops.values().forEach(bucket -> orders.addAll(bucket.values()));
+        return orders;
     }
     
     /**
      * Get best bid (highest buy price)
      */
-    public synchronized BigDecimal getBestBid() {
-        if (buyOrders.isEmpty()) {
-            return null;
-        }
-        return buyOrders.firstKey().getPrice();
+    public BigDecimal getBestBid() {
+        return top.bestBid();
     }
     
     /**
      * Get best ask (lowest sell price)
      */
-    public synchronized BigDecimal getBestAsk() {
-        if (sellOrders.isEmpty()) {
-            return null;
-        }
-        return sellOrders.firstKey().getPrice();
+    public BigDecimal getBestAsk() {
+        return top.bestAsk();
     }
     
     /**
      * Get bid-ask spread
      */
-    public synchronized BigDecimal getSpread() {
-        BigDecimal bid = getBestBid();
-        BigDecimal ask = getBestAsk();
-        
-        if (bid == null || ask == null) {
-            return null;
-        }
-        
-        return ask.subtract(bid);
+    public BigDecimal getSpread() {
+        return top.spread();
     }
     
     /**
      * Get mid price
      */
-    public synchronized BigDecimal getMidPrice() {
-        BigDecimal bid = getBestBid();
-        BigDecimal ask = getBestAsk();
-        
-        if (bid == null || ask == null) {
-            return null;
-        }
-        
-        return bid.add(ask).divide(BigDecimal.valueOf(2), 4, java.math.RoundingMode.HALF_UP);
+    public BigDecimal getMidPrice() {
+        return top.midPrice();
     }
     
     /**
-     * Get total buy volume at a price level
+     * Get visible buy volume at a price level
      */
     public synchronized BigDecimal getBuyVolumeAtPrice(BigDecimal price) {
-        return buyOrders.entrySet().stream()
-            .filter(e -> e.getKey().getPrice().compareTo(price) == 0)
-            .map(e -> e.getValue().getRemainingQuantity())
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        PriceLevelQueue level = bidLevels.get(FixedPoint.toTicks(price));
+        return level != null ? FixedPoint.toQuantity(level.visibleLots) : BigDecimal.ZERO;
     }
     
     /**
-     * Get total sell volume at a price level
+     * Get visible sell volume at a price level
      */
     public synchronized BigDecimal getSellVolumeAtPrice(BigDecimal price) {
-        return sellOrders.entrySet().stream()
-            .filter(e -> e.getKey().getPrice().compareTo(price) == 0)
-            .map(e -> e.getValue().getRemainingQuantity())
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        PriceLevelQueue level = askLevels.get(FixedPoint.toTicks(price));
+        return level != null ? FixedPoint.toQuantity(level.visibleLots) : BigDecimal.ZERO;
     }
     
     /**
      * Get order book depth (top N levels)
+     * Served without the lock while the book has not changed since the cached depth was built
      */
-    public synchronized OrderBookDepth getDepth(int levels) {
-        List<PriceLevel> bids = new ArrayList<>();
-        List<PriceLevel> asks = new ArrayList<>();
-        
-        // Aggregate buy orders by price (skip orders with null prices or zero volume)
-        Map<BigDecimal, BigDecimal> bidMap = new TreeMap<>(Comparator.reverseOrder());
-        for (Order order : buyOrders.values()) {
-            if (order.getPrice() != null && order.getRemainingQuantity().compareTo(BigDecimal.ZERO) > 0) {
-                bidMap.merge(order.getPrice(), order.getRemainingQuantity(), BigDecimal::add);
-            }
+    public OrderBookDepth getDepth(int levels) {
+        DepthCache cache = depthCache;
+        if (cache != null && cache.version() == top.version() && cache.levels() >= levels) {
+            return trimDepth(cache.depth(), levels);
         }
-        bidMap.entrySet().stream()
-            .filter(e -> e.getValue().compareTo(BigDecimal.ZERO) > 0) // Filter out zero volumes
-            .limit(levels)
-            .forEach(e -> bids.add(new PriceLevel(e.getKey(), e.getValue())));
-        
-        // Aggregate sell orders by price (skip orders with null prices or zero volume)
-        Map<BigDecimal, BigDecimal> askMap = new TreeMap<>();
-        for (Order order : sellOrders.values()) {
-            if (order.getPrice() != null && order.getRemainingQuantity().compareTo(BigDecimal.ZERO) > 0) {
-                askMap.merge(order.getPrice(), order.getRemainingQuantity(), BigDecimal::add);
+        synchronized (this) {
+            OrderBookDepth depth = new OrderBookDepth(symbol, depthSequence,
+                List.copyOf(topLevels(bidLevels, levels)), List.copyOf(topLevels(askLevels, levels)));
+            depthCache = new DepthCache(top.version(), levels, depth);
+            return depth;
+        }
+    }
+    
+    /**
+     * Turn the levels changed since the last call into sequenced deltas, bids first
+     * Deltas carry absolute level values, so one already reflected in a depth snapshot
+     * can be applied again harmlessly
+     */
+    public synchronized List<DepthUpdate> drainDepthUpdates() {
+        depthDrained = true;
+        if (changedBids.isEmpty() && changedAsks.isEmpty()) {
+            return List.of();
+        }
+        List<DepthUpdate> updates = new ArrayList<>(changedBids.size() + changedAsks.size());
+        drainChanged(changedBids, bidLevels, "BUY", updates);
+        drainChanged(changedAsks, askLevels, "SELL", updates);
+        return updates;
+    }
+    
+    /**
+     * Take the market-by-order events recorded since the last call, in sequence order
+     * Events are only recorded from the first call on
+     */
+    public List<OrderBookEvent> drainOrderEvents() {
+        long[] drained;
+        synchronized (this) {
+            orderEventsDrained = true;
+            if (pendingEventCount == 0) {
+                return List.of();
             }
+            drained = Arrays.copyOf(pendingEvents, pendingEventCount * EVENT_FIELDS);
+            pendingEventCount = 0;
         }
-        askMap.entrySet().stream()
-            .filter(e -> e.getValue().compareTo(BigDecimal.ZERO) > 0) // Filter out zero volumes
-            .limit(levels)
-            .forEach(e -> asks.add(new PriceLevel(e.getKey(), e.getValue())));
         
-        return new OrderBookDepth(symbol, bids, asks);
+        // Converted outside the lock, matching does not wait on the feed
+        List<OrderBookEvent> events = new ArrayList<>(drained.length / EVENT_FIELDS);
+        for (int at = 0; at < drained.length; at += EVENT_FIELDS) {
+            long traded = drained[at + EVENT_TRADED];
+            events.add(new OrderBookEvent(symbol, drained[at + EVENT_SEQUENCE],
+                EVENT_TYPES[(int) drained[at + EVENT_TYPE]], drained[at + EVENT_ORDER_ID],
+                drained[at + EVENT_BUY] != 0 ? "BUY" : "SELL",
+                FixedPoint.toPrice(drained[at + EVENT_PRICE]), FixedPoint.toQuantity(drained[at + EVENT_SHOWN]),
+                traded != NO_TRADE ? FixedPoint.toQuantity(traded) : null));
+        }
+        return events;
+    }
+    
+    /**
+     * Events dropped because nothing drained them before the buffer filled up
+     */
+    public synchronized long getDroppedOrderEvents() {
+        return droppedOrderEvents;
+    }
+    
+    /**
+     * Every resting order with its shown quantity, in priority order, tagged with the
+     * sequence of the last market-by-order event it reflects
+     */
+    public synchronized MarketByOrderSnapshot getMarketByOrder() {
+        return new MarketByOrderSnapshot(symbol, orderEventSequence, bookOrders(bidLevels), bookOrders(askLevels));
     }
     
     /**
      * Check stop orders and return those that should be triggered
      */
     public synchronized List<Order> checkStopOrders(BigDecimal currentPrice) {
+        long ticks = FixedPoint.toTicks(currentPrice);
+        return triggerStops(ticks, ticks);
+    }
+    
+    /**
+     * Remove and return the stops crossed by trades between lowTicks and highTicks
+     * Buy stops trigger at or below the high, sell stops at or above the low
+     */
+    synchronized List<Order> triggerStops(long highTicks, long lowTicks) {
         List<Order> triggered = new ArrayList<>();
-        
-        Iterator<Order> iterator = stopOrders.iterator();
-        while (iterator.hasNext()) {
-            Order stopOrder = iterator.next();
-            
-            boolean shouldTrigger = stopOrder.isBuyOrder()
-                ? currentPrice.compareTo(stopOrder.getStopPrice()) >= 0
-                : currentPrice.compareTo(stopOrder.getStopPrice()) <= 0;
-            
-            if (shouldTrigger) {
-                triggered.add(stopOrder);
-                iterator.remove();
-            }
-        }
-        
+        pollStops(buyStops.headMap(highTicks, true), triggered);
+        pollStops(sellStops.headMap(lowTicks, true), triggered);
         return triggered;
     }
     
     /**
-     * Get order book statistics
+     * Get order book statistics, all taken from the same top of book snapshot
      */
-    public synchronized OrderBookStats getStats() {
-        int totalBuyOrders = buyOrders.size();
-        int totalSellOrders = sellOrders.size();
-        
-        BigDecimal totalBuyVolume = buyOrders.values().stream()
-            .map(Order::getRemainingQuantity)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        BigDecimal totalSellVolume = sellOrders.values().stream()
-            .map(Order::getRemainingQuantity)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
+    public OrderBookStats getStats() {
+        TopOfBook snapshot = top;
         return new OrderBookStats(
             symbol,
-            totalBuyOrders,
-            totalSellOrders,
-            totalBuyVolume,
-            totalSellVolume,
-            getBestBid(),
-            getBestAsk(),
-            getSpread(),
-            getMidPrice()
+            snapshot.buyOrders(),
+            snapshot.sellOrders(),
+            FixedPoint.toQuantity(snapshot.buyLots()),
+            FixedPoint.toQuantity(snapshot.sellLots()),
+            snapshot.bestBid(),
+            snapshot.bestAsk(),
+            snapshot.spread(),
+            snapshot.midPrice()
         );
     }
     
@@ -281,10 +704,28 @@ public class OrderBook {
      * Clear all orders from the book
      */
     public synchronized void clear() {
-        buyOrders.clear();
-        sellOrders.clear();
-        stopOrders.clear();
+        // Subscribers see every level and every order go away
+        if (depthDrained) {
+            changedBids.addAll(bidLevels.keySet());
+            changedAsks.addAll(askLevels.keySet());
+        }
+        for (OrderBookEntry entry : orderKeyMap.values()) {
+            recordEvent(DELETE, entry, entry.priceTicks, 0, NO_TRADE);
+        }
+        bidLevels.clear();
+        askLevels.clear();
+        bestBidLevel = null;
+        bestAskLevel = null;
+        buyOrderCount = 0;
+        sellOrderCount = 0;
+        totalBuyLots = 0;
+        totalSellLots = 0;
+        buyStops.clear();
+        sellStops.clear();
+        stopIndex.clear();
         orderKeyMap.clear();
+        userOrders.clear();
+        publishTop();
         log.info("Cleared order book for symbol: {}", symbol);
     }
     
@@ -293,9 +734,7 @@ public class OrderBook {
      * Creates a synthetic order without database persistence
      */
     public synchronized void addBuyOrder(BigDecimal price, BigDecimal quantity) {
-        PriceTimeKey key = new PriceTimeKey(price, java.time.LocalDateTime.now(), System.nanoTime());
-        Order simulatedOrder = createSimulatedOrder(price, quantity, true);
-        buyOrders.put(key, simulatedOrder);
+        addOrder(createSimulatedOrder(price, quantity, true));
         log.debug("Added simulated BUY order: {} @ {}", quantity, price);
     }
     
@@ -304,9 +743,7 @@ public class OrderBook {
      * Creates a synthetic order without database persistence
      */
     public synchronized void addSellOrder(BigDecimal price, BigDecimal quantity) {
-        PriceTimeKey key = new PriceTimeKey(price, java.time.LocalDateTime.now(), System.nanoTime());
-        Order simulatedOrder = createSimulatedOrder(price, quantity, false);
-        sellOrders.put(key, simulatedOrder);
+        addOrder(createSimulatedOrder(price, quantity, false));
         log.debug("Added simulated SELL order: {} @ {}", quantity, price);
     }
     
@@ -327,4 +764,208 @@ public class OrderBook {
         order.setUserId(0L); // Simulated order has no user
         return order;
     }
+    
+    /**
+     * Append an entry at the back of its price level, creating the level if needed
+     */
+    private void link(OrderBookEntry entry) {
+        boolean isBuy = entry.buy;
+        TreeMap<Long, PriceLevelQueue> levels = isBuy ? bidLevels : askLevels;
+        PriceLevelQueue level = levels.get(entry.priceTicks);
+        if (level == null) {
+            level = new PriceLevelQueue(entry.priceTicks);
+            levels.put(entry.priceTicks, level);
+            refreshBestLevel(isBuy);
+        }
+        level.append(entry);
+        markChanged(isBuy, entry.priceTicks);
+        
+        if (isBuy) {
+            buyOrderCount++;
+            totalBuyLots += entry.visibleLots;
+        } else {
+            sellOrderCount++;
+            totalSellLots += entry.visibleLots;
+        }
+    }
+    
+    /**
+     * Remove an entry from the book for good
+     */
+    private void unlink(OrderBookEntry entry) {
+        unindexUser(entry.order);
+        detach(entry);
+    }
+    
+    /**
+     * Take an entry out of its level, dropping the level once empty
+     */
+    private void detach(OrderBookEntry entry) {
+        PriceLevelQueue level = entry.level;
+        boolean isBuy = entry.buy;
+        
+        if (isBuy) {
+            buyOrderCount--;
+            totalBuyLots -= entry.visibleLots;
+        } else {
+            sellOrderCount--;
+            totalSellLots -= entry.visibleLots;
+        }
+        level.unlink(entry);
+        markChanged(isBuy, level.priceTicks);
+        
+        if (level.isEmpty()) {
+            (isBuy ? bidLevels : askLevels).remove(level.priceTicks);
+            refreshBestLevel(isBuy);
+        }
+    }
+    
+    private boolean removeStopOrder(Long orderId) {
+        IndexedStop stop = stopIndex.remove(orderId);
+        if (stop == null) {
+            return false;
+        }
+        Order order = stop.order();
+        unindexUser(order);
+        TreeMap<Long, Map<Long, Order>> stops = order.isBuyOrder() ? buyStops : sellStops;
+        long stopTicks = stop.stopTicks();
+        Map<Long, Order> bucket = stops.get(stopTicks);
+        if (bucket != null) {
+            bucket.remove(orderId);
+            if (bucket.isEmpty()) {
+                stops.remove(stopTicks);
+            }
+        }
+        return true;
+    }
+    
+    private void pollStops(SortedMap<Long, Map<Long, Order>> crossed, List<Order> triggered) {
+        for (Map<Long, Order> bucket : crossed.values()) {
+            for (Order order : bucket.values()) {
+                stopIndex.remove(order.getId());
+                unindexUser(order);
+                triggered.add(order);
+            }
+        }
+        crossed.clear();
+    }
+    
+    /**
+     * Make the current top of book visible to lock-free readers, called last by every mutation
+     */
+    private void publishTop() {
+        top = new TopOfBook(top.version() + 1,
+            bestBidLevel != null ? bestBidLevel.priceTicks : 0,
+            bestAskLevel != null ? bestAskLevel.priceTicks : 0,
+            buyOrderCount, sellOrderCount, totalBuyLots, totalSellLots);
+    }
+    
+    private static OrderBookDepth trimDepth(OrderBookDepth depth, int levels) {
+        if (depth.getBids().size() <= levels && depth.getAsks().size() <= levels) {
+            return depth;
+        }
+        return new OrderBookDepth(depth.getSymbol(), depth.getSequence(),
+            depth.getBids().subList(0, Math.min(levels, depth.getBids().size())),
+            depth.getAsks().subList(0, Math.min(levels, depth.getAsks().size())));
+    }
+    
+    private void markChanged(boolean isBuy, long priceTicks) {
+        if (depthDrained) {
+            (isBuy ? changedBids : changedAsks).add(priceTicks);
+        }
+    }
+    
+    private void recordEvent(int type, OrderBookEntry entry, long priceTicks, long shownLots, long tradeLots) {
+        long sequence = ++orderEventSequence;
+        if (!orderEventsDrained) {
+            return;
+        }
+        if (pendingEventCount == MAX_PENDING_EVENTS) {
+            // The feed stopped draining: start over, its readers resync on the gap
+            droppedOrderEvents += pendingEventCount;
+            log.warn("Dropping {} undrained market-by-order events of book {}", pendingEventCount, symbol);
+            pendingEventCount = 0;
+        }
+        int at = pendingEventCount * EVENT_FIELDS;
+        if (at == pendingEvents.length) {
+            pendingEvents = Arrays.copyOf(pendingEvents, pendingEvents.length * 2);
+        }
+        pendingEvents[at + EVENT_SEQUENCE] = sequence;
+        pendingEvents[at + EVENT_TYPE] = type;
+        pendingEvents[at + EVENT_ORDER_ID] = entry.order.getId();
+        pendingEvents[at + EVENT_BUY] = entry.buy ? 1 : 0;
+        pendingEvents[at + EVENT_PRICE] = priceTicks;
+        pendingEvents[at + EVENT_SHOWN] = shownLots;
+        pendingEvents[at + EVENT_TRADED] = tradeLots;
+        pendingEventCount++;
+    }
+    
+    private List<BookOrder> bookOrders(TreeMap<Long, PriceLevelQueue> levels) {
+        List<BookOrder> orders = new ArrayList<>();
+        for (PriceLevelQueue level : levels.values()) {
+            BigDecimal price = FixedPoint.toPrice(level.priceTicks);
+            for (OrderBookEntry entry = level.head; entry != null; entry = entry.next) {
+                orders.add(new BookOrder(entry.order.getId(), price, FixedPoint.toQuantity(entry.visibleLots)));
+            }
+        }
+        return orders;
+    }
+    
+    private void drainChanged(Set<Long> changed, TreeMap<Long, PriceLevelQueue> levels, String side, List<DepthUpdate> updates) {
+        for (Long priceTicks : changed) {
+            PriceLevelQueue level = levels.get(priceTicks);
+            updates.add(new DepthUpdate(symbol, ++depthSequence, side, FixedPoint.toPrice(priceTicks),
+                FixedPoint.toQuantity(level != null ? level.visibleLots : 0), level != null ? level.orderCount : 0));
+        }
+        changed.clear();
+    }
+    
+    private void indexUser(Order order) {
+        if (order.getUserId() != null) {
+            userOrders.computeIfAbsent(order.getUserId(), k -> new LinkedHashSet<>()).add(order.getId());
+        }
+    }
+    
+    private void unindexUser(Order order) {
+        Set<Long> orderIds = order.getUserId() != null ? userOrders.get(order.getUserId()) : null;
+        if (orderIds != null) {
+            orderIds.remove(order.getId());
+            if (orderIds.isEmpty()) {
+                userOrders.remove(order.getUserId());
+            }
+        }
+    }
+    
+    private void refreshBestLevel(boolean isBuy) {
+        if (isBuy) {
+            Map.Entry<Long, PriceLevelQueue> first = bidLevels.firstEntry();
+            bestBidLevel = first != null ? first.getValue() : null;
+        } else {
+            Map.Entry<Long, PriceLevelQueue> first = askLevels.firstEntry();
+            bestAskLevel = first != null ? first.getValue() : null;
+        }
+    }
+    
+    private List<Order> collectOrders(TreeMap<Long, PriceLevelQueue> levels) {
+        List<Order> orders = new ArrayList<>(orderKeyMap.size());
+        for (PriceLevelQueue level : levels.values()) {
+            for (OrderBookEntry entry = level.head; entry != null; entry = entry.next) {
+                orders.add(entry.order);
+            }
+        }
+        return orders;
+    }
+    
+    private List<PriceLevel> topLevels(TreeMap<Long, PriceLevelQueue> levels, int count) {
+        List<PriceLevel> result = new ArrayList<>(Math.min(count, levels.size()));
+        for (PriceLevelQueue level : levels.values()) {
+            if (result.size() >= count) {
+                break;
+            }
+            if (level.visibleLots > 0) {
+                result.add(new PriceLevel(FixedPoint.toPrice(level.priceTicks), FixedPoint.toQuantity(level.visibleLots)));
+            }
+        }
+        return result;
+    }
 }
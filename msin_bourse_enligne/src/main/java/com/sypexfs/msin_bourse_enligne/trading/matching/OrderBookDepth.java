@@ -7,11 +7,13 @@ import java.util.List;
 
 /**
  * Order book depth showing top N price levels
+ * The sequence is the last depth update reflected in the levels
  */
 @Data
 @AllArgsConstructor
 public class OrderBookDepth {
     private String symbol;
+    private long sequence;
     private List<PriceLevel> bids;
     private List<PriceLevel> asks;
 }
@@ -0,0 +1,49 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+
+/**
+ * Resting order node inside a price level
+ * Nodes are linked intrusively so that removal from the middle of a level is O(1).
+ * Price and remaining quantity are kept in fixed point, see {@link FixedPoint}.
+ *
+ * Iceberg orders only expose a slice of peakLots: visibleLots is what is left of the
+ * current slice and is what matching and depth see. Fully visible orders have no peak
+ * and their visible lots are their remaining lots.
+ *
+ * An amend that loses time priority re-uses the node, so price and peak can change.
+ */
+final class OrderBookEntry {
+
+    final Order order;
+    final boolean buy;
+    long priceTicks;
+    long peakLots;
+    long remainingLots;
+    long visibleLots;
+
+    PriceLevelQueue level;
+    OrderBookEntry prev;
+    OrderBookEntry next;
+
+    OrderBookEntry(Order order) {
+        this.order = order;
+        this.buy = order.isBuyOrder();
+        this.priceTicks = FixedPoint.toTicks(order.getPrice());
+        this.remainingLots = FixedPoint.toLots(order.getRemainingQuantity());
+        this.peakLots = peakLots(order, remainingLots);
+        this.visibleLots = peakLots > 0 ? peakLots : remainingLots;
+    }
+
+    /**
+     * Iceberg slice size of an order, 0 when the order is fully visible
+     */
+    static long peakLots(Order order, long remainingLots) {
+        long displayedLots = order.getDisplayedQuantity() != null ? FixedPoint.toLots(order.getDisplayedQuantity()) : 0;
+        return displayedLots > 0 && displayedLots < remainingLots ? displayedLots : 0;
+    }
+
+    boolean isIceberg() {
+        return peakLots > 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * Market-by-order event of one resting order
+ * - ADD: the order joined the back of its price level with quantity shown
+ * - MODIFY: the shown quantity changed in place, the order keeps its priority
+ * - DELETE: the order left the book without trading
+ * - TRADE: tradeQuantity was executed against the order at price, quantity is what it still shows,
+ *   0 when it left the book. An iceberg then shows its next slice as a new ADD.
+ * Sequence numbers are per book and gap free, they continue from {@link MarketByOrderSnapshot#getSequence()}.
+ */
+@Data
+@AllArgsConstructor
+public class OrderBookEvent {
+    private String symbol;
+    private long sequence;
+    private String type;
+    private long orderId;
+    private String side; // BUY or SELL
+    private BigDecimal price;
+    private BigDecimal quantity;
+    private BigDecimal tradeQuantity;
+}
@@ -3,22 +3,28 @@ package com.sypexfs.msin_bourse_enligne.trading.matching;
 import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
 import com.sypexfs.msin_bourse_enligne.trading.entity.OrderHistory;
 import com.sypexfs.msin_bourse_enligne.trading.entity.UserTransaction;
+import com.sypexfs.msin_bourse_enligne.trading.journal.JournalRecord;
+import com.sypexfs.msin_bourse_enligne.trading.journal.JournalReplay;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderBookSnapshot;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderBookSnapshotStore;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderJournal;
+import com.sypexfs.msin_bourse_enligne.trading.repository.MarketOrderbookWriter;
 import com.sypexfs.msin_bourse_enligne.trading.repository.OrderHistoryRepository;
 import com.sypexfs.msin_bourse_enligne.trading.repository.OrderRepository;
-import com.sypexfs.msin_bourse_enligne.trading.repository.UserTransactionRepository;
-import com.sypexfs.msin_bourse_enligne.trading.service.TransactionSyncService;
-import com.sypexfs.msin_bourse_enligne.portfolio.service.PortfolioUpdateService;
-import com.sypexfs.msin_bourse_enligne.market.entity.MarketOrderbook;
-import com.sypexfs.msin_bourse_enligne.market.repository.MarketOrderbookRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -26,6 +32,30 @@ import java.util.stream.Collectors;
 /**
  * Core order matching engine that matches buy and sell orders
  * Implements price-time priority matching algorithm
+ *
+ * Symbols are spread over a fixed number of {@link MatchingShard}s. Each shard is the
+ * single writer of its books, so an order for ADH never waits behind an order for AFM
+ * unless both symbols hash to the same shard.
+ *
+ * Matching only touches the book and the incoming order. Fills are handed to the
+ * {@link ExecutionPersistencePipeline} as events and written after the order's
+ * transaction commits, outside the shard lock.
+ *
+ * Every accepted order, fill, cancel and stop trigger is first written to the
+ * {@link OrderJournal}, which is made durable before the order is acknowledged.
+ * Books are periodically snapshotted, a restart loads the snapshots and replays the
+ * journal tail written since.
+ *
+ * Time in force: IOC and FOK are resolved within the matching pass and never rest,
+ * FOK checks level liquidity up front. DAY and GTD orders are tracked on the shard's
+ * {@link TimingWheel} and leave the book when their deadline passes.
+ *
+ * Call auctions: while a book is in the {@link TradingPhase#AUCTION} phase orders rest
+ * without matching. The uncross computes the equilibrium price once over the aggregated
+ * levels and executes every crossing order at that price as one batch.
+ *
+ * Self-trade prevention applies the aggressor's {@link SelfTradePrevention} mode when it
+ * reaches a resting order of the same user.
  */
 @Component
 @RequiredArgsConstructor
@@ -33,26 +63,61 @@ import java.util.stream.Collectors;
 public class OrderMatchingEngine {
 
     private final OrderRepository orderRepository;
-    private final UserTransactionRepository userTransactionRepository;
     private final OrderHistoryRepository orderHistoryRepository;
     private final MarketDataService marketDataService;
-    private final TransactionSyncService transactionSyncService;
-    private final PortfolioUpdateService portfolioUpdateService;
-    private final MarketOrderbookRepository marketOrderbookRepository;
+    private final ExecutionPersistencePipeline executionPipeline;
+    private final OrderJournal journal;
+    private final OrderBookSnapshotStore snapshotStore;
+    private final MarketOrderbookWriter marketOrderbookWriter;
+    private final TransactionTemplate transactionTemplate;
     
     // Order books per symbol (symbol -> OrderBook)
     private final Map<String, OrderBook> orderBooks = new ConcurrentHashMap<>();
     
+    // Number of matching shards, 0 = one per available core, 1 = single global lock
+    @Value("${app.trading.matching.shards:0}")
+    private int configuredShards;
+    
+    private MatchingShard[] shards;
+    
+    // Books created while an auction call is open start in the call too
+    private volatile boolean auctionCall;
+    
+    // Applied to orders that do not choose a self-trade prevention mode
+    @Value("${app.trading.stp.default-mode:CANCEL_NEWEST}")
+    private SelfTradePrevention defaultStpMode;
+    
+    // DAY orders expire at the close of the session
+    @Value("${app.trading.market-close-time:15:30}")
+    private String marketCloseTime;
+    
+    @Value("${app.trading.trading-days:MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY}")
+    private List<String> tradingDays;
+    
     // Commission and tax rates
     private static final BigDecimal COMMISSION_RATE = new BigDecimal("0.003"); // 0.3%
     private static final BigDecimal TAX_RATE = new BigDecimal("0.001"); // 0.1%
     private static final BigDecimal MIN_COMMISSION = new BigDecimal("10.00");
+    
+    // date_entry lower bound of an order without an entry time, scans every partition
+    private static final LocalDateTime NO_ENTRY_BOUND = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @PostConstruct
+    void initShards() {
+        int count = configuredShards > 0 ? configuredShards : Runtime.getRuntime().availableProcessors();
+        shards = new MatchingShard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new MatchingShard(i);
+        }
+        log.info("Matching engine started with {} shard(s)", count);
+    }
 
     /**
      * Process a new order through the matching engine
+     * Only the shard owning the order's symbol is locked
      */
     @Transactional
-    public synchronized MatchingResult processOrder(Order order) {
+    public MatchingResult processOrder(Order order) {
         log.info("Processing order: {} for symbol: {}", order.getId(), order.getSymbol());
         
         // Validate order
@@ -61,11 +126,181 @@ public class OrderMatchingEngine {
             return MatchingResult.rejected(order, "Invalid order parameters");
         }
         
-        // Get or create order book for symbol
-        OrderBook orderBook = orderBooks.computeIfAbsent(
-            order.getSymbol(), 
-            k -> new OrderBook(order.getSymbol())
-        );
+        if (!resolveExpiry(order)) {
+            rejectOrder(order, "Order expiry is in the past");
+            return MatchingResult.rejected(order, "Order expiry is in the past");
+        }
+        
+        MatchingShard shard = shardFor(order.getSymbol());
+        MatchingResult result;
+        SelfTradeWrites selfTradeWrites;
+        long acquiredAt = shard.acquire();
+        try {
+            journal.orderAccepted(order);
+            result = matchOrder(order, getOrCreateOrderBook(order.getSymbol()));
+            shard.recordProcessed();
+        } finally {
+            selfTradeWrites = shard.takeSelfTradeWrites();
+            shard.release(acquiredAt);
+        }
+        
+        // Journal must be durable before the order is acknowledged
+        journal.commitBatch();
+        persistSelfTradeWrites(selfTradeWrites);
+        return result;
+    }
+
+    /**
+     * Process a batch of new orders, grouped by symbol
+     * Each symbol's shard is taken once for all of its orders, which are matched in
+     * batch order, and the journal is made durable once for the whole batch
+     *
+     * @return one result per order, in batch order
+     */
+    @Transactional
+    public List<MatchingResult> processOrders(List<Order> orders) {
+        Map<Order, MatchingResult> results = new IdentityHashMap<>(orders.size());
+        Map<String, List<Order>> bySymbol = new LinkedHashMap<>();
+        List<SelfTradeWrites> selfTradeWrites = new ArrayList<>();
+        for (Order order : orders) {
+            if (!isValidOrder(order)) {
+                rejectOrder(order, "Invalid order parameters");
+                results.put(order, MatchingResult.rejected(order, "Invalid order parameters"));
+            } else if (!resolveExpiry(order)) {
+                rejectOrder(order, "Order expiry is in the past");
+                results.put(order, MatchingResult.rejected(order, "Order expiry is in the past"));
+            } else {
+                bySymbol.computeIfAbsent(order.getSymbol(), k -> new ArrayList<>()).add(order);
+            }
+        }
+        
+        for (Map.Entry<String, List<Order>> entry : bySymbol.entrySet()) {
+            OrderBook orderBook = getOrCreateOrderBook(entry.getKey());
+            MatchingShard shard = shardFor(entry.getKey());
+            long acquiredAt = shard.acquire();
+            try {
+                for (Order order : entry.getValue()) {
+                    journal.orderAccepted(order);
+                    results.put(order, matchOrder(order, orderBook));
+                    shard.recordProcessed();
+                }
+            } finally {
+                selfTradeWrites.add(shard.takeSelfTradeWrites());
+                shard.release(acquiredAt);
+            }
+        }
+        
+        journal.commitBatch();
+        selfTradeWrites.forEach(this::persistSelfTradeWrites);
+        return orders.stream().map(results::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Remove a cancelled order from its book
+     */
+    public void cancelOrder(Order order) {
+        OrderBook orderBook = orderBooks.get(order.getSymbol());
+        if (orderBook == null) {
+            return;
+        }
+        
+        MatchingShard shard = shardFor(order.getSymbol());
+        long acquiredAt = shard.acquire();
+        try {
+            orderBook.removeOrder(order.getId());
+            journal.cancel(order);
+        } finally {
+            shard.release(acquiredAt);
+        }
+        journal.commitBatch();
+    }
+
+    /**
+     * Apply an amended order to its book
+     * The book's own instance of the order takes the new price, stop price, quantities and
+     * expiry. A resting order is amended in place, see {@link OrderBook#amendOrder}, unless
+     * its new price crosses the book: it then leaves the book and is matched like a new
+     * order. A waiting stop order is re-indexed at its new stop price.
+     *
+     * @return the matching result of a crossing amend, pending otherwise, rejected when the new quantity
+     *         does not exceed what the book has executed, null when the order is not in the book
+     */
+    @Transactional
+    public MatchingResult amendOrder(Order amended) {
+        OrderBook orderBook = orderBooks.get(amended.getSymbol());
+        if (orderBook == null) {
+            return null;
+        }
+        
+        MatchingShard shard = shardFor(amended.getSymbol());
+        MatchingResult result;
+        SelfTradeWrites selfTradeWrites;
+        long acquiredAt = shard.acquire();
+        try {
+            Order order = orderBook.getOrder(amended.getId());
+            if (order == null) {
+                return null;
+            }
+            // Only the book's executed quantity is current, the caller's may predate the latest fills
+            if (FixedPoint.toLots(amended.getQuantity()) <= FixedPoint.toLots(order.getExecQty())) {
+                return MatchingResult.rejected(order, "Quantity must exceed the executed quantity: " + order.getExecQty());
+            }
+            long previousDeadline = expiryDeadline(order);
+            if (order != amended) {
+                order.setPrice(amended.getPrice());
+                order.setStopPrice(amended.getStopPrice());
+                order.setQuantity(amended.getQuantity());
+                order.setDisplayedQuantity(amended.getDisplayedQuantity());
+                order.setOrderAmount(amended.getOrderAmount());
+                order.setExpiryTypeId(amended.getExpiryTypeId());
+                order.setDateExpiry(amended.getDateExpiry());
+                order.setTimeExpiry(amended.getTimeExpiry());
+            }
+            journal.amend(order);
+            
+            if (!orderBook.containsOrder(order.getId())) {
+                orderBook.addStopOrder(order);
+                result = MatchingResult.pending(order);
+            } else if (crossesBook(order, orderBook)) {
+                // Priority is lost anyway, the amended order trades like a new one
+                orderBook.removeOrder(order.getId());
+                result = matchOrder(order, orderBook);
+            } else {
+                orderBook.amendOrder(order.getId());
+                result = MatchingResult.pending(order);
+            }
+            
+            // A later deadline is picked up when the old one fires, an earlier one needs its own timer
+            long deadline = expiryDeadline(order);
+            if (deadline > 0 && (previousDeadline == 0 || deadline < previousDeadline)) {
+                scheduleExpiry(order);
+            }
+        } finally {
+            selfTradeWrites = shard.takeSelfTradeWrites();
+            shard.release(acquiredAt);
+        }
+        
+        journal.commitBatch();
+        persistSelfTradeWrites(selfTradeWrites);
+        return result;
+    }
+
+    private boolean crossesBook(Order order, OrderBook orderBook) {
+        if (orderBook.getPhase() == TradingPhase.AUCTION) {
+            return false;
+        }
+        OrderBookEntry opposite = orderBook.peekBest(!order.isBuyOrder());
+        long limitTicks = FixedPoint.toTicks(order.getPrice());
+        return opposite != null && (order.isBuyOrder() ? opposite.priceTicks <= limitTicks : opposite.priceTicks >= limitTicks);
+    }
+
+    /**
+     * Run the order against its book, caller must hold the owning shard
+     */
+    private MatchingResult matchOrder(Order order, OrderBook orderBook) {
+        if (orderBook.getPhase() == TradingPhase.AUCTION) {
+            return collectForAuction(order, orderBook);
+        }
         
         // Handle different order types
         MatchingResult result;
@@ -90,11 +325,41 @@ public class OrderMatchingEngine {
         // Update market data after matching
         if (result.isExecuted() && !result.getExecutions().isEmpty()) {
             updateMarketData(order.getSymbol(), result);
+            triggerStopOrders(orderBook, result.getExecutions());
         }
         
         return result;
     }
 
+    /**
+     * Fire the stops crossed by the trades just printed
+     * Triggered stops may trade in turn and fire further stops
+     */
+    private void triggerStopOrders(OrderBook orderBook, List<OrderExecution> executions) {
+        long high = Long.MIN_VALUE;
+        long low = Long.MAX_VALUE;
+        for (OrderExecution execution : executions) {
+            long ticks = FixedPoint.toTicks(execution.getPrice());
+            high = Math.max(high, ticks);
+            low = Math.min(low, ticks);
+        }
+        
+        for (Order stopOrder : orderBook.triggerStops(high, low)) {
+            log.info("Stop order {} triggered by trade for symbol {}", stopOrder.getId(), orderBook.getSymbol());
+            matchTriggeredStop(stopOrder, orderBook);
+        }
+    }
+
+    /**
+     * Convert a triggered stop to its executable type and match it
+     */
+    private MatchingResult matchTriggeredStop(Order order, OrderBook orderBook) {
+        boolean stopLimit = "STOP_LIMIT".equals(order.getOrderTypeId());
+        order.setOrderTypeId(stopLimit ? "LIMIT" : "MARKET");
+        journal.stopTriggered(order);
+        return matchOrder(order, orderBook);
+    }
+
     /**
      * Process market order - execute immediately at best available price
      */
@@ -102,47 +367,62 @@ public class OrderMatchingEngine {
         log.debug("Processing MARKET order: {}", order.getId());
         
         List<OrderExecution> executions = new ArrayList<>();
-        BigDecimal remainingQty = order.getQuantity();
+        List<ExecutionEvent> events = new ArrayList<>();
+        long quantityLots = FixedPoint.toLots(order.getQuantity());
+        long remainingLots = FixedPoint.toLots(order.getRemainingQuantity());
         
-        // Get opposite side orders
-        List<Order> oppositeOrders = order.isBuyOrder() 
-            ? orderBook.getSellOrders() 
-            : orderBook.getBuyOrders();
+        boolean isBuy = order.isBuyOrder();
         
-        if (oppositeOrders.isEmpty()) {
+        if (orderBook.peekBest(!isBuy) == null) {
             // No liquidity - reject market order
             rejectOrder(order, "No liquidity available");
             return MatchingResult.rejected(order, "No liquidity available");
         }
         
-        // Match against opposite orders
-        for (Order oppositeOrder : oppositeOrders) {
-            if (remainingQty.compareTo(BigDecimal.ZERO) <= 0) {
-                break;
+        boolean checkSelfTrade = checksSelfTrade(order, orderBook);
+        if (isFillOrKill(order) && !orderBook.hasLiquidityFor(isBuy, isBuy ? Long.MAX_VALUE : Long.MIN_VALUE, remainingLots,
+                order.getUserId(), selfTradeMode(order, checkSelfTrade))) {
+            return killOrder(order, "Not enough liquidity to fill FOK order");
+        }
+        
+        // Match against the live opposite side, filled passive orders leave the book as we go
+        boolean selfTradeCancelled = false;
+        OrderBookEntry opposite;
+        while (remainingLots > 0 && (opposite = orderBook.peekBest(!isBuy)) != null) {
+            if (checkSelfTrade && isSelfTrade(order, opposite.order)) {
+                long decrementLots = preventSelfTrade(order, opposite, orderBook, remainingLots);
+                if (decrementLots < 0) {
+                    selfTradeCancelled = true;
+                    break;
+                }
+                quantityLots -= decrementLots;
+                remainingLots -= decrementLots;
+                continue;
             }
             
-            BigDecimal matchQty = remainingQty.min(oppositeOrder.getRemainingQuantity());
-            BigDecimal matchPrice = oppositeOrder.getPrice();
+            // Icebergs trade their visible slice, the next slice is re-queued by the fill
+            long matchLots = Math.min(remainingLots, opposite.visibleLots);
             
-            OrderExecution execution = executeMatch(order, oppositeOrder, matchQty, matchPrice);
+            OrderExecution execution = executeMatch(order, opposite.order, orderBook, matchLots, opposite.priceTicks, events);
             executions.add(execution);
             
-            remainingQty = remainingQty.subtract(matchQty);
+            remainingLots -= matchLots;
         }
         
         // Update order status
-        boolean isAggressorFilled = remainingQty.compareTo(BigDecimal.ZERO) == 0;
+        boolean isAggressorFilled = remainingLots == 0;
         if (isAggressorFilled) {
             order.setStatId("FILLED");
             order.setExecQty(order.getQuantity());
         } else if (executions.isEmpty()) {
-            order.setStatId("REJECTED");
+            order.setStatId(selfTradeCancelled ? "CANCELLED" : "REJECTED");
         } else {
             order.setStatId("PARTIAL");
-            order.setExecQty(order.getQuantity().subtract(remainingQty));
+            order.setExecQty(FixedPoint.toQuantity(quantityLots - remainingLots));
         }
         
-        orderRepository.save(order);
+        persistMatchingState(order);
+        executionPipeline.publishAfterCommit(events);
         
         // Note: Filled MARKET orders are never added to order book, so no need to remove them
         
@@ -156,49 +436,71 @@ public class OrderMatchingEngine {
         log.debug("Processing LIMIT order: {} at price: {}", order.getId(), order.getPrice());
         
         List<OrderExecution> executions = new ArrayList<>();
-        BigDecimal remainingQty = order.getQuantity();
-        
-        // Get opposite side orders that match price criteria
-        List<Order> oppositeOrders = order.isBuyOrder() 
-            ? orderBook.getSellOrders().stream()
-                .filter(o -> o.getPrice().compareTo(order.getPrice()) <= 0)
-                .collect(Collectors.toList())
-            : orderBook.getBuyOrders().stream()
-                .filter(o -> o.getPrice().compareTo(order.getPrice()) >= 0)
-                .collect(Collectors.toList());
-        
-        // Match against opposite orders
-        for (Order oppositeOrder : oppositeOrders) {
-            if (remainingQty.compareTo(BigDecimal.ZERO) <= 0) {
+        List<ExecutionEvent> events = new ArrayList<>();
+        boolean isBuy = order.isBuyOrder();
+        long limitTicks = FixedPoint.toTicks(order.getPrice());
+        long quantityLots = FixedPoint.toLots(order.getQuantity());
+        long remainingLots = FixedPoint.toLots(order.getRemainingQuantity());
+        
+        boolean checkSelfTrade = checksSelfTrade(order, orderBook);
+        if (isFillOrKill(order) && !orderBook.hasLiquidityFor(isBuy, limitTicks, remainingLots,
+                order.getUserId(), selfTradeMode(order, checkSelfTrade))) {
+            return killOrder(order, "Not enough liquidity to fill FOK order");
+        }
+        
+        // Walk the live opposite side in priority order and stop at the first level that no longer crosses
+        boolean selfTradeCancelled = false;
+        OrderBookEntry opposite;
+        while (remainingLots > 0 && (opposite = orderBook.peekBest(!isBuy)) != null) {
+            if (isBuy ? opposite.priceTicks > limitTicks : opposite.priceTicks < limitTicks) {
                 break;
             }
             
-            BigDecimal matchQty = remainingQty.min(oppositeOrder.getRemainingQuantity());
-            BigDecimal matchPrice = oppositeOrder.getPrice(); // Price improvement for aggressor
+            if (checkSelfTrade && isSelfTrade(order, opposite.order)) {
+                long decrementLots = preventSelfTrade(order, opposite, orderBook, remainingLots);
+                if (decrementLots < 0) {
+                    selfTradeCancelled = true;
+                    break;
+                }
+                quantityLots -= decrementLots;
+                remainingLots -= decrementLots;
+                continue;
+            }
+            
+            long matchLots = Math.min(remainingLots, opposite.visibleLots);
             
-            OrderExecution execution = executeMatch(order, oppositeOrder, matchQty, matchPrice);
+            // Price improvement for aggressor: trade at the resting order's price
+            OrderExecution execution = executeMatch(order, opposite.order, orderBook, matchLots, opposite.priceTicks, events);
             executions.add(execution);
             
-            remainingQty = remainingQty.subtract(matchQty);
+            remainingLots -= matchLots;
         }
         
         // Update order status
-        if (remainingQty.compareTo(BigDecimal.ZERO) == 0) {
+        if (remainingLots == 0) {
             order.setStatId("FILLED");
             order.setExecQty(order.getQuantity());
+        } else if (selfTradeCancelled || isImmediateOrCancel(order) || isFillOrKill(order)) {
+            // IOC/FOK never rest, the unfilled remainder is cancelled, as is the aggressor of a prevented self-trade
+            order.setStatId("CANCELLED");
+            order.setExecQty(FixedPoint.toQuantity(quantityLots - remainingLots));
+            journal.cancel(order);
         } else if (executions.isEmpty()) {
             // No match - add to order book
             order.setStatId("PENDING");
-            order.setExecQty(BigDecimal.ZERO);
+            order.setExecQty(FixedPoint.toQuantity(quantityLots - remainingLots));
             orderBook.addOrder(order);
+            scheduleExpiry(order);
         } else {
             // Partial fill - add remaining to order book
             order.setStatId("PARTIAL");
-            order.setExecQty(order.getQuantity().subtract(remainingQty));
+            order.setExecQty(FixedPoint.toQuantity(quantityLots - remainingLots));
             orderBook.addOrder(order);
+            scheduleExpiry(order);
         }
         
-        orderRepository.save(order);
+        persistMatchingState(order);
+        executionPipeline.publishAfterCommit(events);
         
         return new MatchingResult(order, executions);
     }
@@ -212,21 +514,19 @@ public class OrderMatchingEngine {
         // Check if stop price is triggered
         BigDecimal currentPrice = marketDataService.getCurrentPrice(order.getSymbol());
         
-        boolean triggered = order.isBuyOrder()
-            ? currentPrice.compareTo(order.getStopPrice()) >= 0
-            : currentPrice.compareTo(order.getStopPrice()) <= 0;
-        
-        if (triggered) {
+        if (isStopTriggered(order, currentPrice)) {
             log.info("Stop order {} triggered at price: {}", order.getId(), currentPrice);
             // Convert to market order
             order.setOrderTypeId("MARKET");
+            journal.stopTriggered(order);
             return processMarketOrder(order, orderBook);
         } else {
             // Keep as pending stop order
             order.setStatId("PENDING");
             order.setExecQty(BigDecimal.ZERO);
             orderBook.addStopOrder(order);
-            orderRepository.save(order);
+            scheduleExpiry(order);
+            persistMatchingState(order);
             return MatchingResult.pending(order);
         }
     }
@@ -241,90 +541,158 @@ public class OrderMatchingEngine {
         // Check if stop price is triggered
         BigDecimal currentPrice = marketDataService.getCurrentPrice(order.getSymbol());
         
-        boolean triggered = order.isBuyOrder()
-            ? currentPrice.compareTo(order.getStopPrice()) >= 0
-            : currentPrice.compareTo(order.getStopPrice()) <= 0;
-        
-        if (triggered) {
+        if (isStopTriggered(order, currentPrice)) {
             log.info("Stop-limit order {} triggered at price: {}", order.getId(), currentPrice);
             // Convert to limit order
             order.setOrderTypeId("LIMIT");
+            journal.stopTriggered(order);
             return processLimitOrder(order, orderBook);
         } else {
             // Keep as pending stop order
             order.setStatId("PENDING");
             order.setExecQty(BigDecimal.ZERO);
             orderBook.addStopOrder(order);
-            orderRepository.save(order);
+            scheduleExpiry(order);
+            persistMatchingState(order);
             return MatchingResult.pending(order);
         }
     }
 
+    private boolean isStopTriggered(Order order, BigDecimal currentPrice) {
+        if (currentPrice == null || currentPrice.signum() <= 0) {
+            // No price yet, the stop rests as it does for the poll
+            return false;
+        }
+        return order.isBuyOrder()
+            ? currentPrice.compareTo(order.getStopPrice()) >= 0
+            : currentPrice.compareTo(order.getStopPrice()) <= 0;
+    }
+
     /**
      * Execute a match between two orders
+     * Only the book and the passive order are updated here, the persistence work is
+     * queued as an {@link ExecutionEvent}. Lots and ticks are converted back to BigDecimal here.
      */
-    private OrderExecution executeMatch(Order aggressorOrder, Order passiveOrder, 
-                                       BigDecimal quantity, BigDecimal price) {
+    private OrderExecution executeMatch(Order aggressorOrder, Order passiveOrder, OrderBook orderBook,
+                                       long lots, long ticks, List<ExecutionEvent> events) {
+        BigDecimal quantity = FixedPoint.toQuantity(lots);
+        BigDecimal price = FixedPoint.toPrice(ticks);
         log.info("Executing match: {} qty at {} between orders {} and {}", 
                  quantity, price, aggressorOrder.getId(), passiveOrder.getId());
         
-        // Update passive order
-        BigDecimal newExecQty = passiveOrder.getExecQty().add(quantity);
-        passiveOrder.setExecQty(newExecQty);
+        long sequence = journal.fill(aggressorOrder, passiveOrder, lots, ticks);
+        
+        // Create transactions for both orders
+        UserTransaction aggressorTx = createTransaction(aggressorOrder, quantity, price);
+        UserTransaction passiveTx = createTransaction(passiveOrder, quantity, price);
+        events.add(fillRestingOrder(passiveOrder, orderBook, lots, price, aggressorTx, passiveTx, sequence));
+        
+        return new OrderExecution(aggressorOrder.getId(), passiveOrder.getId(), 
+                                 quantity, price, LocalDateTime.now());
+    }
+
+    /**
+     * Execute an auction trade between two resting orders
+     * Both orders are updated, the transactions are carried by the sell side's event only
+     */
+    private OrderExecution executeAuctionMatch(Order buyOrder, Order sellOrder, OrderBook orderBook,
+                                               long lots, long ticks, List<ExecutionEvent> events) {
+        BigDecimal quantity = FixedPoint.toQuantity(lots);
+        BigDecimal price = FixedPoint.toPrice(ticks);
+        long sequence = journal.auctionFill(buyOrder, sellOrder, lots, ticks);
+        
+        UserTransaction buyTx = createTransaction(buyOrder, quantity, price);
+        UserTransaction sellTx = createTransaction(sellOrder, quantity, price);
+        events.add(fillRestingOrder(sellOrder, orderBook, lots, price, buyTx, sellTx, sequence));
+        events.add(fillRestingOrder(buyOrder, orderBook, lots, price, null, null, sequence));
+        
+        return new OrderExecution(buyOrder.getId(), sellOrder.getId(), quantity, price, LocalDateTime.now());
+    }
+
+    /**
+     * Apply a fill to a resting order and describe it for the persistence pipeline
+     * Keeps the level aggregates in sync, a filled order leaves the book
+     */
+    private ExecutionEvent fillRestingOrder(Order order, OrderBook orderBook, long lots, BigDecimal price,
+                                            UserTransaction counterpartyTx, UserTransaction orderTx, long sequence) {
+        BigDecimal quantity = FixedPoint.toQuantity(lots);
+        boolean isFilled = orderBook.applyFill(order.getId(), lots, FixedPoint.toTicks(price)) == 0;
+        
+        BigDecimal previousExecQty = order.getExecQty();
+        BigDecimal newExecQty = previousExecQty.add(quantity);
+        order.setExecQty(newExecQty);
         
-        boolean isFilled = passiveOrder.getRemainingQuantity().compareTo(BigDecimal.ZERO) == 0;
         if (isFilled) {
-            passiveOrder.setStatId("FILLED");
+            order.setStatId("FILLED");
         } else {
-            passiveOrder.setStatId("PARTIAL");
+            order.setStatId("PARTIAL");
         }
         
         // Calculate average execution price
-        if (passiveOrder.getExecAvgPrice() == null) {
-            passiveOrder.setExecAvgPrice(price);
+        if (order.getExecAvgPrice() == null) {
+            order.setExecAvgPrice(price);
         } else {
-            BigDecimal totalValue = passiveOrder.getExecAvgPrice()
-                .multiply(passiveOrder.getExecQty().subtract(quantity))
+            BigDecimal totalValue = order.getExecAvgPrice()
+                .multiply(previousExecQty)
                 .add(price.multiply(quantity));
-            passiveOrder.setExecAvgPrice(totalValue.divide(passiveOrder.getExecQty(), 4, RoundingMode.HALF_UP));
+            order.setExecAvgPrice(totalValue.divide(newExecQty, 4, RoundingMode.HALF_UP));
         }
         
-        orderRepository.save(passiveOrder);
-        
-        // Update or remove passive order from order book
-        if (isFilled) {
-            OrderBook orderBook = orderBooks.get(passiveOrder.getSymbol());
-            if (orderBook != null) {
-                orderBook.removeOrder(passiveOrder.getId());
-                log.debug("Removed filled passive order {} from order book", passiveOrder.getId());
+        return new ExecutionEvent(
+            order.getSymbol(),
+            order.getId(),
+            order.getUserId(),
+            order.getStatId(),
+            previousExecQty,
+            newExecQty,
+            order.getExecAvgPrice(),
+            order.getRemainingQuantity(),
+            isFilled ? BigDecimal.ZERO : FixedPoint.toQuantity(orderBook.visibleLots(order.getId())),
+            order.getDateEntry(),
+            counterpartyTx,
+            orderTx,
+            sequence
+        );
+    }
+
+    /**
+     * Execution of a replayed fill, rebuilt against the order row
+     * The row may be behind the fill or already past it when a later execution was written
+     */
+    private ExecutionEvent replayedFill(Order order, long execLots, BigDecimal quantity, BigDecimal price,
+                                        UserTransaction counterpartyTx, UserTransaction orderTx, long sequence) {
+        BigDecimal execQty = FixedPoint.toQuantity(execLots);
+        BigDecimal storedExecQty = order.getExecQty() != null ? order.getExecQty() : BigDecimal.ZERO;
+        if (storedExecQty.compareTo(execQty) < 0) {
+            if (order.getExecAvgPrice() == null || storedExecQty.signum() == 0) {
+                order.setExecAvgPrice(price);
+            } else {
+                BigDecimal totalValue = order.getExecAvgPrice()
+                    .multiply(storedExecQty)
+                    .add(price.multiply(execQty.subtract(storedExecQty)));
+                order.setExecAvgPrice(totalValue.divide(execQty, 4, RoundingMode.HALF_UP));
             }
-            
-            // Also remove from market orderbook table
-            removeOrderFromMarketOrderbook(passiveOrder);
-        } else {
-            // Order is partially filled - update market orderbook with remaining quantity
-            updateOrderInMarketOrderbook(passiveOrder);
+            order.setExecQty(execQty);
         }
         
-        // Create order history for passive order
-        createOrderHistory(passiveOrder, newExecQty.subtract(quantity), newExecQty, "Order matched");
-        
-        // Create transactions for both orders
-        UserTransaction aggressorTx = createTransaction(aggressorOrder, quantity, price);
-        UserTransaction passiveTx = createTransaction(passiveOrder, quantity, price);
-        
-        userTransactionRepository.save(aggressorTx);
-        userTransactionRepository.save(passiveTx);
-        
-        // Sync only the aggressor transaction to market data to avoid duplicates
-        // (One market transaction represents the match between buyer and seller)
-        transactionSyncService.syncUserTransactionToMarket(aggressorTx);
-        
-        // Update portfolios with new transactions
-        updatePortfoliosForTransactions(aggressorTx, passiveTx);
-        
-        return new OrderExecution(aggressorOrder.getId(), passiveOrder.getId(), 
-                                 quantity, price, LocalDateTime.now());
+        // Remaining and status follow the row, which holds the latest execution
+        BigDecimal remaining = order.getQuantity().subtract(order.getExecQty()).max(BigDecimal.ZERO);
+        BigDecimal displayed = order.getDisplayedQuantity() != null ? order.getDisplayedQuantity().min(remaining) : remaining;
+        return new ExecutionEvent(
+            order.getSymbol(),
+            order.getId(),
+            order.getUserId(),
+            remaining.signum() == 0 ? "FILLED" : "PARTIAL",
+            execQty.subtract(quantity),
+            execQty,
+            order.getExecAvgPrice(),
+            remaining,
+            displayed,
+            order.getDateEntry(),
+            counterpartyTx,
+            orderTx,
+            sequence
+        );
     }
 
     /**
@@ -380,13 +748,462 @@ public class OrderMatchingEngine {
         orderHistoryRepository.save(history);
     }
 
+    /**
+     * Write the columns the engine owns
+     * Orders are always in the table before they reach the engine, and the book's instance
+     * may be a recovered one that only carries the matching fields: saving the whole entity
+     * would null out the rest of the row.
+     */
+    private void persistMatchingState(Order order) {
+        orderRepository.updateMatchingState(order.getId(), entryFrom(order), order.getOrderTypeId(),
+            order.getStatId(), order.getQuantity(), order.getExecQty());
+    }
+
+    /**
+     * Lower date_entry bound of an order's row, prunes the older orders partitions
+     */
+    private static LocalDateTime entryFrom(Order order) {
+        return order.getDateEntry() != null
+            ? order.getDateEntry().toLocalDate().minusDays(1).atStartOfDay()
+            : NO_ENTRY_BOUND;
+    }
+
+    private boolean checksSelfTrade(Order order, OrderBook orderBook) {
+        // Simulated liquidity has no user, and a user with nothing in the book cannot self-trade
+        return order.getUserId() != null && order.getUserId() != 0
+            && SelfTradePrevention.of(order.getStpMode(), defaultStpMode) != SelfTradePrevention.NONE
+            && orderBook.hasOrdersFor(order.getUserId());
+    }
+
+    private SelfTradePrevention selfTradeMode(Order order, boolean checkSelfTrade) {
+        return checkSelfTrade ? SelfTradePrevention.of(order.getStpMode(), defaultStpMode) : SelfTradePrevention.NONE;
+    }
+
+    private boolean isSelfTrade(Order aggressor, Order resting) {
+        return aggressor.getUserId().equals(resting.getUserId());
+    }
+
+    /**
+     * Resolve a would-be self-trade per the aggressor's mode, caller must hold the shard
+     *
+     * @return lots taken off the aggressor without trading, -1 when the aggressor must stop matching
+     */
+    private long preventSelfTrade(Order aggressor, OrderBookEntry resting, OrderBook orderBook, long remainingLots) {
+        SelfTradePrevention mode = SelfTradePrevention.of(aggressor.getStpMode(), defaultStpMode);
+        log.info("Self-trade prevented between orders {} and {} ({})", aggressor.getId(), resting.order.getId(), mode);
+        
+        switch (mode) {
+            case CANCEL_OLDEST:
+                cancelResting(resting.order, orderBook);
+                return 0;
+            case DECREMENT:
+                if (remainingLots < resting.remainingLots) {
+                    // The aggressor is the smaller order: it is cancelled, the resting order shrinks by its size
+                    reduceResting(resting, orderBook, remainingLots);
+                    return -1;
+                }
+                long restingLots = resting.remainingLots;
+                cancelResting(resting.order, orderBook);
+                if (restingLots == remainingLots) {
+                    return -1;
+                }
+                aggressor.setQuantity(aggressor.getQuantity().subtract(FixedPoint.toQuantity(restingLots)));
+                journal.reduce(aggressor, restingLots);
+                return restingLots;
+            case CANCEL_NEWEST:
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Cancel a resting order from inside a matching pass, its row is written once the shard is released
+     */
+    private void cancelResting(Order order, OrderBook orderBook) {
+        orderBook.removeOrder(order.getId());
+        journal.cancel(order);
+        order.setStatId("CANCELLED");
+        shardFor(order.getSymbol()).selfTradeWrites().cancels.add(order);
+    }
+
+    /**
+     * Take lots off a resting order without a trade, it keeps its place in the queue
+     * Its row is written once the shard is released
+     */
+    private void reduceResting(OrderBookEntry resting, OrderBook orderBook, long lots) {
+        Order order = resting.order;
+        order.setQuantity(order.getQuantity().subtract(FixedPoint.toQuantity(lots)));
+        // An amend down, the order keeps its place
+        orderBook.amendOrder(order.getId());
+        journal.reduce(order, lots);
+        shardFor(order.getSymbol()).selfTradeWrites().reductions.add(new SelfTradeWrites.Reduction(order,
+            order.getStatId(), order.getQuantity(), order.getExecQty(),
+            FixedPoint.toQuantity(orderBook.visibleLots(order.getId()))));
+    }
+
+    /**
+     * Write the resting orders a matching pass cancelled or reduced, after its shard was released
+     */
+    private void persistSelfTradeWrites(SelfTradeWrites writes) {
+        if (writes == null) {
+            return;
+        }
+        if (!writes.cancels.isEmpty()) {
+            persistCancellations(writes.cancels, "Self-trade prevention");
+        }
+        for (SelfTradeWrites.Reduction reduction : writes.reductions) {
+            Order order = reduction.order();
+            orderRepository.updateMatchingState(order.getId(), entryFrom(order), order.getOrderTypeId(),
+                reduction.statId(), reduction.quantity(), reduction.execQty());
+            
+            OrderHistory history = new OrderHistory();
+            history.setOrder(orderRepository.getReferenceById(order.getId()));
+            history.setPreviousStatus(reduction.statId());
+            history.setNewStatus(reduction.statId());
+            history.setPreviousExecQty(reduction.execQty());
+            history.setNewExecQty(reduction.execQty());
+            history.setChangeReason("Self-trade prevention: quantity reduced");
+            history.setChangedBy(order.getUserId());
+            orderHistoryRepository.save(history);
+            
+            marketOrderbookWriter.setQuantity(order.getId(), reduction.visibleQty());
+        }
+    }
+
+    /**
+     * Cancel every resting and stop order of a user, optionally narrowed to a symbol and a side
+     * Each book is emptied of the user's orders in one pass under its shard, the journal is
+     * made durable once and the database is updated in bulk
+     *
+     * @param symbol null for every book
+     * @param side 1 for buy orders, -1 for sell orders, null for both
+     * @return the cancelled orders
+     */
+    @Transactional
+    public List<Order> massCancel(Long userId, String symbol, Integer side, String reason) {
+        List<String> symbols = symbol != null ? List.of(symbol) : getAllSymbols();
+        List<Order> cancelled = new ArrayList<>();
+        
+        for (String bookSymbol : symbols) {
+            OrderBook orderBook = orderBooks.get(bookSymbol);
+            if (orderBook == null) {
+                continue;
+            }
+            MatchingShard shard = shardFor(bookSymbol);
+            long acquiredAt = shard.acquire();
+            try {
+                for (Order order : orderBook.removeUserOrders(userId, side)) {
+                    order.setStatId("CANCELLED");
+                    journal.cancel(order);
+                    cancelled.add(order);
+                }
+            } finally {
+                shard.release(acquiredAt);
+            }
+        }
+        
+        if (cancelled.isEmpty()) {
+            return cancelled;
+        }
+        journal.commitBatch();
+        persistCancellations(cancelled, reason);
+        
+        log.info("Mass cancel for user {} (symbol: {}, side: {}): {} orders cancelled", 
+                 userId, symbol, side, cancelled.size());
+        return cancelled;
+    }
+
+    /**
+     * Write cancellations made in the book with bulk statements and one history batch
+     */
+    private void persistCancellations(List<Order> orders, String reason) {
+        List<Long> orderIds = orders.stream().map(Order::getId).collect(Collectors.toList());
+        orderRepository.cancelOpenOrders(orderIds);
+        marketOrderbookWriter.markDeleted(orderIds);
+        
+        List<OrderHistory> histories = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            OrderHistory history = new OrderHistory();
+            history.setOrder(orderRepository.getReferenceById(order.getId()));
+            history.setPreviousStatus(order.getExecQty() != null && order.getExecQty().signum() > 0 ? "PARTIAL" : "PENDING");
+            history.setNewStatus("CANCELLED");
+            history.setPreviousExecQty(order.getExecQty());
+            history.setNewExecQty(order.getExecQty());
+            history.setChangeReason(reason);
+            history.setChangedBy(order.getUserId());
+            histories.add(history);
+        }
+        orderHistoryRepository.saveAll(histories);
+    }
+
+    /**
+     * Take an order while its book is in the auction call
+     * Limit orders and stops rest without matching, orders that can only execute
+     * immediately are refused
+     */
+    private MatchingResult collectForAuction(Order order, OrderBook orderBook) {
+        String orderType = order.getOrderTypeId();
+        boolean stop = "STOP".equals(orderType) || "STOP_LIMIT".equals(orderType);
+        if ((!stop && !"LIMIT".equals(orderType)) || isImmediateOrCancel(order) || isFillOrKill(order)) {
+            String reason = "Order type not accepted during the auction call";
+            journal.cancel(order);
+            rejectOrder(order, reason);
+            return MatchingResult.rejected(order, reason);
+        }
+        
+        order.setStatId("PENDING");
+        if (order.getExecQty() == null) {
+            order.setExecQty(BigDecimal.ZERO);
+        }
+        if (stop) {
+            orderBook.addStopOrder(order);
+        } else {
+            orderBook.addOrder(order);
+        }
+        scheduleExpiry(order);
+        persistMatchingState(order);
+        return MatchingResult.pending(order);
+    }
+
+    /**
+     * Open the auction call on every book, orders stop matching until the uncross
+     */
+    public void startAuctionCall() {
+        auctionCall = true;
+        for (String symbol : getAllSymbols()) {
+            MatchingShard shard = shardFor(symbol);
+            long acquiredAt = shard.acquire();
+            try {
+                orderBooks.get(symbol).setPhase(TradingPhase.AUCTION);
+            } finally {
+                shard.release(acquiredAt);
+            }
+        }
+        log.info("Auction call started for {} order book(s)", orderBooks.size());
+    }
+
+    /**
+     * Close the auction call: uncross every book and resume continuous matching
+     * Each book is uncrossed and committed in its own transaction
+     */
+    public void uncrossAuctions() {
+        auctionCall = false;
+        int uncrossed = 0;
+        for (String symbol : getAllSymbols()) {
+            try {
+                if (transactionTemplate.execute(status -> uncrossAuction(symbol)) != null) {
+                    uncrossed++;
+                }
+            } catch (Exception e) {
+                log.error("Failed to uncross order book {}: {}", symbol, e.getMessage(), e);
+            }
+        }
+        log.info("Auction call closed, {} crossed order book(s) uncrossed", uncrossed);
+    }
+
+    /**
+     * Uncross one book at its equilibrium price and switch it to continuous matching
+     * Also resolves a book left crossed by a restart during the call
+     *
+     * @return the executed equilibrium, null when the book was not crossed
+     */
+    @Transactional
+    public AuctionQuote uncrossAuction(String symbol) {
+        OrderBook orderBook = orderBooks.get(symbol);
+        if (orderBook == null) {
+            return null;
+        }
+        
+        AuctionQuote quote;
+        SelfTradeWrites selfTradeWrites;
+        MatchingShard shard = shardFor(symbol);
+        long acquiredAt = shard.acquire();
+        try {
+            orderBook.setPhase(TradingPhase.CONTINUOUS);
+            quote = orderBook.getIndicativeUncross(marketDataService.getCurrentPrice(symbol));
+            if (quote != null) {
+                executeUncross(orderBook, quote);
+            }
+        } finally {
+            selfTradeWrites = shard.takeSelfTradeWrites();
+            shard.release(acquiredAt);
+        }
+        journal.commitBatch();
+        persistSelfTradeWrites(selfTradeWrites);
+        return quote;
+    }
+
+    /**
+     * Indicative equilibrium of a book, null when it is not crossed
+     */
+    public AuctionQuote getIndicativeUncross(String symbol) {
+        OrderBook orderBook = orderBooks.get(symbol);
+        return orderBook != null ? orderBook.getIndicativeUncross(marketDataService.getCurrentPrice(symbol)) : null;
+    }
+
+    /**
+     * Execute the crossing orders at the equilibrium price in priority order, caller must hold the shard
+     */
+    private void executeUncross(OrderBook orderBook, AuctionQuote quote) {
+        long priceTicks = FixedPoint.toTicks(quote.getPrice());
+        long remainingLots = FixedPoint.toLots(quote.getVolume());
+        List<OrderExecution> executions = new ArrayList<>();
+        List<ExecutionEvent> events = new ArrayList<>();
+        
+        OrderBookEntry buy;
+        OrderBookEntry sell;
+        while (remainingLots > 0
+                && (buy = orderBook.peekBest(true)) != null
+                && (sell = orderBook.peekBest(false)) != null) {
+            if (buy.priceTicks < priceTicks || sell.priceTicks > priceTicks) {
+                break;
+            }
+            long lots = Math.min(remainingLots, Math.min(buy.visibleLots, sell.visibleLots));
+            executions.add(executeAuctionMatch(buy.order, sell.order, orderBook, lots, priceTicks, events));
+            remainingLots -= lots;
+        }
+        
+        executionPipeline.publishAfterCommit(events);
+        if (executions.isEmpty()) {
+            return;
+        }
+        
+        // One print for the whole uncross
+        marketDataService.updateLastTrade(orderBook.getSymbol(), quote.getPrice(), quote.getVolume(), LocalDateTime.now());
+        log.info("Uncrossed {} at {}: {} executed in {} trade(s)", 
+                 orderBook.getSymbol(), quote.getPrice(), quote.getVolume(), executions.size());
+        triggerStopOrders(orderBook, executions);
+    }
+
+    /**
+     * Cancel an order that cannot be executed under its time in force
+     */
+    private MatchingResult killOrder(Order order, String reason) {
+        log.info("Cancelling order {}: {}", order.getId(), reason);
+        order.setStatId("CANCELLED");
+        if (order.getExecQty() == null) {
+            order.setExecQty(BigDecimal.ZERO);
+        }
+        journal.cancel(order);
+        persistMatchingState(order);
+        createOrderHistory(order, order.getExecQty(), order.getExecQty(), reason);
+        return new MatchingResult(order, new ArrayList<>(), "CANCELLED", reason);
+    }
+
+    private boolean isImmediateOrCancel(Order order) {
+        return "IOC".equals(order.getExpiryTypeId());
+    }
+
+    private boolean isFillOrKill(Order order) {
+        return "FOK".equals(order.getExpiryTypeId());
+    }
+
+    /**
+     * Fill in the expiry of DAY and GTD orders
+     * DAY orders expire at the close of the current session, or of the next one when
+     * entered after the close. GTD orders expire on their expiry date, at the close
+     * unless a time is given.
+     *
+     * @return false when the order is already expired
+     */
+    private boolean resolveExpiry(Order order) {
+        String expiryType = order.getExpiryTypeId();
+        if ("DAY".equals(expiryType) && order.getDateExpiry() == null) {
+            LocalTime close = LocalTime.parse(marketCloseTime);
+            LocalDateTime now = LocalDateTime.now();
+            LocalDate session = now.toLocalDate();
+            while (!tradingDays.contains(session.getDayOfWeek().name()) || !session.atTime(close).isAfter(now)) {
+                session = session.plusDays(1);
+            }
+            order.setDateExpiry(session);
+            order.setTimeExpiry(close);
+        } else if (!"GTD".equals(expiryType)) {
+            return true;
+        }
+        
+        if (order.getTimeExpiry() == null) {
+            order.setTimeExpiry(LocalTime.parse(marketCloseTime));
+        }
+        return expiryDeadline(order) > System.currentTimeMillis();
+    }
+
+    /**
+     * Expiry deadline in epoch millis, 0 for orders that do not expire
+     */
+    private long expiryDeadline(Order order) {
+        String expiryType = order.getExpiryTypeId();
+        if ((!"DAY".equals(expiryType) && !"GTD".equals(expiryType))
+                || order.getDateExpiry() == null || order.getTimeExpiry() == null) {
+            return 0;
+        }
+        return order.getDateExpiry().atTime(order.getTimeExpiry())
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Track a resting DAY/GTD order on its shard's timing wheel, caller must hold the shard
+     */
+    private void scheduleExpiry(Order order) {
+        long deadline = expiryDeadline(order);
+        if (deadline > 0) {
+            shardFor(order.getSymbol()).expiries().add(order, deadline);
+        }
+    }
+
+    /**
+     * Expire the DAY/GTD orders whose deadline has passed
+     * Orders that were filled or cancelled in the meantime are skipped
+     */
+    @Transactional
+    public int expireOrders() {
+        long now = System.currentTimeMillis();
+        List<Order> expired = new ArrayList<>();
+        
+        for (MatchingShard shard : shards) {
+            long acquiredAt = shard.acquire();
+            try {
+                for (Order order : shard.expiries().advance(now)) {
+                    OrderBook orderBook = orderBooks.get(order.getSymbol());
+                    long deadline = expiryDeadline(order);
+                    if (deadline > now) {
+                        // Expiry was pushed back since it was scheduled
+                        shard.expiries().add(order, deadline);
+                        continue;
+                    }
+                    if (orderBook != null && orderBook.getPhase() == TradingPhase.AUCTION) {
+                        // Orders take part in the closing auction, they leave after the uncross
+                        shard.expiries().add(order, now);
+                        continue;
+                    }
+                    if (orderBook == null || deadline == 0 || !orderBook.removeOrder(order.getId())) {
+                        continue;
+                    }
+                    order.setStatId("CANCELLED");
+                    journal.cancel(order);
+                    expired.add(order);
+                }
+            } finally {
+                shard.release(acquiredAt);
+            }
+        }
+        
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        journal.commitBatch();
+        persistCancellations(expired, "Order expired");
+        
+        log.info("Expired {} orders", expired.size());
+        return expired.size();
+    }
+
     /**
      * Reject an order
      */
     private void rejectOrder(Order order, String reason) {
         log.warn("Rejecting order {}: {}", order.getId(), reason);
         order.setStatId("REJECTED");
-        orderRepository.save(order);
+        persistMatchingState(order);
         createOrderHistory(order, BigDecimal.ZERO, BigDecimal.ZERO, reason);
     }
 
@@ -394,6 +1211,10 @@ public class OrderMatchingEngine {
      * Validate order parameters
      */
     private boolean isValidOrder(Order order) {
+        if (order.getSymbol() == null || order.getSymbol().isBlank()) {
+            return false;
+        }
+        
         if (order.getQuantity() == null || order.getQuantity().compareTo(BigDecimal.ZERO) <= 0) {
             return false;
         }
@@ -410,6 +1231,14 @@ public class OrderMatchingEngine {
             }
         }
         
+        if (order.getDisplayedQuantity() != null && order.getDisplayedQuantity().compareTo(BigDecimal.ZERO) <= 0) {
+            return false;
+        }
+        
+        if ("GTD".equals(order.getExpiryTypeId()) && order.getDateExpiry() == null) {
+            return false;
+        }
+        
         return true;
     }
 
@@ -428,43 +1257,42 @@ public class OrderMatchingEngine {
 
     /**
      * Check and trigger stop orders for a symbol
+     * Trades fire stops as they print, this catches price moves coming from outside the engine
+     * Runs in a transaction of its own, or the caller's: triggered stops trade and write their rows
      */
     public void checkStopOrders(String symbol) {
+        transactionTemplate.executeWithoutResult(status -> pollStopOrders(symbol));
+    }
+
+    private void pollStopOrders(String symbol) {
         OrderBook orderBook = orderBooks.get(symbol);
-        if (orderBook == null) {
+        if (orderBook == null || orderBook.getPhase() == TradingPhase.AUCTION) {
+            // Nothing trades during an auction call, stops wait for the uncross
             return;
         }
         
         BigDecimal currentPrice = marketDataService.getCurrentPrice(symbol);
-        List<Order> triggeredStopOrders = orderBook.checkStopOrders(currentPrice);
-        
-        for (Order stopOrder : triggeredStopOrders) {
-            log.info("Stop order {} triggered for symbol {}", stopOrder.getId(), symbol);
-            processOrder(stopOrder);
-        }
-    }
-
-    /**
-     * Update portfolios for both sides of a transaction
-     */
-    private void updatePortfoliosForTransactions(UserTransaction aggressorTx, UserTransaction passiveTx) {
-        try {
-            log.info("Updating portfolio for aggressor transaction: {}", aggressorTx.getId());
-            portfolioUpdateService.processTransaction(aggressorTx);
-        } catch (Exception e) {
-            log.error("Failed to update portfolio for aggressor transaction {}: {}", 
-                     aggressorTx.getId(), e.getMessage(), e);
-            // Don't fail the trade execution, just log the error
+        if (currentPrice == null || currentPrice.signum() <= 0) {
+            // No price yet, a zero would fire every sell stop
+            return;
         }
         
+        MatchingShard shard = shardFor(symbol);
+        SelfTradeWrites selfTradeWrites;
+        long acquiredAt = shard.acquire();
         try {
-            log.info("Updating portfolio for passive transaction: {}", passiveTx.getId());
-            portfolioUpdateService.processTransaction(passiveTx);
-        } catch (Exception e) {
-            log.error("Failed to update portfolio for passive transaction {}: {}", 
-                     passiveTx.getId(), e.getMessage(), e);
-            // Don't fail the trade execution, just log the error
+            List<Order> triggeredStopOrders = orderBook.checkStopOrders(currentPrice);
+            
+            for (Order stopOrder : triggeredStopOrders) {
+                log.info("Stop order {} triggered for symbol {}", stopOrder.getId(), symbol);
+                matchTriggeredStop(stopOrder, orderBook);
+            }
+        } finally {
+            selfTradeWrites = shard.takeSelfTradeWrites();
+            shard.release(acquiredAt);
         }
+        journal.commitBatch();
+        persistSelfTradeWrites(selfTradeWrites);
     }
 
     /**
@@ -485,75 +1313,236 @@ public class OrderMatchingEngine {
      * Initialize an empty order book for a symbol
      * Used for market simulation and startup initialization
      */
-    public synchronized OrderBook initializeOrderBook(String symbol) {
-        return orderBooks.computeIfAbsent(symbol, OrderBook::new);
+    public OrderBook initializeOrderBook(String symbol) {
+        return getOrCreateOrderBook(symbol);
     }
 
     /**
-     * Update order in market orderbook table with remaining quantity
+     * Get per-shard statistics
      */
-    private void updateOrderInMarketOrderbook(Order order) {
-        try {
-            String orderMarketId = "ORDER_" + order.getId();
-            marketOrderbookRepository.findByOrderMarketId(orderMarketId)
-                .ifPresent(entry -> {
-                    entry.setQuantity(order.getRemainingQuantity());
-                    entry.setDelete(false);
-                    marketOrderbookRepository.save(entry);
-                    log.info("Updated market orderbook entry for order {} with remaining qty: {}", 
-                             order.getId(), order.getRemainingQuantity());
-                });
-        } catch (Exception e) {
-            log.error("Error updating order {} in market orderbook: {}", order.getId(), e.getMessage(), e);
+    public List<MatchingShardStats> getShardStats() {
+        return Arrays.stream(shards)
+            .map(MatchingShard::getStats)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Get the shard owning a symbol
+     */
+    private MatchingShard shardFor(String symbol) {
+        return shards[Math.floorMod(symbol.hashCode(), shards.length)];
+    }
+
+    private OrderBook getOrCreateOrderBook(String symbol) {
+        return orderBooks.computeIfAbsent(symbol, k -> {
+            shardFor(k).register(k);
+            OrderBook orderBook = new OrderBook(k);
+            if (auctionCall) {
+                orderBook.setPhase(TradingPhase.AUCTION);
+            }
+            return orderBook;
+        });
+    }
+
+    /**
+     * Rebuild the order books from the latest snapshots plus the journal tail
+     * Snapshots are decoded and books rebuilt in parallel across symbols, orders are
+     * rested again in acceptance order without matching
+     *
+     * @return false when there is no journal to recover from
+     */
+    public boolean recoverOrderBooks() {
+        if (!journal.isEnabled()) {
+            return false;
+        }
+        
+        long startedAt = System.currentTimeMillis();
+        List<OrderBookSnapshot> snapshots = snapshotStore.loadAll();
+        if (snapshots.isEmpty() && journal.getLastSequence() == 0) {
+            return false;
+        }
+        
+        Map<String, JournalReplay> replays = new ConcurrentHashMap<>();
+        snapshots.parallelStream()
+            .forEach(snapshot -> replays.put(snapshot.getSymbol(), JournalReplay.fromSnapshot(snapshot)));
+        
+        // Books created after the last complete round are entirely in the journal tail
+        long fromSequence = snapshotStore.readRoundSequence();
+        journal.replay(fromSequence, record ->
+            replays.computeIfAbsent(record.getSymbol(), k -> new JournalReplay(0)).apply(record));
+        
+        int restored = replays.entrySet().parallelStream()
+            .mapToInt(entry -> restOrders(entry.getKey(), entry.getValue().getOpenOrders()))
+            .sum();
+        int replayed = replayUnappliedExecutions();
+        
+        log.info("Order books recovered in {} ms: {} snapshot(s), journal replayed from sequence {}, {} open orders restored, {} execution(s) handed back to the pipeline", 
+                 System.currentTimeMillis() - startedAt, snapshots.size(), fromSequence, restored, replayed);
+        return true;
+    }
+
+    /**
+     * Hand the executions the pipeline had not written before the last stop back to it
+     * An execution whose history row carries its FILL sequence was written after the watermark
+     * was saved, one without order rows belongs to a transaction that never committed
+     */
+    private int replayUnappliedExecutions() {
+        List<JournalRecord> fills = journal.getUnappliedFills();
+        if (fills.isEmpty()) {
+            return 0;
         }
+        
+        Set<Long> orderIds = new HashSet<>();
+        for (JournalRecord fill : fills) {
+            orderIds.add(fill.getOrderId());
+            orderIds.add(fill.getRefOrderId());
+        }
+        Map<Long, Order> orders = new HashMap<>();
+        orderRepository.findAllById(orderIds).forEach(order -> orders.put(order.getId(), order));
+        Map<Long, Set<Long>> written = new HashMap<>();
+        for (Object[] row : orderHistoryRepository.findJournalSequencesAfter(fills.get(0).getSequence() - 1)) {
+            written.computeIfAbsent((Long) row[1], k -> new HashSet<>()).add((Long) row[0]);
+        }
+        
+        List<ExecutionEvent> events = new ArrayList<>();
+        for (JournalRecord fill : fills) {
+            long sequence = fill.getSequence();
+            boolean auction = JournalRecord.AUCTION_FILL.equals(fill.getOrderType());
+            Order aggressor = orders.get(fill.getOrderId());
+            Order passive = orders.get(fill.getRefOrderId());
+            if (aggressor == null || passive == null) {
+                log.warn("Dropping journaled fill {} between orders {} and {}: order not in the database",
+                         sequence, fill.getOrderId(), fill.getRefOrderId());
+                journal.fillApplied(sequence);
+                if (auction) {
+                    journal.fillApplied(sequence);
+                }
+                continue;
+            }
+            
+            Set<Long> writtenOrders = written.getOrDefault(sequence, Set.of());
+            BigDecimal quantity = FixedPoint.toQuantity(fill.getLots());
+            BigDecimal price = FixedPoint.toPrice(fill.getPriceTicks());
+            if (writtenOrders.contains(passive.getId())) {
+                journal.fillApplied(sequence);
+            } else {
+                events.add(replayedFill(passive, fill.getRefExecLots(), quantity, price,
+                    createTransaction(aggressor, quantity, price), createTransaction(passive, quantity, price), sequence));
+            }
+            if (!auction) {
+                continue;
+            }
+            if (writtenOrders.contains(aggressor.getId())) {
+                journal.fillApplied(sequence);
+            } else {
+                events.add(replayedFill(aggressor, fill.getExecLots(), quantity, price, null, null, sequence));
+            }
+        }
+        
+        executionPipeline.publishAfterCommit(events);
+        return events.size();
     }
 
     /**
-     * Remove order from market orderbook table
+     * Write a snapshot of every book and drop the journal segments they cover
      */
-    private void removeOrderFromMarketOrderbook(Order order) {
+    public void snapshotOrderBooks() {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        
+        // Every event of a book created after this point is past this sequence
+        long roundSequence = journal.getLastSequence();
+        boolean complete = true;
+        
+        for (String symbol : getAllSymbols()) {
+            OrderBook orderBook = orderBooks.get(symbol);
+            OrderBookSnapshot snapshot;
+            
+            MatchingShard shard = shardFor(symbol);
+            long acquiredAt = shard.acquire();
+            try {
+                List<Order> orders = new ArrayList<>(orderBook.getBuyOrders());
+                orders.addAll(orderBook.getSellOrders());
+                orders.addAll(orderBook.getStopOrders());
+                snapshot = OrderBookSnapshot.capture(symbol, journal.getLastSequence(), orders);
+            } finally {
+                shard.release(acquiredAt);
+            }
+            
+            try {
+                snapshotStore.write(snapshot);
+            } catch (Exception e) {
+                complete = false;
+                log.error("Failed to write order book snapshot for {}: {}", symbol, e.getMessage(), e);
+            }
+        }
+        
+        if (!complete) {
+            return;
+        }
         try {
-            String orderMarketId = "ORDER_" + order.getId();
-            marketOrderbookRepository.findByOrderMarketId(orderMarketId)
-                .ifPresent(entry -> {
-                    entry.setDelete(true);
-                    marketOrderbookRepository.save(entry);
-                    log.info("Marked market orderbook entry as deleted for order {}", order.getId());
-                });
+            snapshotStore.writeRoundSequence(roundSequence);
+            journal.truncateBefore(roundSequence);
         } catch (Exception e) {
-            log.error("Error removing order {} from market orderbook: {}", order.getId(), e.getMessage(), e);
+            log.error("Failed to complete order book snapshot round: {}", e.getMessage(), e);
         }
     }
 
     /**
-     * Load pending orders from database on startup
+     * Load open orders from the database when there is no journal yet
+     * Orders are rested in entry order without matching and journaled, so the next
+     * start recovers from the journal instead
      */
     public void loadPendingOrders() {
         log.info("Loading pending orders from database");
         
-        // Get all pending and partial orders
-        List<Order> pendingOrders = orderRepository.findAll().stream()
-            .filter(order -> "PENDING".equals(order.getStatId()) || "PARTIAL".equals(order.getStatId()))
-            .collect(Collectors.toList());
-        
-        log.info("Found {} pending orders to process", pendingOrders.size());
+        List<Order> pendingOrders = orderRepository.findOpenOrders();
+        log.info("Found {} pending orders to restore", pendingOrders.size());
         
-        int matched = 0;
+        Map<String, List<Order>> bySymbol = new LinkedHashMap<>();
         for (Order order : pendingOrders) {
-            try {
-                // Process each order through the matching engine
-                MatchingResult result = processOrder(order);
-                if (result.isExecuted() && !result.getExecutions().isEmpty()) {
-                    matched++;
-                    log.info("Order {} matched during startup with {} executions", 
-                             order.getId(), result.getExecutions().size());
-                }
-            } catch (Exception e) {
-                log.error("Error processing order {} during startup: {}", order.getId(), e.getMessage());
-                // Continue with next order
+            if (order.getSymbol() == null || "MARKET".equals(order.getOrderTypeId())) {
+                continue;
             }
+            bySymbol.computeIfAbsent(order.getSymbol(), k -> new ArrayList<>()).add(order);
+            journal.orderAccepted(order);
         }
+        journal.flush();
         
-        log.info("Startup matching completed: {} orders matched", matched);
+        int restored = 0;
+        for (Map.Entry<String, List<Order>> entry : bySymbol.entrySet()) {
+            restored += restOrders(entry.getKey(), entry.getValue());
+        }
+        
+        log.info("Startup load completed: {} orders restored", restored);
+    }
+
+    /**
+     * Put recovered orders back in their book without matching
+     */
+    private int restOrders(String symbol, List<Order> orders) {
+        OrderBook orderBook = getOrCreateOrderBook(symbol);
+        
+        MatchingShard shard = shardFor(symbol);
+        long acquiredAt = shard.acquire();
+        try {
+            for (Order order : orders) {
+                if ("STOP".equals(order.getOrderTypeId()) || "STOP_LIMIT".equals(order.getOrderTypeId())) {
+                    orderBook.addStopOrder(order);
+                } else {
+                    orderBook.addOrder(order);
+                }
+                // DAY orders from before expiry tracking expire at the close of their entry day
+                if ("DAY".equals(order.getExpiryTypeId()) && order.getDateExpiry() == null && order.getDateEntry() != null) {
+                    order.setDateExpiry(order.getDateEntry().toLocalDate());
+                    order.setTimeExpiry(LocalTime.parse(marketCloseTime));
+                }
+                scheduleExpiry(order);
+            }
+        } finally {
+            shard.release(acquiredAt);
+        }
+        return orders.size();
     }
 }
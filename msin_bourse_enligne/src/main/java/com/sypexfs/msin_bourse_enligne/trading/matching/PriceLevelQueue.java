@@ -0,0 +1,110 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+/**
+ * All resting orders at one price, in time priority
+ * Keeps running aggregates of the remaining and of the visible lots so level volume is O(1),
+ * they only differ when the level holds iceberg orders
+ */
+final class PriceLevelQueue {
+
+    final long priceTicks;
+
+    OrderBookEntry head;
+    OrderBookEntry tail;
+    int orderCount;
+    long totalLots;
+    long visibleLots;
+
+    PriceLevelQueue(long priceTicks) {
+        this.priceTicks = priceTicks;
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    /**
+     * Append an entry at the back of the queue (lowest time priority)
+     */
+    void append(OrderBookEntry entry) {
+        entry.level = this;
+        link(entry);
+        orderCount++;
+        totalLots += entry.remainingLots;
+        visibleLots += entry.visibleLots;
+    }
+
+    /**
+     * Unlink an entry from anywhere in the queue
+     */
+    void unlink(OrderBookEntry entry) {
+        detach(entry);
+        entry.level = null;
+        orderCount--;
+        totalLots -= entry.remainingLots;
+        visibleLots -= entry.visibleLots;
+    }
+
+    /**
+     * Account for lots executed against one of the level's orders
+     */
+    void reduce(OrderBookEntry entry, long lots) {
+        entry.remainingLots -= lots;
+        entry.visibleLots -= lots;
+        totalLots -= lots;
+        visibleLots -= lots;
+    }
+
+    /**
+     * Change an entry's lots without moving it in the queue
+     */
+    void resize(OrderBookEntry entry, long remainingLots, long visibleLots) {
+        totalLots += remainingLots - entry.remainingLots;
+        this.visibleLots += visibleLots - entry.visibleLots;
+        entry.remainingLots = remainingLots;
+        entry.visibleLots = visibleLots;
+    }
+
+    /**
+     * Show the next slice of an iceberg whose visible part was consumed
+     * The slice loses time priority: the same node is moved to the back of the queue
+     *
+     * @return lots made visible
+     */
+    long replenish(OrderBookEntry entry) {
+        long slice = Math.min(entry.peakLots, entry.remainingLots);
+        entry.visibleLots = slice;
+        visibleLots += slice;
+        if (entry != tail) {
+            detach(entry);
+            link(entry);
+        }
+        return slice;
+    }
+
+    private void link(OrderBookEntry entry) {
+        entry.prev = tail;
+        entry.next = null;
+        if (tail == null) {
+            head = entry;
+        } else {
+            tail.next = entry;
+        }
+        tail = entry;
+    }
+
+    private void detach(OrderBookEntry entry) {
+        if (entry.prev == null) {
+            head = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+        if (entry.next == null) {
+            tail = entry.prev;
+        } else {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+/**
+ * What happens when an aggressor would trade against a resting order of the same user
+ */
+public enum SelfTradePrevention {
+    // Self-trades are allowed
+    NONE,
+    // The aggressor's remainder is cancelled, the resting order keeps its place
+    CANCEL_NEWEST,
+    // The resting order is cancelled and the aggressor keeps matching
+    CANCEL_OLDEST,
+    // The smaller of the two is cancelled and the larger is reduced by the same quantity, no trade prints
+    DECREMENT;
+
+    public static SelfTradePrevention of(String mode, SelfTradePrevention defaultMode) {
+        return mode != null ? valueOf(mode) : defaultMode;
+    }
+}
@@ -0,0 +1,28 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Database writes owed to resting orders cancelled or reduced by self-trade prevention
+ * Collected while holding the shard and written once it is released: the cancel services
+ * lock the order row before taking the shard
+ */
+final class SelfTradeWrites {
+
+    final List<Order> cancels = new ArrayList<>();
+    final List<Reduction> reductions = new ArrayList<>();
+
+    /**
+     * Order state right after the reduction, the book's instance keeps changing once the shard is released
+     */
+    record Reduction(Order order, String statId, BigDecimal quantity, BigDecimal execQty, BigDecimal visibleQty) {
+    }
+
+    boolean isEmpty() {
+        return cancels.isEmpty() && reductions.isEmpty();
+    }
+}
@@ -0,0 +1,108 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel
+ * Each wheel has a fixed number of buckets of one tick each. Deadlines beyond the
+ * wheel's span go to an overflow wheel whose tick is the whole span of the wheel below,
+ * created on demand. When time reaches an overflow bucket its timers are redistributed
+ * to the finer wheels, so adding a timer and expiring one are both O(1).
+ *
+ * Not thread safe, each matching shard owns its wheel and uses it under the shard lock.
+ */
+final class TimingWheel<T> {
+
+    // Due time is the deadline rounded up to a tick of the root wheel, so tasks never fire early
+    private record Timer<T>(long due, T task) {
+    }
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long interval;
+    private final ArrayDeque<Timer<T>>[] buckets;
+    private long currentTime;
+    private int size;
+    private TimingWheel<T> overflow;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.interval = tickMillis * wheelSize;
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.currentTime = startMillis - (startMillis % tickMillis);
+    }
+
+    /**
+     * Schedule a task, a deadline already due fires on the next advance
+     */
+    void add(T task, long deadline) {
+        size++;
+        long due = Math.floorDiv(deadline + tickMillis - 1, tickMillis) * tickMillis;
+        place(new Timer<>(Math.max(due, currentTime + tickMillis), task));
+    }
+
+    /**
+     * Move time forward and return the tasks whose deadline has passed
+     * Returned tasks are due, none is returned before its deadline
+     */
+    List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        while (currentTime + tickMillis <= now) {
+            currentTime += tickMillis;
+            if (overflow != null && currentTime % overflow.tickMillis == 0) {
+                overflow.cascade(currentTime, this);
+            }
+            drain(buckets[bucketIndex(currentTime)], expired);
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void place(Timer<T> timer) {
+        if (timer.due() < currentTime + interval) {
+            buckets[bucketIndex(timer.due())].add(timer);
+        } else {
+            if (overflow == null) {
+                overflow = new TimingWheel<>(interval, wheelSize, currentTime);
+            }
+            overflow.place(timer);
+        }
+    }
+
+    /**
+     * Overflow wheel reached a new bucket: hand its timers back to the root wheel
+     */
+    private void cascade(long time, TimingWheel<T> root) {
+        currentTime = time;
+        if (overflow != null && time % overflow.tickMillis == 0) {
+            overflow.cascade(time, root);
+        }
+        ArrayDeque<Timer<T>> bucket = buckets[bucketIndex(time)];
+        Timer<T> timer;
+        while ((timer = bucket.poll()) != null) {
+            root.place(timer);
+        }
+    }
+
+    private void drain(ArrayDeque<Timer<T>> bucket, List<T> expired) {
+        Timer<T> timer;
+        while ((timer = bucket.poll()) != null) {
+            expired.add(timer.task());
+        }
+    }
+
+    private int bucketIndex(long time) {
+        return (int) ((time / tickMillis) % wheelSize);
+    }
+}
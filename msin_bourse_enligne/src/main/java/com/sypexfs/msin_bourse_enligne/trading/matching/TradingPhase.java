@@ -0,0 +1,11 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+/**
+ * Trading phase of an order book
+ */
+public enum TradingPhase {
+    // Orders match as they arrive
+    CONTINUOUS,
+    // Call auction: orders accumulate without matching until the book is uncrossed
+    AUCTION
+}
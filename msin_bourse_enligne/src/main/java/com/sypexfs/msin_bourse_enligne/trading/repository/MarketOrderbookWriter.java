@@ -0,0 +1,148 @@
+package com.sypexfs.msin_bourse_enligne.trading.repository;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import com.sypexfs.msin_bourse_enligne.trading.matching.ExecutionEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set-based writes of the resting orders into the public market_orderbook table
+ * Rows are keyed by order_market_id ("ORDER_" + order id) and written without reading
+ * them first: new and re-entered orders are upserted in one batch, fills and removals
+ * are applied with one statement per call whatever the number of orders.
+ * Removed orders stay as delete = true rows until purgeDeleted drops them.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MarketOrderbookWriter {
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO market_schema.market_orderbook (sec_id, symbol, side, quantity, price, order_count, date_order, " +
+        "order_market_id, order_type, is_own_order, delete, delete_all, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, 1, ?, ?, ?, false, false, false, ?, ?) " +
+        "ON CONFLICT (order_market_id) DO UPDATE SET quantity = EXCLUDED.quantity, price = EXCLUDED.price, " +
+        "delete = false, updated_at = EXCLUDED.updated_at";
+
+    // A fill never raises the published quantity of a plain order, an iceberg shows its current slice
+    private static final String APPLY_FILLS_SQL =
+        "UPDATE market_schema.market_orderbook o SET " +
+        "quantity = CASE WHEN u.filled THEN o.quantity " +
+        "WHEN u.iceberg OR o.quantity IS NULL THEN u.quantity " +
+        "ELSE LEAST(o.quantity, u.quantity) END, " +
+        "delete = u.filled, updated_at = now() " +
+        "FROM unnest(?::bigint[], ?::numeric[], ?::boolean[], ?::boolean[]) AS u(order_id, quantity, filled, iceberg) " +
+        "WHERE o.order_market_id = 'ORDER_' || u.order_id AND NOT o.delete";
+
+    private static final String SET_QUANTITY_SQL =
+        "UPDATE market_schema.market_orderbook SET quantity = ?, updated_at = now() " +
+        "WHERE order_market_id = ? AND NOT delete";
+
+    private static final String MARK_DELETED_SQL =
+        "UPDATE market_schema.market_orderbook SET delete = true, updated_at = now() " +
+        "WHERE order_market_id = ANY (?) AND NOT delete";
+
+    private static final String PURGE_DELETED_SQL =
+        "DELETE FROM market_schema.market_orderbook WHERE id IN (" +
+        "SELECT id FROM market_schema.market_orderbook WHERE delete AND updated_at < ? LIMIT ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Publish resting orders with their visible quantity, reviving rows of re-entered orders
+     */
+    public void upsert(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, orders, orders.size(), (ps, order) -> {
+            ps.setString(1, order.getSecId() != null ? order.getSecId().toString() : null);
+            ps.setString(2, order.getSymbol());
+            ps.setString(3, order.getSign() == 1 ? "BUY" : "SELL");
+            ps.setBigDecimal(4, order.getVisibleQuantity());
+            ps.setBigDecimal(5, order.getPrice());
+            ps.setTimestamp(6, order.getDateOrder() != null ? Timestamp.valueOf(order.getDateOrder().atStartOfDay()) : now);
+            ps.setString(7, marketId(order.getId()));
+            ps.setString(8, order.getOrderTypeId());
+            ps.setTimestamp(9, now);
+            ps.setTimestamp(10, now);
+        });
+    }
+
+    /**
+     * Reflect passive fills, one statement for the whole batch
+     * Several fills of the same order collapse to its most advanced state
+     */
+    public void applyFills(List<ExecutionEvent> events) {
+        Map<Long, ExecutionEvent> latest = new LinkedHashMap<>();
+        for (ExecutionEvent event : events) {
+            latest.merge(event.getPassiveOrderId(), event,
+                (previous, next) -> next.getPassiveExecQty().compareTo(previous.getPassiveExecQty()) >= 0 ? next : previous);
+        }
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        int size = latest.size();
+        Long[] orderIds = new Long[size];
+        BigDecimal[] quantities = new BigDecimal[size];
+        Boolean[] filled = new Boolean[size];
+        Boolean[] iceberg = new Boolean[size];
+        int i = 0;
+        for (ExecutionEvent event : latest.values()) {
+            orderIds[i] = event.getPassiveOrderId();
+            iceberg[i] = event.isPassiveIceberg();
+            quantities[i] = iceberg[i] ? event.getPassiveDisplayedQty() : event.getPassiveRemainingQty();
+            filled[i] = event.isPassiveFilled();
+            i++;
+        }
+        jdbcTemplate.update(APPLY_FILLS_SQL, ps -> {
+            Connection connection = ps.getConnection();
+            ps.setArray(1, connection.createArrayOf("bigint", orderIds));
+            ps.setArray(2, connection.createArrayOf("numeric", quantities));
+            ps.setArray(3, connection.createArrayOf("boolean", filled));
+            ps.setArray(4, connection.createArrayOf("boolean", iceberg));
+        });
+    }
+
+    /**
+     * Publish a new visible quantity for a resting order
+     */
+    public void setQuantity(Long orderId, BigDecimal quantity) {
+        jdbcTemplate.update(SET_QUANTITY_SQL, quantity, marketId(orderId));
+    }
+
+    /**
+     * Take orders off the public book
+     */
+    public void markDeleted(Collection<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        String[] marketIds = orderIds.stream().map(MarketOrderbookWriter::marketId).toArray(String[]::new);
+        jdbcTemplate.update(MARK_DELETED_SQL, ps -> ps.setArray(1, ps.getConnection().createArrayOf("text", marketIds)));
+    }
+
+    /**
+     * Drop at most limit rows deleted before the given time
+     *
+     * @return the number of rows dropped
+     */
+    public int purgeDeleted(LocalDateTime before, int limit) {
+        return jdbcTemplate.update(PURGE_DELETED_SQL, Timestamp.valueOf(before), limit);
+    }
+
+    private static String marketId(Long orderId) {
+        return "ORDER_" + orderId;
+    }
+}
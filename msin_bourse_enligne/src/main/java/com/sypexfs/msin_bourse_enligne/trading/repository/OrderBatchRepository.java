@@ -0,0 +1,139 @@
+package com.sypexfs.msin_bourse_enligne.trading.repository;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC batch writes for bulk order entry
+ * Ids are drawn up front from the same sequences the entities use, in blocks of
+ * ID_BLOCK_SIZE with Hibernate's pooled-lo meaning (a nextval of V owns V to V + 49),
+ * so one nextval covers fifty rows and the rows are sent in a single batch.
+ */
+@Repository
+@RequiredArgsConstructor
+public class OrderBatchRepository {
+
+    // Must match allocationSize of the entities' @SequenceGenerator and the sequences' INCREMENT BY
+    private static final int ID_BLOCK_SIZE = 50;
+
+    private static final String ALLOCATE_ORDER_IDS_SQL =
+        "SELECT nextval('trading_schema.orders_seq') FROM generate_series(1, ?)";
+
+    private static final String ALLOCATE_HISTORY_IDS_SQL =
+        "SELECT nextval('trading_schema.order_history_seq') FROM generate_series(1, ?)";
+
+    private static final String INSERT_ORDER_SQL =
+        "INSERT INTO trading_schema.orders (id, user_id, sign, price, stop_price, displayed_quantity, quantity, " +
+        "order_amount, date_order, date_expiry, time_order, time_expiry, date_entry, exec_qty, expiry_type_id, " +
+        "stat_id, order_type_id, broker_id, cash_account_id, entity_id, portf_id, sub_portf_id, sec_account_id, " +
+        "sec_id, symbol, sub_red_type_id, external_ref, class_id, account_type, stp_mode, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_HISTORY_SQL =
+        "INSERT INTO trading_schema.order_history (id, order_id, previous_status, new_status, previous_exec_qty, " +
+        "new_exec_qty, change_reason, changed_by, changed_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insert new orders in one batch and assign their ids
+     */
+    public void insertOrders(List<Order> orders) {
+        List<Long> ids = allocateIds(ALLOCATE_ORDER_IDS_SQL, orders.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < orders.size(); i++) {
+            orders.get(i).setId(ids.get(i));
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ORDER_SQL, orders, orders.size(), (ps, order) -> {
+            ps.setLong(1, order.getId());
+            ps.setLong(2, order.getUserId());
+            ps.setInt(3, order.getSign());
+            ps.setBigDecimal(4, order.getPrice());
+            ps.setBigDecimal(5, order.getStopPrice());
+            ps.setBigDecimal(6, order.getDisplayedQuantity());
+            ps.setBigDecimal(7, order.getQuantity());
+            ps.setBigDecimal(8, order.getOrderAmount());
+            ps.setDate(9, order.getDateOrder() != null ? Date.valueOf(order.getDateOrder()) : null);
+            ps.setDate(10, order.getDateExpiry() != null ? Date.valueOf(order.getDateExpiry()) : null);
+            ps.setTime(11, order.getTimeOrder() != null ? Time.valueOf(order.getTimeOrder()) : null);
+            ps.setTime(12, order.getTimeExpiry() != null ? Time.valueOf(order.getTimeExpiry()) : null);
+            ps.setTimestamp(13, Timestamp.valueOf(order.getDateEntry()));
+            ps.setBigDecimal(14, order.getExecQty());
+            ps.setString(15, order.getExpiryTypeId());
+            ps.setString(16, order.getStatId());
+            ps.setString(17, order.getOrderTypeId());
+            setLong(ps, 18, order.getBrokerId());
+            setLong(ps, 19, order.getCashAccountId());
+            setLong(ps, 20, order.getEntityId());
+            setLong(ps, 21, order.getPortfId());
+            setLong(ps, 22, order.getSubPortfId());
+            setLong(ps, 23, order.getSecAccountId());
+            setLong(ps, 24, order.getSecId());
+            ps.setString(25, order.getSymbol());
+            ps.setString(26, order.getSubRedTypeId());
+            ps.setString(27, order.getExternalRef());
+            ps.setString(28, order.getClassId());
+            ps.setString(29, order.getAccountType());
+            ps.setString(30, order.getStpMode());
+            ps.setTimestamp(31, now);
+            ps.setTimestamp(32, now);
+        });
+    }
+
+    /**
+     * Insert one history row per order in one batch
+     */
+    public void insertHistories(List<Order> orders, String previousStatus, String reason) {
+        List<Long> ids = allocateIds(ALLOCATE_HISTORY_IDS_SQL, orders.size());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[] row = {0};
+        jdbcTemplate.batchUpdate(INSERT_HISTORY_SQL, orders, orders.size(), (ps, order) -> {
+            ps.setLong(1, ids.get(row[0]++));
+            ps.setLong(2, order.getId());
+            ps.setString(3, previousStatus);
+            ps.setString(4, order.getStatId());
+            ps.setBigDecimal(5, BigDecimal.ZERO);
+            ps.setBigDecimal(6, order.getExecQty());
+            ps.setString(7, reason);
+            setLong(ps, 8, order.getUserId());
+            ps.setTimestamp(9, now);
+        });
+    }
+
+    /**
+     * Reserve count ids, one nextval per block of ID_BLOCK_SIZE
+     */
+    private List<Long> allocateIds(String sql, int count) {
+        int blocks = (count + ID_BLOCK_SIZE - 1) / ID_BLOCK_SIZE;
+        List<Long> blockStarts = jdbcTemplate.queryForList(sql, Long.class, blocks);
+        List<Long> ids = new ArrayList<>(count);
+        for (long start : blockStarts) {
+            for (int i = 0; i < ID_BLOCK_SIZE && ids.size() < count; i++) {
+                ids.add(start + i);
+            }
+        }
+        return ids;
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value != null) {
+            ps.setLong(index, value);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+}
@@ -28,4 +28,8 @@ public interface OrderHistoryRepository extends JpaRepository<OrderHistory, Long
     // Find history by status change
     @Query("SELECT h FROM OrderHistory h WHERE h.order.id = :orderId AND h.newStatus = :status ORDER BY h.changedAt DESC")
     List<OrderHistory> findByOrderIdAndStatus(@Param("orderId") Long orderId, @Param("status") String status);
+
+    // Executions written past a journal sequence, as order id and FILL sequence pairs
+    @Query("SELECT h.order.id, h.journalSequence FROM OrderHistory h WHERE h.journalSequence > :sequence")
+    List<Object[]> findJournalSequencesAfter(@Param("sequence") Long sequence);
 }
@@ -3,11 +3,15 @@ package com.sypexfs.msin_bourse_enligne.trading.repository;
 import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -79,6 +83,30 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("SELECT o FROM Order o WHERE o.userId = :userId ORDER BY o.dateEntry DESC")
     List<Order> findRecentOrdersByUser(@Param("userId") Long userId, Pageable pageable);
 
+    // Open orders in entry order, used to restore the order books
+    @Query("SELECT o FROM Order o WHERE o.statId IN ('PENDING', 'PARTIAL') ORDER BY o.dateEntry ASC, o.id ASC")
+    List<Order> findOpenOrders();
+
+    // Cancel open orders in bulk, only the status is written (expiry, mass and user cancels)
+    @Transactional
+    @Modifying
+    @Query("UPDATE Order o SET o.statId = 'CANCELLED', o.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE o.id IN :ids AND o.statId IN ('PENDING', 'PARTIAL')")
+    int cancelOpenOrders(@Param("ids") Collection<Long> ids);
+
+    // Matching state of an order written by the engine, the other columns keep their stored values
+    // The date_entry bound prunes the older orders partitions
+    @Transactional
+    @Modifying
+    @Query("UPDATE Order o SET o.orderTypeId = :orderTypeId, o.statId = :statId, o.quantity = :quantity, " +
+           "o.execQty = :execQty, o.updatedAt = CURRENT_TIMESTAMP WHERE o.id = :id AND o.dateEntry >= :entryFrom")
+    int updateMatchingState(@Param("id") Long id,
+                            @Param("entryFrom") LocalDateTime entryFrom,
+                            @Param("orderTypeId") String orderTypeId,
+                            @Param("statId") String statId,
+                            @Param("quantity") BigDecimal quantity,
+                            @Param("execQty") BigDecimal execQty);
+
     // Check if user has pending orders for symbol
     @Query("SELECT CASE WHEN COUNT(o) > 0 THEN true ELSE false END FROM Order o " +
            "WHERE o.userId = :userId AND o.symbol = :symbol AND o.statId IN ('PENDING', 'PARTIAL')")
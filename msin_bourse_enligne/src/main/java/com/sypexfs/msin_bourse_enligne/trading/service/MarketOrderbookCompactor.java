@@ -0,0 +1,48 @@
+package com.sypexfs.msin_bourse_enligne.trading.service;
+
+import com.sypexfs.msin_bourse_enligne.trading.repository.MarketOrderbookWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Purges the rows of filled and cancelled orders from the public orderbook table
+ * They are kept for a while so late readers still see the removal, then dropped in
+ * chunks so the deletes never hold many row locks at once
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MarketOrderbookCompactor {
+
+    private final MarketOrderbookWriter marketOrderbookWriter;
+
+    @Value("${app.trading.market-data.orderbook-retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${app.trading.market-data.orderbook-purge-chunk:5000}")
+    private int chunkSize;
+
+    @Scheduled(fixedDelayString = "${app.trading.market-data.orderbook-purge-interval-ms:300000}")
+    public void purgeDeletedRows() {
+        try {
+            LocalDateTime before = LocalDateTime.now().minusMinutes(retentionMinutes);
+            int purged = 0;
+            int deleted;
+            do {
+                deleted = marketOrderbookWriter.purgeDeleted(before, chunkSize);
+                purged += deleted;
+            } while (deleted == chunkSize);
+
+            if (purged > 0) {
+                log.info("Purged {} deleted market orderbook rows", purged);
+            }
+        } catch (Exception e) {
+            log.error("Error purging deleted market orderbook rows", e);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * Service for executing orders through the matching engine
@@ -68,17 +69,12 @@ public class OrderExecutionService {
             throw new RuntimeException("Cannot cancel filled order");
         }
         
-        // Remove from order book if pending
-        if ("PENDING".equals(order.getStatId()) || "PARTIAL".equals(order.getStatId())) {
-            var orderBook = matchingEngine.getOrderBook(order.getSymbol());
-            if (orderBook != null) {
-                orderBook.removeOrder(orderId);
-            }
+        // Only the status is written, and only while the order is still open
+        if (orderRepository.cancelOpenOrders(List.of(orderId)) == 0) {
+            throw new RuntimeException("Cannot cancel order with status: " + order.getStatId());
         }
-        
-        // Update order status
         order.setStatId("CANCELLED");
-        order = orderRepository.save(order);
+        matchingEngine.cancelOrder(order);
         
         // Send real-time update
         sendOrderCancellation(order, reason);
@@ -100,14 +96,8 @@ public class OrderExecutionService {
             throw new RuntimeException("Unauthorized access to order: " + orderId);
         }
         
-        if (!"PENDING".equals(order.getStatId())) {
-            throw new RuntimeException("Can only modify pending orders");
-        }
-        
-        // Remove from order book
-        var orderBook = matchingEngine.getOrderBook(order.getSymbol());
-        if (orderBook != null) {
-            orderBook.removeOrder(orderId);
+        if (!"PENDING".equals(order.getStatId()) && !"PARTIAL".equals(order.getStatId())) {
+            throw new RuntimeException("Can only modify open orders");
         }
         
         // Update order
@@ -115,14 +105,29 @@ public class OrderExecutionService {
             order.setPrice(newPrice);
         }
         if (newQuantity != null) {
+            if (newQuantity.compareTo(order.getExecQty()) <= 0) {
+                throw new RuntimeException("Quantity must exceed the executed quantity: " + order.getExecQty());
+            }
             order.setQuantity(newQuantity);
-            order.setOrderAmount(order.getPrice().multiply(newQuantity));
+        }
+        if (order.getPrice() != null) {
+            order.setOrderAmount(order.getPrice().multiply(order.getQuantity()));
         }
         
+        // Dynamic update: only the amended columns are written, the execution state is left alone
         order = orderRepository.save(order);
         
-        // Resubmit to matching engine
-        MatchingResult result = matchingEngine.processOrder(order);
+        // Amend in the book: a quantity reduction keeps time priority, a crossing price trades
+        MatchingResult result = matchingEngine.amendOrder(order);
+        if (result != null && result.isRejected()) {
+            // Rolls back the amended columns
+            throw new RuntimeException(result.getMessage());
+        }
+        if (result == null) {
+            // Not in a book yet, submit it like a new order
+            result = matchingEngine.processOrder(order);
+        }
+        order = result.getOrder();
         
         // Send real-time update
         sendOrderUpdate(order, result);
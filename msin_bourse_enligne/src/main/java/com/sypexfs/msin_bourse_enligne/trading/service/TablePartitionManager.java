@@ -0,0 +1,149 @@
+package com.sypexfs.msin_bourse_enligne.trading.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the monthly partitions of orders and market_transactions (V16)
+ * - Creates the partitions of the coming months, an insert past the last one would fail
+ * - Detaches the partitions older than the retention and moves them to the archive schema,
+ *   where they can be dumped and dropped. An orders partition still holding open orders is kept.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TablePartitionManager {
+
+    private static final List<PartitionedTable> TABLES = List.of(
+        new PartitionedTable("trading_schema", "orders", "date_entry", "stat_id IN ('PENDING', 'PARTIAL')"),
+        new PartitionedTable("market_schema", "market_transactions", "date_trans", null)
+    );
+
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("'_p'yyyy_MM");
+    private static final Pattern PARTITION_NAME = Pattern.compile("_p(\\d{4})_(\\d{2})$");
+
+    private static final String LIST_PARTITIONS_SQL =
+        "SELECT c.relname FROM pg_inherits i " +
+        "JOIN pg_class c ON c.oid = i.inhrelid " +
+        "JOIN pg_class p ON p.oid = i.inhparent " +
+        "JOIN pg_namespace n ON n.oid = p.relnamespace " +
+        "WHERE n.nspname = ? AND p.relname = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.trading.partitions.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${app.trading.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    @Value("${app.trading.partitions.archive-schema:archive_schema}")
+    private String archiveSchema;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        maintainPartitions();
+    }
+
+    @Scheduled(cron = "${app.trading.partitions.maintenance-cron:0 15 0 * * *}")
+    public void maintainPartitions() {
+        YearMonth currentMonth = YearMonth.now();
+        for (PartitionedTable table : TABLES) {
+            try {
+                createPartitions(table, currentMonth, currentMonth.plusMonths(monthsAhead));
+                if (retentionMonths > 0) {
+                    archivePartitions(table, currentMonth.minusMonths(retentionMonths));
+                }
+            } catch (Exception e) {
+                log.error("Error maintaining partitions of {}", table.qualifiedName(), e);
+            }
+        }
+    }
+
+    /**
+     * Partition column of a table, null when it is not one of the partitioned tables
+     */
+    public String partitionKey(String schema, String name) {
+        PartitionedTable table = find(schema, name);
+        return table != null ? table.keyColumn() : null;
+    }
+
+    /**
+     * Make sure the partitions of the given months exist, for rows loaded outside the usual window
+     */
+    public void createPartitions(String schema, String name, YearMonth from, YearMonth to) {
+        PartitionedTable table = find(schema, name);
+        if (table == null) {
+            throw new IllegalArgumentException(schema + "." + name + " is not a partitioned table");
+        }
+        createPartitions(table, from, to);
+    }
+
+    private PartitionedTable find(String schema, String name) {
+        return TABLES.stream()
+            .filter(table -> table.schema().equals(schema) && table.name().equals(name))
+            .findFirst()
+            .orElse(null);
+    }
+
+    private void createPartitions(PartitionedTable table, YearMonth from, YearMonth to) {
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            jdbcTemplate.execute(String.format(
+                "CREATE TABLE IF NOT EXISTS %s.%s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                table.schema(), table.name() + month.format(SUFFIX), table.qualifiedName(),
+                month.atDay(1), month.plusMonths(1).atDay(1)));
+        }
+    }
+
+    /**
+     * Detach the partitions of the months before firstKept and move them to the archive schema
+     */
+    private void archivePartitions(PartitionedTable table, YearMonth firstKept) {
+        List<String> partitions = jdbcTemplate.queryForList(LIST_PARTITIONS_SQL, String.class, table.schema(), table.name());
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (!matcher.find()) {
+                continue;
+            }
+            YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            if (!month.isBefore(firstKept)) {
+                continue;
+            }
+
+            String qualifiedPartition = table.schema() + "." + partition;
+            if (table.liveRowsCondition() != null && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM " + qualifiedPartition + " WHERE " + table.liveRowsCondition() + ")",
+                    Boolean.class))) {
+                log.warn("Partition {} is past retention but still holds open orders, keeping it", qualifiedPartition);
+                continue;
+            }
+
+            jdbcTemplate.execute("ALTER TABLE " + table.qualifiedName() + " DETACH PARTITION " + qualifiedPartition);
+            jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+            jdbcTemplate.execute("ALTER TABLE " + qualifiedPartition + " SET SCHEMA " + archiveSchema);
+            log.info("Detached partition {} and moved it to {}", qualifiedPartition, archiveSchema);
+        }
+    }
+
+    /**
+     * @param liveRowsCondition rows that must stay attached, null when none
+     */
+    private record PartitionedTable(String schema, String name, String keyColumn, String liveRowsCondition) {
+
+        String qualifiedName() {
+            return schema + "." + name;
+        }
+    }
+}
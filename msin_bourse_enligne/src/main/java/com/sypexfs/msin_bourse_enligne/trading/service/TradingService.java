@@ -16,6 +16,11 @@ public interface TradingService {
      */
     OrderResponse createOrder(Long userId, OrderRequest request);
 
+    /**
+     * Create several orders in one batch, responses are in request order
+     */
+    List<OrderResponse> createOrders(Long userId, List<OrderRequest> requests);
+
     /**
      * Get order by ID
      */
@@ -76,6 +81,11 @@ public interface TradingService {
      */
     OrderResponse cancelOrder(Long orderId, Long userId, String reason);
 
+    /**
+     * Cancel every open order of a user, optionally for one symbol and one side
+     */
+    List<OrderResponse> cancelAllOrders(Long userId, String symbol, Integer side, String reason);
+
     /**
      * Delete an order (soft delete by marking as cancelled)
      */
@@ -6,6 +6,8 @@ import com.sypexfs.msin_bourse_enligne.trading.entity.OrderHistory;
 import com.sypexfs.msin_bourse_enligne.trading.entity.UserTransaction;
 import com.sypexfs.msin_bourse_enligne.trading.matching.MatchingResult;
 import com.sypexfs.msin_bourse_enligne.trading.matching.OrderMatchingEngine;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderBatchRepository;
+import com.sypexfs.msin_bourse_enligne.trading.repository.MarketOrderbookWriter;
 import com.sypexfs.msin_bourse_enligne.trading.repository.OrderHistoryRepository;
 import com.sypexfs.msin_bourse_enligne.trading.repository.OrderRepository;
 import com.sypexfs.msin_bourse_enligne.trading.repository.UserTransactionRepository;
@@ -15,8 +17,6 @@ import com.sypexfs.msin_bourse_enligne.portfolio.dto.PositionResponse;
 import com.sypexfs.msin_bourse_enligne.market.websocket.MarketWebSocketHandler;
 import com.sypexfs.msin_bourse_enligne.market.service.MarketService;
 import com.sypexfs.msin_bourse_enligne.market.dto.MarketMapper;
-import com.sypexfs.msin_bourse_enligne.market.entity.MarketOrderbook;
-import com.sypexfs.msin_bourse_enligne.market.repository.MarketOrderbookRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
@@ -26,8 +26,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -44,7 +48,8 @@ public class TradingServiceImpl implements TradingService {
     private final MarketWebSocketHandler webSocketHandler;
     private final MarketService marketService;
     private final MarketMapper marketMapper;
-    private final MarketOrderbookRepository marketOrderbookRepository;
+    private final MarketOrderbookWriter marketOrderbookWriter;
+    private final OrderBatchRepository orderBatchRepository;
 
     // ==================== Order Operations ====================
 
@@ -57,6 +62,86 @@ public class TradingServiceImpl implements TradingService {
         // TEMPORARILY DISABLED FOR TESTING - UNCOMMENT IN PRODUCTION
         // validatePortfolioForOrder(userId, request);
 
+        Order order = toOrder(userId, request);
+
+        Order savedOrder = orderRepository.save(order);
+        log.info("Order created successfully with ID: {}", savedOrder.getId());
+
+        // Create order history entry
+        createOrderHistoryEntry(savedOrder, null, "PENDING", "Order created");
+
+        // Process order through matching engine
+        try {
+            MatchingResult result = matchingEngine.processOrder(savedOrder);
+            log.info("Order {} processed by matching engine. Status: {}, Executions: {}", 
+                     savedOrder.getId(), result.getOrder().getStatId(), result.getExecutions().size());
+            
+            // The engine updates the order in place, no need to reload it
+            savedOrder = result.getOrder();
+        } catch (Exception e) {
+            log.error("Error processing order through matching engine: {}", e.getMessage(), e);
+            // Order is still saved, just not matched yet
+        }
+
+        // Sync order to market orderbook if still pending/partial
+        if ("PENDING".equals(savedOrder.getStatId()) || "PARTIAL".equals(savedOrder.getStatId())) {
+            syncOrderToMarketOrderbook(savedOrder);
+        } else if ("FILLED".equals(savedOrder.getStatId())) {
+            // Remove filled orders from market orderbook
+            removeOrderFromMarketOrderbook(savedOrder);
+        }
+
+        // Broadcast orderbook update via WebSocket
+        broadcastOrderbookUpdate(request.getSymbol());
+
+        return convertToOrderResponse(savedOrder);
+    }
+
+    @Override
+    @Transactional
+    public List<OrderResponse> createOrders(Long userId, List<OrderRequest> requests) {
+        log.info("Creating batch of {} orders for user: {}", requests.size(), userId);
+
+        List<Order> orders = new ArrayList<>(requests.size());
+        for (OrderRequest request : requests) {
+            orders.add(toOrder(userId, request));
+        }
+
+        // One sequence round trip and one JDBC batch for the rows and their history
+        orderBatchRepository.insertOrders(orders);
+        orderBatchRepository.insertHistories(orders, null, "Order created");
+
+        // Load the rows once so the engine updates managed entities instead of merging each one
+        Map<Long, Order> managed = orderRepository.findAllById(orders.stream().map(Order::getId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+        List<Order> savedOrders = orders.stream().map(order -> managed.get(order.getId())).collect(Collectors.toList());
+
+        try {
+            List<MatchingResult> results = matchingEngine.processOrders(savedOrders);
+            log.info("Batch of {} orders processed by matching engine, {} with executions",
+                     results.size(), results.stream().filter(MatchingResult::isExecuted).count());
+        } catch (Exception e) {
+            log.error("Error processing order batch through matching engine: {}", e.getMessage(), e);
+            // Orders are still saved, just not matched yet
+        }
+
+        // Resting orders reach the public book in one write, then one broadcast per symbol
+        syncOrdersToMarketOrderbook(savedOrders.stream()
+                .filter(order -> "PENDING".equals(order.getStatId()) || "PARTIAL".equals(order.getStatId()))
+                .collect(Collectors.toList()));
+
+        Set<String> symbols = new LinkedHashSet<>();
+        savedOrders.forEach(order -> symbols.add(order.getSymbol()));
+        symbols.forEach(this::broadcastOrderbookUpdate);
+
+        return savedOrders.stream().map(this::convertToOrderResponse).collect(Collectors.toList());
+    }
+
+    /**
+     * Build a new order from a request
+     */
+    private Order toOrder(Long userId, OrderRequest request) {
         Order order = new Order();
         order.setUserId(userId);
         order.setSign(request.getSign());
@@ -83,45 +168,14 @@ public class TradingServiceImpl implements TradingService {
         order.setExternalRef(request.getExternalRef());
         order.setClassId(request.getClassId());
         order.setAccountType(request.getAccountType());
+        order.setStpMode(request.getStpMode());
         order.setDateEntry(LocalDateTime.now());
 
         // Calculate order amount
         if (request.getPrice() != null && request.getQuantity() != null) {
             order.setOrderAmount(request.getPrice().multiply(request.getQuantity()));
         }
-
-        Order savedOrder = orderRepository.save(order);
-        log.info("Order created successfully with ID: {}", savedOrder.getId());
-
-        // Create order history entry
-        createOrderHistoryEntry(savedOrder, null, "PENDING", "Order created");
-
-        // Process order through matching engine
-        try {
-            MatchingResult result = matchingEngine.processOrder(savedOrder);
-            log.info("Order {} processed by matching engine. Status: {}, Executions: {}", 
-                     savedOrder.getId(), result.getOrder().getStatId(), result.getExecutions().size());
-            
-            // Reload order to get updated status from matching engine
-            savedOrder = orderRepository.findById(savedOrder.getId())
-                .orElse(savedOrder);
-        } catch (Exception e) {
-            log.error("Error processing order through matching engine: {}", e.getMessage(), e);
-            // Order is still saved, just not matched yet
-        }
-
-        // Sync order to market orderbook if still pending/partial
-        if ("PENDING".equals(savedOrder.getStatId()) || "PARTIAL".equals(savedOrder.getStatId())) {
-            syncOrderToMarketOrderbook(savedOrder);
-        } else if ("FILLED".equals(savedOrder.getStatId())) {
-            // Remove filled orders from market orderbook
-            removeOrderFromMarketOrderbook(savedOrder);
-        }
-
-        // Broadcast orderbook update via WebSocket
-        broadcastOrderbookUpdate(request.getSymbol());
-
-        return convertToOrderResponse(savedOrder);
+        return order;
     }
 
     @Override
@@ -226,12 +280,11 @@ public class TradingServiceImpl implements TradingService {
             throw new RuntimeException("Unauthorized access to order: " + orderId);
         }
 
-        if (!"PENDING".equals(order.getStatId())) {
+        if (!"PENDING".equals(order.getStatId()) && !"PARTIAL".equals(order.getStatId())) {
             throw new RuntimeException("Cannot update order with status: " + order.getStatId());
         }
 
         String previousStatus = order.getStatId();
-        BigDecimal previousExecQty = order.getExecQty();
 
         // Update fields
         if (request.getPrice() != null) {
@@ -256,14 +309,36 @@ public class TradingServiceImpl implements TradingService {
             order.setExpiryTypeId(request.getExpiryTypeId());
         }
 
+        if (order.getQuantity().compareTo(order.getExecQty()) <= 0) {
+            throw new RuntimeException("Quantity must exceed the executed quantity: " + order.getExecQty());
+        }
+
         // Recalculate order amount
         if (order.getPrice() != null && order.getQuantity() != null) {
             order.setOrderAmount(order.getPrice().multiply(order.getQuantity()));
         }
 
+        // Dynamic update: only the amended columns are written, the execution state is left alone
         Order updatedOrder = orderRepository.save(order);
+
+        // Amend the order in its book, a quantity reduction keeps its time priority
+        MatchingResult result = matchingEngine.amendOrder(updatedOrder);
+        if (result != null && result.isRejected()) {
+            // Rolls back the amended columns
+            throw new RuntimeException(result.getMessage());
+        }
+        if (result != null) {
+            // A crossing amend may have traded, the engine updates the order in place
+            updatedOrder = result.getOrder();
+        }
         log.info("Order updated successfully: {}", orderId);
 
+        if ("PENDING".equals(updatedOrder.getStatId()) || "PARTIAL".equals(updatedOrder.getStatId())) {
+            syncOrderToMarketOrderbook(updatedOrder);
+        } else {
+            removeOrderFromMarketOrderbook(updatedOrder);
+        }
+
         // Create order history entry
         createOrderHistoryEntry(updatedOrder, previousStatus, updatedOrder.getStatId(), "Order updated");
 
@@ -289,22 +364,42 @@ public class TradingServiceImpl implements TradingService {
             throw new RuntimeException("Cannot cancel order with status: " + order.getStatId());
         }
 
+        // Only the status is written, and only while the order is still open
+        if (orderRepository.cancelOpenOrders(List.of(orderId)) == 0) {
+            throw new RuntimeException("Cannot cancel order with status: " + order.getStatId());
+        }
         String previousStatus = order.getStatId();
         order.setStatId("CANCELLED");
 
-        Order cancelledOrder = orderRepository.save(order);
+        matchingEngine.cancelOrder(order);
         log.info("Order cancelled successfully: {}", orderId);
 
         // Create order history entry
-        createOrderHistoryEntry(cancelledOrder, previousStatus, "CANCELLED", reason != null ? reason : "Order cancelled by user");
+        createOrderHistoryEntry(order, previousStatus, "CANCELLED", reason != null ? reason : "Order cancelled by user");
 
         // Remove from market orderbook
-        removeOrderFromMarketOrderbook(cancelledOrder);
+        removeOrderFromMarketOrderbook(order);
 
         // Broadcast orderbook update via WebSocket
-        broadcastOrderbookUpdate(cancelledOrder.getSymbol());
+        broadcastOrderbookUpdate(order.getSymbol());
 
-        return convertToOrderResponse(cancelledOrder);
+        return convertToOrderResponse(order);
+    }
+
+    @Override
+    @Transactional
+    public List<OrderResponse> cancelAllOrders(Long userId, String symbol, Integer side, String reason) {
+        log.info("Cancelling all orders for user: {} (symbol: {}, side: {})", userId, symbol, side);
+
+        // The engine empties the books and writes the cancellations in bulk
+        List<Order> cancelledOrders = matchingEngine.massCancel(userId, symbol, side,
+                reason != null ? reason : "Mass cancel by user");
+
+        cancelledOrders.stream().map(Order::getSymbol).distinct().forEach(this::broadcastOrderbookUpdate);
+
+        return cancelledOrders.stream()
+                .map(this::convertToOrderResponse)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -527,6 +622,7 @@ public class TradingServiceImpl implements TradingService {
                 .externalRef(order.getExternalRef())
                 .classId(order.getClassId())
                 .accountType(order.getAccountType())
+                .stpMode(order.getStpMode())
                 .createdAt(order.getCreatedAt())
                 .updatedAt(order.getUpdatedAt())
                 .remainingQuantity(order.getRemainingQuantity())
@@ -648,44 +744,22 @@ public class TradingServiceImpl implements TradingService {
      * Sync order to market orderbook table for display
      */
     private void syncOrderToMarketOrderbook(Order order) {
+        syncOrdersToMarketOrderbook(List.of(order));
+    }
+
+    /**
+     * Sync a batch of resting orders to the market orderbook table with one upsert batch
+     * Icebergs only show their slice, a re-entered order revives its row
+     */
+    private void syncOrdersToMarketOrderbook(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
         try {
-            log.info("Syncing order {} to market orderbook", order.getId());
-            
-            // Check if orderbook entry already exists for this order
-            String orderMarketId = "ORDER_" + order.getId();
-            MarketOrderbook existingEntry = marketOrderbookRepository
-                .findByOrderMarketId(orderMarketId)
-                .orElse(null);
-            
-            if (existingEntry != null) {
-                // Update existing entry with remaining quantity
-                existingEntry.setQuantity(order.getRemainingQuantity());
-                existingEntry.setPrice(order.getPrice());
-                existingEntry.setDelete(false);
-                marketOrderbookRepository.save(existingEntry);
-                log.info("Updated market orderbook entry for order {} with remaining qty: {}", 
-                         order.getId(), order.getRemainingQuantity());
-            } else {
-                // Create new entry with remaining quantity
-                MarketOrderbook marketOrder = new MarketOrderbook();
-                marketOrder.setSecId(order.getSecId() != null ? order.getSecId().toString() : null);
-                marketOrder.setSymbol(order.getSymbol());
-                marketOrder.setSide(order.getSign() == 1 ? "BUY" : "SELL");
-                marketOrder.setQuantity(order.getRemainingQuantity());
-                marketOrder.setPrice(order.getPrice());
-                marketOrder.setOrderCount(1);
-                marketOrder.setDateOrder(order.getDateOrder() != null ? order.getDateOrder().atStartOfDay() : LocalDateTime.now());
-                marketOrder.setOrderMarketId(orderMarketId);
-                marketOrder.setOrderType(order.getOrderTypeId());
-                marketOrder.setIsOwnOrder(false);
-                marketOrder.setDelete(false);
-                marketOrder.setDeleteAll(false);
-                
-                marketOrderbookRepository.save(marketOrder);
-                log.info("Created market orderbook entry for order {}", order.getId());
-            }
+            marketOrderbookWriter.upsert(orders);
+            log.debug("Synced {} orders to market orderbook", orders.size());
         } catch (Exception e) {
-            log.error("Error syncing order {} to market orderbook: {}", order.getId(), e.getMessage(), e);
+            log.error("Error syncing {} orders to market orderbook: {}", orders.size(), e.getMessage(), e);
         }
     }
 
@@ -694,13 +768,7 @@ public class TradingServiceImpl implements TradingService {
      */
     private void removeOrderFromMarketOrderbook(Order order) {
         try {
-            String orderMarketId = "ORDER_" + order.getId();
-            marketOrderbookRepository.findByOrderMarketId(orderMarketId)
-                .ifPresent(entry -> {
-                    entry.setDelete(true);
-                    marketOrderbookRepository.save(entry);
-                    log.info("Marked market orderbook entry as deleted for order {}", order.getId());
-                });
+            marketOrderbookWriter.markDeleted(List.of(order.getId()));
         } catch (Exception e) {
             log.error("Error removing order {} from market orderbook: {}", order.getId(), e.getMessage(), e);
         }
@@ -710,6 +778,10 @@ public class TradingServiceImpl implements TradingService {
      * Broadcast orderbook update via WebSocket for a symbol
      */
     private void broadcastOrderbookUpdate(String symbol) {
+        // Rebuilding the order list costs two queries, skip it when nobody listens
+        if (!webSocketHandler.hasSubscribers("market.orderbook:" + symbol)) {
+            return;
+        }
         try {
             log.info("Preparing to broadcast orderbook update for symbol: {}", symbol);
             
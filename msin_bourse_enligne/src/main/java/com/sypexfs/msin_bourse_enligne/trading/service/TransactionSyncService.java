@@ -3,7 +3,8 @@ package com.sypexfs.msin_bourse_enligne.trading.service;
 import com.sypexfs.msin_bourse_enligne.market.entity.MarketTransaction;
 import com.sypexfs.msin_bourse_enligne.market.entity.MarketSummary;
 import com.sypexfs.msin_bourse_enligne.market.repository.MarketTransactionRepository;
-import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryRepository;
+import com.sypexfs.msin_bourse_enligne.market.repository.MarketSummaryWriter;
+import com.sypexfs.msin_bourse_enligne.market.service.MarketSummaryHistoryRecorder;
 import com.sypexfs.msin_bourse_enligne.market.websocket.MarketWebSocketHandler;
 import com.sypexfs.msin_bourse_enligne.market.dto.TransactionDto;
 import com.sypexfs.msin_bourse_enligne.market.dto.MarketSummaryDto;
@@ -29,7 +30,8 @@ import java.util.UUID;
 public class TransactionSyncService {
 
     private final MarketTransactionRepository marketTransactionRepository;
-    private final MarketSummaryRepository marketSummaryRepository;
+    private final MarketSummaryWriter marketSummaryWriter;
+    private final MarketSummaryHistoryRecorder historyRecorder;
     private final MarketWebSocketHandler webSocketHandler;
     private final MarketMapper marketMapper;
 
@@ -195,47 +197,10 @@ public class TransactionSyncService {
      */
     private void updateAndBroadcastMarketSummary(String symbol, BigDecimal price, BigDecimal quantity) {
         try {
-            // Get or create market summary for this symbol
-            MarketSummary summary = marketSummaryRepository.findBySymbol(symbol)
-                .orElseGet(() -> {
-                    MarketSummary newSummary = new MarketSummary();
-                    newSummary.setSymbol(symbol);
-                    newSummary.setDateUpdate(LocalDateTime.now());
-                    return newSummary;
-                });
-            
-            // Update price and calculate variation
-            BigDecimal oldPrice = summary.getPrice();
-            summary.setPrice(price);
-            
-            if (oldPrice != null && oldPrice.compareTo(BigDecimal.ZERO) > 0) {
-                BigDecimal variation = price.subtract(oldPrice)
-                    .divide(oldPrice, 4, java.math.RoundingMode.HALF_UP)
-                    .multiply(new BigDecimal("100"));
-                summary.setVariation(variation);
-            }
-            
-            // Update quantity and volume
-            summary.setQuantity(quantity);
-            if (summary.getVolume() == null) {
-                summary.setVolume(BigDecimal.ZERO);
-            }
-            summary.setVolume(summary.getVolume().add(quantity));
-            
-            // Update high/low prices
-            if (summary.getHigherPrice() == null || price.compareTo(summary.getHigherPrice()) > 0) {
-                summary.setHigherPrice(price);
-            }
-            if (summary.getLowerPrice() == null || price.compareTo(summary.getLowerPrice()) < 0) {
-                summary.setLowerPrice(price);
-            }
-            
-            // Update timestamp
-            summary.setDateUpdate(LocalDateTime.now());
-            summary.setDateTrans(LocalDateTime.now());
-            
-            // Save updated summary
-            MarketSummary updatedSummary = marketSummaryRepository.save(summary);
+            // One upsert on the symbol row: created on the first trade, otherwise price, volume,
+            // day range and variation against the previous price are updated by the statement
+            MarketSummary updatedSummary = marketSummaryWriter.recordTrade(symbol, price, quantity, LocalDateTime.now());
+            historyRecorder.record(updatedSummary);
             log.debug("Updated market summary for symbol: {}", symbol);
             
             // Broadcast to WebSocket
@@ -0,0 +1,234 @@
+package com.sypexfs.msin_bourse_enligne.trading.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sypexfs.msin_bourse_enligne.trading.matching.MarketByOrderSnapshot;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBook;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBookEvent;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderMatchingEngine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket handler for the sequenced market-by-order feed
+ * Events drained from the books are pushed to the subscribers of their symbol as
+ * ORDER_BOOK_EVENTS. A subscriber first receives an ORDER_BOOK_SNAPSHOT and applies the
+ * events whose sequence follows the snapshot's. On a gap it sends REPLAY with the last
+ * sequence it applied: the missing events are resent while they are still retained,
+ * otherwise a fresh snapshot is sent.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MarketByOrderWebSocketHandler extends TextWebSocketHandler {
+
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SEND_BUFFER_LIMIT = 1024 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final OrderMatchingEngine matchingEngine;
+
+    @Value("${app.trading.market-data.mbo-replay-size:10000}")
+    private int replaySize;
+
+    // Session ID -> session, decorated so the publisher and replies can send concurrently
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    // Symbol -> Session ID -> session
+    private final Map<String, Map<String, WebSocketSession>> symbolSubscriptions = new ConcurrentHashMap<>();
+
+    // Symbol -> last published events, oldest first
+    private final Map<String, ArrayDeque<OrderBookEvent>> retainedEvents = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        sessions.put(session.getId(), new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT));
+        log.info("Market-by-order WebSocket connection established: {}", session.getId());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        log.info("Market-by-order WebSocket connection closed: {} with status: {}", session.getId(), status);
+        sessions.remove(session.getId());
+        symbolSubscriptions.values().forEach(subscribers -> subscribers.remove(session.getId()));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        WebSocketSession target = sessions.getOrDefault(session.getId(), session);
+        try {
+            WebSocketMessage wsMessage = objectMapper.readValue(message.getPayload(), WebSocketMessage.class);
+
+            switch (wsMessage.getType()) {
+                case "SUBSCRIBE":
+                    symbolSubscriptions.computeIfAbsent(wsMessage.getSymbol(), k -> new ConcurrentHashMap<>())
+                        .put(session.getId(), target);
+                    log.info("Session {} subscribed to market-by-order {}", session.getId(), wsMessage.getSymbol());
+                    sendSnapshot(target, wsMessage.getSymbol());
+                    break;
+                case "UNSUBSCRIBE":
+                    Map<String, WebSocketSession> subscribers = symbolSubscriptions.get(wsMessage.getSymbol());
+                    if (subscribers != null) {
+                        subscribers.remove(session.getId());
+                    }
+                    break;
+                case "REPLAY":
+                    replay(target, wsMessage.getSymbol(), wsMessage.getFromSequence());
+                    break;
+                case "PING":
+                    send(target, new TextMessage(objectMapper.writeValueAsString(new PongMessage("PONG", LocalDateTime.now()))));
+                    break;
+                default:
+                    log.warn("Unknown market-by-order message type: {}", wsMessage.getType());
+            }
+        } catch (Exception e) {
+            log.error("Error processing market-by-order message", e);
+            send(target, new TextMessage(objectMapper.writeValueAsString(
+                new ErrorMessage("ERROR", "Invalid message format", LocalDateTime.now()))));
+        }
+    }
+
+    /**
+     * Drain the books and push their events, retained for replay whether or not anyone listens
+     */
+    @Scheduled(fixedDelayString = "${app.trading.market-data.mbo-interval-ms:20}")
+    public void publish() {
+        try {
+            for (String symbol : matchingEngine.getAllSymbols()) {
+                OrderBook orderBook = matchingEngine.getOrderBook(symbol);
+                if (orderBook == null) {
+                    continue;
+                }
+                List<OrderBookEvent> events = orderBook.drainOrderEvents();
+                if (events.isEmpty()) {
+                    continue;
+                }
+                retain(symbol, events);
+
+                Map<String, WebSocketSession> subscribers = symbolSubscriptions.get(symbol);
+                if (subscribers == null || subscribers.isEmpty()) {
+                    continue;
+                }
+                TextMessage message = new TextMessage(objectMapper.writeValueAsString(
+                    new EventsMessage("ORDER_BOOK_EVENTS", symbol, events)));
+                subscribers.values().forEach(session -> send(session, message));
+            }
+        } catch (Exception e) {
+            log.error("Error publishing market-by-order events", e);
+        }
+    }
+
+    /**
+     * Events after the given sequence while retained, null when the gap is too old
+     */
+    public List<OrderBookEvent> getEventsAfter(String symbol, long sequence) {
+        ArrayDeque<OrderBookEvent> retained = retainedEvents.get(symbol);
+        if (retained == null) {
+            return null;
+        }
+        synchronized (retained) {
+            if (retained.isEmpty() || retained.peekFirst().getSequence() > sequence + 1) {
+                return null;
+            }
+            List<OrderBookEvent> events = new ArrayList<>();
+            for (OrderBookEvent event : retained) {
+                if (event.getSequence() > sequence) {
+                    events.add(event);
+                }
+            }
+            return events;
+        }
+    }
+
+    private void retain(String symbol, List<OrderBookEvent> events) {
+        ArrayDeque<OrderBookEvent> retained = retainedEvents.computeIfAbsent(symbol, k -> new ArrayDeque<>());
+        synchronized (retained) {
+            retained.addAll(events);
+            while (retained.size() > replaySize) {
+                retained.pollFirst();
+            }
+        }
+    }
+
+    private void replay(WebSocketSession session, String symbol, Long fromSequence) throws IOException {
+        List<OrderBookEvent> events = fromSequence != null ? getEventsAfter(symbol, fromSequence) : null;
+        if (events == null) {
+            sendSnapshot(session, symbol);
+            return;
+        }
+        send(session, new TextMessage(objectMapper.writeValueAsString(new EventsMessage("ORDER_BOOK_EVENTS", symbol, events))));
+    }
+
+    private void sendSnapshot(WebSocketSession session, String symbol) throws IOException {
+        OrderBook orderBook = matchingEngine.getOrderBook(symbol);
+        MarketByOrderSnapshot snapshot = orderBook != null
+            ? orderBook.getMarketByOrder()
+            : new MarketByOrderSnapshot(symbol, 0, List.of(), List.of());
+        send(session, new TextMessage(objectMapper.writeValueAsString(new SnapshotMessage("ORDER_BOOK_SNAPSHOT", snapshot))));
+    }
+
+    private void send(WebSocketSession session, TextMessage message) {
+        if (session.isOpen()) {
+            try {
+                session.sendMessage(message);
+            } catch (IOException | IllegalStateException e) {
+                log.error("Failed to send market-by-order message to session {}", session.getId(), e);
+            }
+        }
+    }
+
+    // Message DTOs
+    @lombok.Data
+    @lombok.NoArgsConstructor
+    @lombok.AllArgsConstructor
+    private static class WebSocketMessage {
+        private String type;
+        private String symbol;
+        private Long fromSequence;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    private static class EventsMessage {
+        private String type;
+        private String symbol;
+        private List<OrderBookEvent> events;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    private static class SnapshotMessage {
+        private String type;
+        private MarketByOrderSnapshot snapshot;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    private static class PongMessage {
+        private String type;
+        private LocalDateTime timestamp;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    private static class ErrorMessage {
+        private String type;
+        private String message;
+        private LocalDateTime timestamp;
+    }
+}
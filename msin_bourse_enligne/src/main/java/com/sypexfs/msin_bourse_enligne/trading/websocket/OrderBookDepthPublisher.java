@@ -0,0 +1,81 @@
+package com.sypexfs.msin_bourse_enligne.trading.websocket;
+
+import com.sypexfs.msin_bourse_enligne.market.websocket.MarketWebSocketHandler;
+import com.sypexfs.msin_bourse_enligne.trading.matching.DepthUpdate;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderBook;
+import com.sypexfs.msin_bourse_enligne.trading.matching.OrderMatchingEngine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Market-by-price feed on the market.depth:{symbol} channel of /ws/market
+ * Level changes recorded by the books are drained every interval, so updates to the same
+ * level within an interval are conflated, and sent as "delta" messages. A "snapshot" with
+ * the full depth and its sequence is sent to new subscribers and then periodically.
+ * Clients apply the deltas whose sequence is above the snapshot's.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OrderBookDepthPublisher {
+
+    private static final String CHANNEL_PREFIX = "market.depth:";
+
+    private final OrderMatchingEngine matchingEngine;
+    private final MarketWebSocketHandler webSocketHandler;
+
+    @Value("${app.trading.market-data.depth-snapshot-interval-ms:30000}")
+    private long snapshotIntervalMs;
+
+    // Subscribers already sent a snapshot, per channel
+    private final Map<String, Set<String>> knownSubscribers = new ConcurrentHashMap<>();
+    private long lastSnapshotAt;
+
+    /**
+     * Deltas and snapshots go out from this single task so a client never sees them out of order
+     */
+    @Scheduled(fixedDelayString = "${app.trading.market-data.depth-interval-ms:50}")
+    public void publish() {
+        try {
+            long now = System.currentTimeMillis();
+            boolean snapshotDue = now - lastSnapshotAt >= snapshotIntervalMs;
+            if (snapshotDue) {
+                lastSnapshotAt = now;
+            }
+
+            for (String symbol : matchingEngine.getAllSymbols()) {
+                OrderBook orderBook = matchingEngine.getOrderBook(symbol);
+                if (orderBook == null) {
+                    continue;
+                }
+                // Always drain, books must not accumulate changes while nobody listens
+                List<DepthUpdate> updates = orderBook.drainDepthUpdates();
+
+                String channel = CHANNEL_PREFIX + symbol;
+                Set<String> subscribers = webSocketHandler.getSubscribers(channel);
+                if (subscribers.isEmpty()) {
+                    knownSubscribers.remove(channel);
+                    continue;
+                }
+
+                if (!updates.isEmpty()) {
+                    webSocketHandler.broadcast(channel, "delta", updates);
+                }
+                Set<String> known = knownSubscribers.put(channel, subscribers);
+                if (snapshotDue || known == null || !known.containsAll(subscribers)) {
+                    webSocketHandler.broadcast(channel, "snapshot", orderBook.getDepth(Integer.MAX_VALUE));
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error publishing order book depth", e);
+        }
+    }
+}
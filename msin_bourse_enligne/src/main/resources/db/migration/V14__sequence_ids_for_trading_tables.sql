@@ -0,0 +1,48 @@
+-- Sequence-based ids for orders, user transactions, order history and market transactions
+-- V14__sequence_ids_for_trading_tables.sql
+--
+-- Identity ids make Hibernate insert row by row. The entities now draw ids from these
+-- sequences in blocks of 50 (pooled-lo: the sequence value is the first id of a block).
+-- Existing tables lose their identity or serial default, the sequence starts after the
+-- highest id and becomes the column default so plain SQL inserts keep working.
+-- Tables not created yet are left to Hibernate, only their sequence is created here.
+
+DO $$
+DECLARE
+    t RECORD;
+    qualified_table TEXT;
+    qualified_sequence TEXT;
+    old_sequence TEXT;
+    next_id BIGINT;
+BEGIN
+    FOR t IN SELECT * FROM (VALUES
+        ('trading_schema', 'orders', 'orders_seq'),
+        ('trading_schema', 'user_transactions', 'user_transactions_seq'),
+        ('trading_schema', 'order_history', 'order_history_seq'),
+        ('market_schema', 'market_transactions', 'market_transactions_seq')
+    ) AS v(schema_name, table_name, sequence_name)
+    LOOP
+        qualified_table := format('%I.%I', t.schema_name, t.table_name);
+        qualified_sequence := format('%I.%I', t.schema_name, t.sequence_name);
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %s INCREMENT BY 50', qualified_sequence);
+
+        IF to_regclass(qualified_table) IS NOT NULL THEN
+            IF EXISTS (SELECT 1 FROM information_schema.columns
+                       WHERE table_schema = t.schema_name AND table_name = t.table_name
+                         AND column_name = 'id' AND is_identity = 'YES') THEN
+                EXECUTE format('ALTER TABLE %s ALTER COLUMN id DROP IDENTITY', qualified_table);
+            ELSE
+                old_sequence := pg_get_serial_sequence(qualified_table, 'id');
+                IF old_sequence IS NOT NULL THEN
+                    EXECUTE format('ALTER TABLE %s ALTER COLUMN id DROP DEFAULT', qualified_table);
+                    EXECUTE format('DROP SEQUENCE %s', old_sequence);
+                END IF;
+            END IF;
+
+            EXECUTE format('SELECT COALESCE(MAX(id), 0) + 1 FROM %s', qualified_table) INTO next_id;
+            PERFORM setval(qualified_sequence, next_id, false);
+            EXECUTE format('ALTER TABLE %s ALTER COLUMN id SET DEFAULT nextval(%L)', qualified_table, qualified_sequence);
+            EXECUTE format('ALTER SEQUENCE %s OWNED BY %s.id', qualified_sequence, qualified_table);
+        END IF;
+    END LOOP;
+END $$;
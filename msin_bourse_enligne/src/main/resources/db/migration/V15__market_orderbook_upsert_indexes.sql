@@ -0,0 +1,34 @@
+-- Indexes for the set-based market orderbook writes
+-- V15__market_orderbook_upsert_indexes.sql
+--
+-- Rows are upserted with ON CONFLICT (order_market_id), which needs a unique index on
+-- that column alone. Tables created before the column was declared unique may hold
+-- several rows per order: the most recent one is kept. Removed orders are purged by
+-- age, a partial index keeps that scan off the live rows.
+-- A table not created yet gets its unique constraint from Hibernate.
+
+DO $$
+BEGIN
+    IF to_regclass('market_schema.market_orderbook') IS NULL THEN
+        RETURN;
+    END IF;
+
+    IF NOT EXISTS (
+        SELECT 1
+        FROM pg_index i
+        JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = i.indkey[0]
+        WHERE i.indrelid = 'market_schema.market_orderbook'::regclass
+          AND i.indisunique AND i.indnatts = 1 AND i.indpred IS NULL
+          AND a.attname = 'order_market_id'
+    ) THEN
+        DELETE FROM market_schema.market_orderbook o
+        USING market_schema.market_orderbook newer
+        WHERE newer.order_market_id = o.order_market_id AND newer.id > o.id;
+
+        CREATE UNIQUE INDEX uk_orderbook_order_market_id
+            ON market_schema.market_orderbook (order_market_id);
+    END IF;
+
+    CREATE INDEX IF NOT EXISTS idx_orderbook_deleted_updated_at
+        ON market_schema.market_orderbook (updated_at) WHERE delete;
+END $$;
@@ -0,0 +1,153 @@
+-- Monthly range partitions for orders and market transactions
+-- V16__partition_orders_and_market_transactions.sql
+--
+-- orders is partitioned on date_entry and market_transactions on date_trans, one partition
+-- per calendar month named <table>_pYYYY_MM. Date bounded queries only read the months they
+-- cover and "latest N" queries read the newest partition first and stop there.
+-- Existing rows are copied into the partitioned tables and the old tables dropped. Their
+-- foreign keys from order_history and user_transactions go with them: a partitioned table
+-- can only be referenced through its whole key, (id, date_entry) for orders. For the same
+-- reason exec_id is now unique per trade date.
+-- Partitions from the oldest row to three months ahead are created here, TablePartitionManager
+-- keeps creating them ahead of time and detaches the expired ones.
+
+-- Move the unpartitioned tables aside, keeping their sequences
+DO $$
+DECLARE
+    t RECORD;
+BEGIN
+    FOR t IN SELECT * FROM (VALUES
+        ('trading_schema', 'orders', 'orders_seq'),
+        ('market_schema', 'market_transactions', 'market_transactions_seq')
+    ) AS v(schema_name, table_name, sequence_name)
+    LOOP
+        IF EXISTS (SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+                   WHERE n.nspname = t.schema_name AND c.relname = t.table_name AND c.relkind = 'r') THEN
+            EXECUTE format('ALTER SEQUENCE %I.%I OWNED BY NONE', t.schema_name, t.sequence_name);
+            EXECUTE format('ALTER TABLE %I.%I RENAME TO %I', t.schema_name, t.table_name, t.table_name || '_unpartitioned');
+        END IF;
+    END LOOP;
+END $$;
+
+CREATE TABLE trading_schema.orders (
+    id BIGINT NOT NULL DEFAULT nextval('trading_schema.orders_seq'),
+    user_id BIGINT NOT NULL,
+    sign INTEGER NOT NULL,
+    price NUMERIC(15, 4),
+    stop_price NUMERIC(15, 4),
+    displayed_quantity NUMERIC(15, 2),
+    quantity NUMERIC(15, 2) NOT NULL,
+    order_amount NUMERIC(20, 2),
+    date_order DATE,
+    date_expiry DATE,
+    time_order TIME(6),
+    time_expiry TIME(6),
+    date_entry TIMESTAMP(6) NOT NULL,
+    exec_qty NUMERIC(15, 2),
+    exec_avg_price NUMERIC(15, 4),
+    expiry_type_id VARCHAR(50),
+    stat_id VARCHAR(50),
+    order_type_id VARCHAR(50),
+    broker_id BIGINT,
+    cash_account_id BIGINT,
+    entity_id BIGINT,
+    portf_id BIGINT,
+    sub_portf_id BIGINT,
+    sec_account_id BIGINT,
+    sec_id BIGINT,
+    symbol VARCHAR(20) NOT NULL,
+    sub_red_type_id VARCHAR(50),
+    external_ref VARCHAR(100),
+    class_id VARCHAR(50),
+    account_type VARCHAR(50),
+    stp_mode VARCHAR(20),
+    created_at TIMESTAMP(6) NOT NULL,
+    updated_at TIMESTAMP(6)
+) PARTITION BY RANGE (date_entry);
+
+CREATE TABLE market_schema.market_transactions (
+    id BIGINT NOT NULL DEFAULT nextval('market_schema.market_transactions_seq'),
+    market_place VARCHAR(50),
+    sec_id VARCHAR(50),
+    exec_id VARCHAR(100) NOT NULL,
+    exec_type VARCHAR(50),
+    side VARCHAR(10),
+    prev_exec_id VARCHAR(100),
+    date_trans TIMESTAMP(6) NOT NULL,
+    symbol VARCHAR(20) NOT NULL,
+    quantity NUMERIC(15, 2),
+    price NUMERIC(15, 4),
+    sequence VARCHAR(50),
+    trade_type VARCHAR(50),
+    order_id VARCHAR(100),
+    cancel BOOLEAN NOT NULL,
+    nano_second NUMERIC(20, 9),
+    created_at TIMESTAMP(6) NOT NULL
+) PARTITION BY RANGE (date_trans);
+
+-- Create the monthly partitions, copy the old rows and drop the old tables
+DO $$
+DECLARE
+    t RECORD;
+    old_table TEXT;
+    first_month DATE;
+    last_month DATE;
+    month DATE;
+    columns TEXT;
+BEGIN
+    FOR t IN SELECT * FROM (VALUES
+        ('trading_schema', 'orders', 'date_entry'),
+        ('market_schema', 'market_transactions', 'date_trans')
+    ) AS v(schema_name, table_name, key_column)
+    LOOP
+        old_table := format('%I.%I', t.schema_name, t.table_name || '_unpartitioned');
+        first_month := date_trunc('month', CURRENT_DATE);
+        last_month := date_trunc('month', CURRENT_DATE) + INTERVAL '3 months';
+
+        IF to_regclass(old_table) IS NOT NULL THEN
+            EXECUTE format('SELECT LEAST(date_trunc(''month'', MIN(%1$I)), $1), GREATEST(date_trunc(''month'', MAX(%1$I)), $2) FROM %2$s',
+                           t.key_column, old_table)
+                INTO first_month, last_month USING first_month, last_month;
+        END IF;
+
+        month := first_month;
+        WHILE month <= last_month LOOP
+            EXECUTE format('CREATE TABLE %I.%I PARTITION OF %I.%I FOR VALUES FROM (%L) TO (%L)',
+                           t.schema_name, t.table_name || to_char(month, '"_p"YYYY_MM'),
+                           t.schema_name, t.table_name, month, (month + INTERVAL '1 month')::DATE);
+            month := (month + INTERVAL '1 month')::DATE;
+        END LOOP;
+
+        IF to_regclass(old_table) IS NOT NULL THEN
+            SELECT string_agg(quote_ident(c.column_name), ', ' ORDER BY c.ordinal_position) INTO columns
+            FROM information_schema.columns c
+            WHERE c.table_schema = t.schema_name AND c.table_name = t.table_name
+              AND EXISTS (SELECT 1 FROM information_schema.columns o
+                          WHERE o.table_schema = t.schema_name AND o.table_name = t.table_name || '_unpartitioned'
+                            AND o.column_name = c.column_name);
+            EXECUTE format('INSERT INTO %I.%I (%s) SELECT %s FROM %s', t.schema_name, t.table_name, columns, columns, old_table);
+            EXECUTE format('DROP TABLE %s CASCADE', old_table);
+        END IF;
+    END LOOP;
+END $$;
+
+ALTER TABLE trading_schema.orders ADD CONSTRAINT orders_pkey PRIMARY KEY (id, date_entry);
+CREATE INDEX idx_orders_user ON trading_schema.orders (user_id);
+CREATE INDEX idx_orders_symbol ON trading_schema.orders (symbol);
+CREATE INDEX idx_orders_status ON trading_schema.orders (stat_id);
+CREATE INDEX idx_orders_date ON trading_schema.orders (date_entry);
+CREATE INDEX idx_orders_user_status ON trading_schema.orders (user_id, stat_id);
+CREATE INDEX idx_orders_user_date ON trading_schema.orders (user_id, date_entry);
+CREATE INDEX idx_orders_symbol_date ON trading_schema.orders (symbol, date_entry);
+ALTER SEQUENCE trading_schema.orders_seq OWNED BY trading_schema.orders.id;
+
+ALTER TABLE market_schema.market_transactions ADD CONSTRAINT market_transactions_pkey PRIMARY KEY (id, date_trans);
+ALTER TABLE market_schema.market_transactions ADD CONSTRAINT uk_transactions_exec_id_date UNIQUE (exec_id, date_trans);
+CREATE INDEX idx_transactions_symbol ON market_schema.market_transactions (symbol);
+CREATE INDEX idx_transactions_date ON market_schema.market_transactions (date_trans);
+CREATE INDEX idx_transactions_exec_id ON market_schema.market_transactions (exec_id);
+CREATE INDEX idx_transactions_symbol_date ON market_schema.market_transactions (symbol, date_trans);
+ALTER SEQUENCE market_schema.market_transactions_seq OWNED BY market_schema.market_transactions.id;
+
+ANALYZE trading_schema.orders;
+ANALYZE market_schema.market_transactions;
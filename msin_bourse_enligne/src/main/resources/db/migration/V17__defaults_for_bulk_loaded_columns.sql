@@ -0,0 +1,32 @@
+-- Defaults for the market_schema columns the application always fills itself
+-- V17__defaults_for_bulk_loaded_columns.sql
+--
+-- Rows loaded with COPY (MarketDataBulkLoader) only carry the columns of their file.
+-- created_at and the flags are NOT NULL without a default when Hibernate created the
+-- table, so every file would have to repeat them. Tables not created yet are skipped.
+
+DO $$
+DECLARE
+    c RECORD;
+BEGIN
+    FOR c IN
+        SELECT cl.relname AS table_name, a.attname AS column_name
+        FROM pg_attribute a
+        JOIN pg_class cl ON cl.oid = a.attrelid
+        JOIN pg_namespace n ON n.oid = cl.relnamespace
+        WHERE n.nspname = 'market_schema' AND cl.relkind IN ('r', 'p') AND NOT cl.relispartition
+          AND a.attname = 'created_at' AND NOT a.atthasdef AND NOT a.attisdropped
+    LOOP
+        EXECUTE format('ALTER TABLE market_schema.%I ALTER COLUMN created_at SET DEFAULT CURRENT_TIMESTAMP', c.table_name);
+    END LOOP;
+
+    IF to_regclass('market_schema.market_transactions') IS NOT NULL THEN
+        ALTER TABLE market_schema.market_transactions ALTER COLUMN cancel SET DEFAULT false;
+    END IF;
+
+    IF to_regclass('market_schema.market_orderbook') IS NOT NULL THEN
+        ALTER TABLE market_schema.market_orderbook ALTER COLUMN is_own_order SET DEFAULT false;
+        ALTER TABLE market_schema.market_orderbook ALTER COLUMN delete SET DEFAULT false;
+        ALTER TABLE market_schema.market_orderbook ALTER COLUMN delete_all SET DEFAULT false;
+    END IF;
+END $$;
@@ -0,0 +1,55 @@
+-- One current row per symbol in market_summaries, past states in market_summary_history
+-- V18__market_summary_current_and_history.sql
+--
+-- market_summaries is read as the current state of each instrument but nothing kept it to
+-- one row per symbol: the V5 and V11 seeds overlap and every write could add a row, so the
+-- "latest" lookups sorted all the rows of a symbol. It is now unique on symbol and written
+-- with INSERT ... ON CONFLICT (symbol) (MarketSummaryWriter), quotes, the overview and the
+-- gainers/losers read one small row per instrument.
+-- Every write also appends a snapshot to market_summary_history, off the trading path
+-- (MarketSummaryHistoryRecorder). The history serves the date range queries and keeps the
+-- rows dropped here.
+
+CREATE TABLE market_schema.market_summary_history (
+    id BIGSERIAL PRIMARY KEY,
+    symbol VARCHAR(20) NOT NULL,
+    sec_id VARCHAR(50),
+    price NUMERIC(15, 4),
+    variation NUMERIC(10, 4),
+    opening_price NUMERIC(15, 4),
+    closing_price NUMERIC(15, 4),
+    higher_price NUMERIC(15, 4),
+    lower_price NUMERIC(15, 4),
+    vwap NUMERIC(15, 4),
+    quantity NUMERIC(15, 2),
+    volume NUMERIC(15, 2),
+    date_trans TIMESTAMP(6) NOT NULL,
+    created_at TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_summary_history_symbol_date ON market_schema.market_summary_history (symbol, date_trans);
+
+INSERT INTO market_schema.market_summary_history
+    (symbol, sec_id, price, variation, opening_price, closing_price, higher_price, lower_price,
+     vwap, quantity, volume, date_trans, created_at)
+SELECT symbol, sec_id, price, variation, opening_price, closing_price, higher_price, lower_price,
+       vwap, quantity, volume, COALESCE(date_trans, date_update, created_at), created_at
+FROM market_schema.market_summaries
+WHERE symbol IS NOT NULL
+ORDER BY COALESCE(date_trans, date_update, created_at), id;
+
+-- Keep the latest row of each symbol
+DELETE FROM market_schema.market_summaries WHERE symbol IS NULL;
+
+DELETE FROM market_schema.market_summaries s
+USING (
+    SELECT id, ROW_NUMBER() OVER (PARTITION BY symbol ORDER BY date_trans DESC NULLS LAST, id DESC) AS rn
+    FROM market_schema.market_summaries
+) ranked
+WHERE s.id = ranked.id AND ranked.rn > 1;
+
+ALTER TABLE market_schema.market_summaries ALTER COLUMN symbol SET NOT NULL;
+DROP INDEX IF EXISTS market_schema.idx_summaries_symbol;
+CREATE UNIQUE INDEX uk_summaries_symbol ON market_schema.market_summaries (symbol);
+
+ANALYZE market_schema.market_summaries;
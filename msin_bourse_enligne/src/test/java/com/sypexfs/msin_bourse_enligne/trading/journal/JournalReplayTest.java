@@ -0,0 +1,172 @@
+package com.sypexfs.msin_bourse_enligne.trading.journal;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cold start from the journal: orders survive the record encoding and replay rebuilds them as they rest,
+ * fills the execution pipeline had not written are handed back after a restart
+ */
+class JournalReplayTest {
+
+    // Entered days before the capture, as an order resting since then
+    private static final LocalDateTime ENTERED = LocalDateTime.now().minusDays(3).truncatedTo(ChronoUnit.MILLIS);
+
+    @TempDir
+    Path journalDir;
+
+    private long sequence;
+
+    @Test
+    void recoveredOrderKeepsItsFields() {
+        Order order = restingOrder();
+
+        Order recovered = JournalReplay.toOrder(roundTrip(JournalRecord.accepted(order)));
+
+        assertThat(recovered.getId()).isEqualTo(order.getId());
+        assertThat(recovered.getUserId()).isEqualTo(order.getUserId());
+        assertThat(recovered.getSymbol()).isEqualTo(order.getSymbol());
+        assertThat(recovered.getSign()).isEqualTo(order.getSign());
+        assertThat(recovered.getOrderTypeId()).isEqualTo(order.getOrderTypeId());
+        assertThat(recovered.getPrice()).isEqualByComparingTo(order.getPrice());
+        assertThat(recovered.getQuantity()).isEqualByComparingTo(order.getQuantity());
+        assertThat(recovered.getExecQty()).isEqualByComparingTo(order.getExecQty());
+        assertThat(recovered.getDisplayedQuantity()).isEqualByComparingTo(order.getDisplayedQuantity());
+        assertThat(recovered.getStatId()).isEqualTo("PARTIAL");
+        assertThat(recovered.getExpiryTypeId()).isEqualTo(order.getExpiryTypeId());
+        assertThat(recovered.getDateExpiry()).isEqualTo(order.getDateExpiry());
+        assertThat(recovered.getTimeExpiry()).isEqualTo(order.getTimeExpiry());
+        assertThat(recovered.getDateEntry()).isEqualTo(ENTERED);
+        assertThat(recovered.getStpMode()).isEqualTo("DECREMENT");
+    }
+
+    @Test
+    void recoveredStopKeepsItsStopPrice() {
+        Order order = restingOrder();
+        order.setOrderTypeId("STOP_LIMIT");
+        order.setStopPrice(new BigDecimal("101.50"));
+        order.setExecQty(BigDecimal.ZERO);
+
+        Order recovered = JournalReplay.toOrder(roundTrip(JournalRecord.accepted(order)));
+
+        assertThat(recovered.getStopPrice()).isEqualByComparingTo("101.50");
+        assertThat(recovered.getStatId()).isEqualTo("PENDING");
+    }
+
+    @Test
+    void replayKeepsEntryTimeAndModeThroughFillsAndAmends() {
+        Order order = restingOrder();
+        JournalReplay replay = new JournalReplay(0);
+        replay.apply(sequenced(JournalRecord.accepted(order)));
+
+        order.setQuantity(new BigDecimal("80"));
+        replay.apply(sequenced(JournalRecord.amended(order)));
+
+        List<Order> open = replay.getOpenOrders();
+        assertThat(open).hasSize(1);
+        assertThat(open.get(0).getQuantity()).isEqualByComparingTo("80");
+        assertThat(open.get(0).getExecQty()).isEqualByComparingTo("30");
+        assertThat(open.get(0).getDateEntry()).isEqualTo(ENTERED);
+        assertThat(open.get(0).getStpMode()).isEqualTo("DECREMENT");
+    }
+
+    @Test
+    void orderWithoutEntryTimeIsRecoveredAtCaptureTime() {
+        Order order = restingOrder();
+        order.setDateEntry(null);
+
+        JournalRecord record = roundTrip(JournalRecord.accepted(order));
+
+        assertThat(record.getDateEntry()).isEqualTo(record.getTimestamp());
+        assertThat(JournalReplay.toOrder(record).getStpMode()).isEqualTo("DECREMENT");
+    }
+
+    @Test
+    void fillsPastTheWatermarkAreReplayedAfterARestart() throws IOException {
+        OrderJournal journal = openJournal();
+        Order buy = restingOrder();
+        Order sell = restingOrder();
+        sell.setId(43L);
+        sell.setSign(-1);
+        sell.setExecQty(BigDecimal.ZERO);
+
+        long written = journal.fill(buy, sell, 400, 1_002_500);
+        long auction = journal.auctionFill(buy, sell, 200, 1_002_500);
+        long writtenOutOfOrder = journal.fill(buy, sell, 100, 1_002_500);
+        journal.fillApplied(written);
+        journal.fillApplied(writtenOutOfOrder);
+        journal.fillApplied(auction);
+        assertThat(journal.getAppliedSequence()).isEqualTo(auction - 1);
+        journal.close();
+
+        OrderJournal reopened = openJournal();
+        List<JournalRecord> fills = reopened.getUnappliedFills();
+
+        assertThat(fills).extracting(JournalRecord::getSequence).containsExactly(auction, writtenOutOfOrder);
+        assertThat(fills.get(0).getOrderType()).isEqualTo(JournalRecord.AUCTION_FILL);
+        assertThat(fills.get(0).getExecLots()).isEqualTo(3_200);
+        assertThat(fills.get(0).getRefExecLots()).isEqualTo(200);
+        reopened.fillApplied(auction);
+        reopened.fillApplied(auction);
+        assertThat(reopened.getAppliedSequence()).isEqualTo(writtenOutOfOrder - 1);
+        reopened.fillApplied(writtenOutOfOrder);
+        assertThat(reopened.getAppliedSequence()).isEqualTo(reopened.getLastSequence());
+        reopened.close();
+    }
+
+    private OrderJournal openJournal() throws IOException {
+        OrderJournal journal = new OrderJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", journalDir.toString());
+        ReflectionTestUtils.setField(journal, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(journal, "fsyncPolicy", FsyncPolicy.BATCH);
+        journal.open();
+        return journal;
+    }
+
+    private Order restingOrder() {
+        Order order = new Order();
+        order.setId(42L);
+        order.setUserId(7L);
+        order.setSymbol("ATW");
+        order.setSign(1);
+        order.setOrderTypeId("LIMIT");
+        order.setPrice(new BigDecimal("100.25"));
+        order.setQuantity(new BigDecimal("100"));
+        order.setExecQty(new BigDecimal("30"));
+        order.setDisplayedQuantity(new BigDecimal("10"));
+        order.setExpiryTypeId("GTD");
+        order.setDateExpiry(LocalDate.now().plusDays(5));
+        order.setTimeExpiry(LocalTime.of(15, 30));
+        order.setDateEntry(ENTERED);
+        order.setStpMode("DECREMENT");
+        return order;
+    }
+
+    private JournalRecord sequenced(JournalRecord record) {
+        record.assignSequence(++sequence);
+        return roundTrip(record);
+    }
+
+    private static JournalRecord roundTrip(JournalRecord record) {
+        ByteBuffer buffer = ByteBuffer.allocate(record.encodedLength());
+        record.encode(buffer);
+        assertThat(buffer.hasRemaining()).isFalse();
+        buffer.flip();
+        return JournalRecord.decode(buffer);
+    }
+}
@@ -0,0 +1,164 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import com.sypexfs.msin_bourse_enligne.trading.journal.FsyncPolicy;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderBookSnapshotStore;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderJournal;
+import com.sypexfs.msin_bourse_enligne.trading.repository.MarketOrderbookWriter;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderHistoryRepository;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderRepository;
+import jakarta.persistence.TransactionRequiredException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Matching engine over mocked repositories, market data and pipeline, journal disabled unless a directory is given
+ * Order writes fail outside a transaction as the JPA modifying queries do
+ */
+final class EngineFixture {
+
+    static final String SYMBOL = "TEST";
+
+    final OrderRepository orderRepository = mock(OrderRepository.class);
+    final OrderHistoryRepository orderHistoryRepository = mock(OrderHistoryRepository.class);
+    final MarketDataService marketDataService = mock(MarketDataService.class);
+    final ExecutionPersistencePipeline pipeline = mock(ExecutionPersistencePipeline.class);
+    final MarketOrderbookWriter marketOrderbookWriter = mock(MarketOrderbookWriter.class);
+    final TransactionTemplate transactionTemplate = new TransactionTemplate(new LocalTransactionManager());
+    final OrderJournal journal;
+    final OrderMatchingEngine engine;
+
+    private long nextId = 1;
+
+    EngineFixture() {
+        this(new OrderJournal(), new OrderBookSnapshotStore());
+    }
+
+    /**
+     * Journal and snapshots kept in a directory, a second fixture on it sees what a restarted node sees
+     */
+    EngineFixture(Path dataDir) {
+        this(journal(dataDir.resolve("journal")), snapshotStore(dataDir.resolve("snapshots")));
+    }
+
+    private EngineFixture(OrderJournal journal, OrderBookSnapshotStore snapshotStore) {
+        when(orderRepository.updateMatchingState(anyLong(), any(), any(), any(), any(), any()))
+            .thenAnswer(invocation -> requireTransaction());
+        when(orderRepository.cancelOpenOrders(anyCollection()))
+            .thenAnswer(invocation -> requireTransaction());
+        this.journal = journal;
+        engine = new OrderMatchingEngine(orderRepository, orderHistoryRepository, marketDataService, pipeline,
+            journal, snapshotStore, marketOrderbookWriter, transactionTemplate);
+        ReflectionTestUtils.setField(engine, "configuredShards", 1);
+        ReflectionTestUtils.setField(engine, "defaultStpMode", SelfTradePrevention.CANCEL_NEWEST);
+        ReflectionTestUtils.setField(engine, "marketCloseTime", "15:30");
+        ReflectionTestUtils.setField(engine, "tradingDays", List.of("MONDAY", "TUESDAY", "WEDNESDAY", "THURSDAY", "FRIDAY"));
+        engine.initShards();
+    }
+
+    void price(String price) {
+        when(marketDataService.getCurrentPrice(SYMBOL)).thenReturn(price != null ? new BigDecimal(price) : null);
+    }
+
+    /**
+     * Submit an order the way the services do, inside their transaction
+     */
+    MatchingResult submit(Order order) {
+        return transactionTemplate.execute(status -> engine.processOrder(order));
+    }
+
+    Order limit(long userId, boolean buy, String price, String quantity) {
+        Order order = order(userId, buy, "LIMIT", quantity);
+        order.setPrice(new BigDecimal(price));
+        return order;
+    }
+
+    Order stop(long userId, boolean buy, String stopPrice, String quantity) {
+        Order order = order(userId, buy, "STOP", quantity);
+        order.setStopPrice(new BigDecimal(stopPrice));
+        return order;
+    }
+
+    private Order order(long userId, boolean buy, String type, String quantity) {
+        Order order = new Order();
+        order.setId(nextId++);
+        order.setUserId(userId);
+        order.setSymbol(SYMBOL);
+        order.setSign(buy ? 1 : -1);
+        order.setOrderTypeId(type);
+        order.setQuantity(new BigDecimal(quantity));
+        order.setExecQty(BigDecimal.ZERO);
+        order.setExpiryTypeId("GTC");
+        order.setStatId("PENDING");
+        order.setDateEntry(LocalDateTime.now());
+        return order;
+    }
+
+    /**
+     * Stop the journal as a shutdown does
+     */
+    void closeJournal() {
+        ReflectionTestUtils.invokeMethod(journal, "close");
+    }
+
+    private static OrderJournal journal(Path directory) {
+        OrderJournal journal = new OrderJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSizeMb", 1);
+        ReflectionTestUtils.setField(journal, "fsyncPolicy", FsyncPolicy.BATCH);
+        ReflectionTestUtils.invokeMethod(journal, "open");
+        return journal;
+    }
+
+    private static OrderBookSnapshotStore snapshotStore(Path directory) {
+        OrderBookSnapshotStore snapshotStore = new OrderBookSnapshotStore();
+        ReflectionTestUtils.setField(snapshotStore, "directory", directory.toString());
+        return snapshotStore;
+    }
+
+    private static int requireTransaction() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new TransactionRequiredException("Executing an update/delete query");
+        }
+        return 1;
+    }
+
+    /**
+     * Transaction manager without a resource, enough for synchronizations and the active flag
+     */
+    static final class LocalTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.portfolio.service.PortfolioUpdateService;
+import com.sypexfs.msin_bourse_enligne.trading.entity.UserTransaction;
+import com.sypexfs.msin_bourse_enligne.trading.journal.OrderJournal;
+import com.sypexfs.msin_bourse_enligne.trading.repository.MarketOrderbookWriter;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderHistoryRepository;
+import com.sypexfs.msin_bourse_enligne.trading.repository.OrderRepository;
+import com.sypexfs.msin_bourse_enligne.trading.repository.UserTransactionRepository;
+import com.sypexfs.msin_bourse_enligne.trading.service.TransactionSyncService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExecutionPersistencePipelineTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final UserTransactionRepository userTransactionRepository = mock(UserTransactionRepository.class);
+    private final OrderJournal journal = mock(OrderJournal.class);
+    private final ExecutionPersistencePipeline pipeline = new ExecutionPersistencePipeline(jdbcTemplate,
+        new TransactionTemplate(new EngineFixture.LocalTransactionManager()), mock(OrderRepository.class),
+        userTransactionRepository, mock(OrderHistoryRepository.class), mock(MarketOrderbookWriter.class),
+        mock(TransactionSyncService.class), mock(PortfolioUpdateService.class), journal);
+
+    private final UserTransaction aggressor = new UserTransaction();
+    private final UserTransaction passive = new UserTransaction();
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    @Test
+    void executionWaitsForThePassiveOrderRow() {
+        passiveUpdates(new int[][]{{0}}, new int[][]{{0}}, new int[][]{{1}});
+        start(5);
+
+        pipeline.publishAfterCommit(List.of(execution()));
+
+        await(() -> pipeline.getPersistedEvents() == 1);
+        assertThat(pipeline.getUnmatchedUpdates()).isEqualTo(2);
+        assertThat(pipeline.getFailedEvents()).isZero();
+        assertThat(pipeline.getPendingRetries()).isZero();
+        verify(userTransactionRepository, times(1)).saveAll(List.of(aggressor, passive));
+        verify(journal, timeout(1_000)).fillApplied(42L);
+    }
+
+    @Test
+    void executionFailsOnceTheRetriesRunOut() {
+        passiveUpdates(new int[][]{{0}});
+        start(2);
+
+        pipeline.publishAfterCommit(List.of(execution()));
+
+        await(() -> pipeline.getFailedEvents() == 1);
+        assertThat(pipeline.getUnmatchedUpdates()).isEqualTo(3);
+        assertThat(pipeline.getPersistedEvents()).isZero();
+        assertThat(pipeline.getPendingRetries()).isZero();
+        verify(userTransactionRepository, never()).saveAll(List.of(aggressor, passive));
+        verify(journal, never()).fillApplied(42L);
+    }
+
+    private void start(int retryAttempts) {
+        ReflectionTestUtils.setField(pipeline, "ringSize", 16);
+        ReflectionTestUtils.setField(pipeline, "batchSize", 10);
+        ReflectionTestUtils.setField(pipeline, "retryAttempts", retryAttempts);
+        ReflectionTestUtils.setField(pipeline, "retryDelayMs", 10L);
+        pipeline.start();
+    }
+
+    private void passiveUpdates(int[][] first, int[][]... next) {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class)))
+            .thenReturn(first, next);
+    }
+
+    private ExecutionEvent execution() {
+        return new ExecutionEvent(EngineFixture.SYMBOL, 7L, 2L, "PARTIAL", BigDecimal.ZERO, new BigDecimal("4"),
+            new BigDecimal("105"), new BigDecimal("6"), new BigDecimal("6"), LocalDateTime.now(), aggressor, passive, 42L);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition within 5s").isLessThan(deadline);
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+
+class MatchingEngineSchedulerTest {
+
+    private final EngineFixture fixture = new EngineFixture();
+    private final MatchingEngineScheduler scheduler =
+        new MatchingEngineScheduler(fixture.engine, fixture.marketDataService);
+
+    @Test
+    void stopTriggeredByThePollTradesAndIsWritten() {
+        fixture.price("100");
+        Order offer = fixture.limit(2L, false, "105", "10");
+        Order stop = fixture.stop(1L, true, "104", "4");
+        fixture.submit(offer);
+        fixture.submit(stop);
+        assertThat(fixture.engine.getOrderBook(EngineFixture.SYMBOL).getStopOrders()).containsExactly(stop);
+
+        fixture.price("104");
+        scheduler.checkStopOrders();
+
+        assertThat(fixture.engine.getOrderBook(EngineFixture.SYMBOL).getStopOrders()).isEmpty();
+        assertThat(stop.getStatId()).isEqualTo("FILLED");
+        verify(fixture.orderRepository).updateMatchingState(eq(stop.getId()), any(), eq("MARKET"), eq("FILLED"),
+            any(), argThat(execQty -> execQty.compareTo(new BigDecimal("4")) == 0));
+        verify(fixture.pipeline, atLeastOnce()).publishAfterCommit(argThat((List<ExecutionEvent> events) ->
+            events.size() == 1 && offer.getId().equals(events.get(0).getPassiveOrderId())));
+    }
+
+    @Test
+    void stopStaysWithoutAPrice() {
+        fixture.price("100");
+        Order stop = fixture.stop(1L, false, "95", "4");
+        fixture.submit(stop);
+
+        fixture.price(null);
+        scheduler.checkStopOrders();
+
+        assertThat(fixture.engine.getOrderBook(EngineFixture.SYMBOL).getStopOrders()).containsExactly(stop);
+    }
+}
@@ -0,0 +1,112 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderBookFillOrKillTest {
+
+    private static final long AGGRESSOR = 1L;
+    private static final long OTHER = 2L;
+
+    private final OrderBook orderBook = new OrderBook("TEST");
+    private long nextId = 1;
+
+    @Test
+    void fokLiquidityCountsOwnOrdersOnlyWithoutSelfTradePrevention() {
+        rest(OTHER, "100", "5", null);
+        rest(AGGRESSOR, "100", "5", null);
+
+        assertThat(hasLiquidity("8", SelfTradePrevention.NONE)).isTrue();
+        assertThat(hasLiquidity("8", SelfTradePrevention.CANCEL_NEWEST)).isFalse();
+        assertThat(hasLiquidity("6", SelfTradePrevention.CANCEL_OLDEST)).isFalse();
+    }
+
+    @Test
+    void fokFillableAheadOfOwnOrderPassesUnderEveryMode() {
+        rest(OTHER, "100", "5", null);
+        rest(AGGRESSOR, "100", "5", null);
+
+        for (SelfTradePrevention mode : SelfTradePrevention.values()) {
+            assertThat(hasLiquidity("5", mode)).as(mode.name()).isTrue();
+        }
+    }
+
+    @Test
+    void fokSkipsOwnOrdersUnderCancelOldest() {
+        rest(OTHER, "100", "5", null);
+        rest(AGGRESSOR, "100", "5", null);
+        rest(OTHER, "101", "5", null);
+
+        assertThat(hasLiquidity("10", SelfTradePrevention.CANCEL_OLDEST)).isTrue();
+        assertThat(hasLiquidity("11", SelfTradePrevention.CANCEL_OLDEST)).isFalse();
+        assertThat(hasLiquidity("10", SelfTradePrevention.CANCEL_NEWEST)).isFalse();
+    }
+
+    @Test
+    void fokUnderDecrementShrinksPastSmallerOwnOrders() {
+        rest(OTHER, "100", "5", null);
+        rest(AGGRESSOR, "100", "2", null);
+        rest(OTHER, "101", "5", null);
+
+        // 5 traded, the own 2 lots cancel 2 of the aggressor, 5 more trade at 101
+        assertThat(hasLiquidity("12", SelfTradePrevention.DECREMENT)).isTrue();
+        assertThat(hasLiquidity("13", SelfTradePrevention.DECREMENT)).isFalse();
+        // What is left on reaching the own order is not more than its size: the aggressor is cancelled
+        assertThat(hasLiquidity("7", SelfTradePrevention.DECREMENT)).isFalse();
+    }
+
+    @Test
+    void fokHiddenIcebergLotsQueueBehindOwnOrder() {
+        rest(OTHER, "100", "10", "2");
+        rest(AGGRESSOR, "100", "5", null);
+
+        assertThat(hasLiquidity("2", SelfTradePrevention.CANCEL_NEWEST)).isTrue();
+        assertThat(hasLiquidity("4", SelfTradePrevention.CANCEL_NEWEST)).isFalse();
+        assertThat(hasLiquidity("10", SelfTradePrevention.CANCEL_OLDEST)).isTrue();
+    }
+
+    @Test
+    void fokStopsAtTheLimit() {
+        rest(OTHER, "100", "5", null);
+        rest(OTHER, "102", "5", null);
+
+        assertThat(orderBook.hasLiquidityFor(true, ticks("101"), FixedPoint.toLots(new BigDecimal("6")),
+            AGGRESSOR, SelfTradePrevention.CANCEL_NEWEST)).isFalse();
+        assertThat(orderBook.hasLiquidityFor(true, ticks("102"), FixedPoint.toLots(new BigDecimal("6")),
+            AGGRESSOR, SelfTradePrevention.CANCEL_NEWEST)).isTrue();
+    }
+
+    private boolean hasLiquidity(String quantity, SelfTradePrevention mode) {
+        return orderBook.hasLiquidityFor(true, Long.MAX_VALUE, FixedPoint.toLots(new BigDecimal(quantity)), AGGRESSOR, mode);
+    }
+
+    private void rest(long userId, String price, String quantity, String displayed) {
+        Order order = order(userId, false, "LIMIT", quantity);
+        order.setPrice(new BigDecimal(price));
+        order.setDisplayedQuantity(displayed != null ? new BigDecimal(displayed) : null);
+        orderBook.addOrder(order);
+    }
+
+    private Order order(long userId, boolean buy, String type, String quantity) {
+        Order order = new Order();
+        order.setId(nextId++);
+        order.setUserId(userId);
+        order.setSymbol("TEST");
+        order.setSign(buy ? 1 : -1);
+        order.setOrderTypeId(type);
+        order.setQuantity(new BigDecimal(quantity));
+        order.setExecQty(BigDecimal.ZERO);
+        order.setStatId("PENDING");
+        order.setDateEntry(LocalDateTime.now());
+        return order;
+    }
+
+    private static long ticks(String price) {
+        return FixedPoint.toTicks(new BigDecimal(price));
+    }
+}
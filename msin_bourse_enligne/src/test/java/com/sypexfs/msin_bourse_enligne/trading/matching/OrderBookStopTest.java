@@ -0,0 +1,66 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderBookStopTest {
+
+    private static final long AGGRESSOR = 1L;
+
+    private final OrderBook orderBook = new OrderBook("TEST");
+    private long nextId = 1;
+
+    @Test
+    void stopAmendedInPlaceIsReindexedAtItsNewPrice() {
+        Order stop = stopOrder(true, "100");
+        orderBook.addStopOrder(stop);
+
+        // The engine copies the new stop price onto the book's instance before re-adding it
+        stop.setStopPrice(new BigDecimal("110"));
+        orderBook.addStopOrder(stop);
+
+        assertThat(orderBook.triggerStops(ticks("105"), ticks("105"))).isEmpty();
+        assertThat(orderBook.triggerStops(ticks("110"), ticks("110"))).containsExactly(stop);
+        assertThat(orderBook.triggerStops(ticks("120"), ticks("120"))).isEmpty();
+        assertThat(orderBook.getStopOrders()).isEmpty();
+    }
+
+    @Test
+    void removedStopNoLongerTriggers() {
+        Order stop = stopOrder(false, "90");
+        orderBook.addStopOrder(stop);
+        stop.setStopPrice(new BigDecimal("95"));
+
+        assertThat(orderBook.removeOrder(stop.getId())).isTrue();
+        assertThat(orderBook.triggerStops(ticks("80"), ticks("80"))).isEmpty();
+    }
+
+    private Order stopOrder(boolean buy, String stopPrice) {
+        Order order = order(AGGRESSOR, buy, "STOP", "10");
+        order.setStopPrice(new BigDecimal(stopPrice));
+        return order;
+    }
+
+    private Order order(long userId, boolean buy, String type, String quantity) {
+        Order order = new Order();
+        order.setId(nextId++);
+        order.setUserId(userId);
+        order.setSymbol("TEST");
+        order.setSign(buy ? 1 : -1);
+        order.setOrderTypeId(type);
+        order.setQuantity(new BigDecimal(quantity));
+        order.setExecQty(BigDecimal.ZERO);
+        order.setStatId("PENDING");
+        order.setDateEntry(LocalDateTime.now());
+        return order;
+    }
+
+    private static long ticks(String price) {
+        return FixedPoint.toTicks(new BigDecimal(price));
+    }
+}
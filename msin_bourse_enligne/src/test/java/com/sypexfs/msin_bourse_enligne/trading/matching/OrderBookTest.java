@@ -0,0 +1,83 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderBookTest {
+
+    private static final long OTHER = 2L;
+
+    private final OrderBook orderBook = new OrderBook("TEST");
+    private long nextId = 1;
+
+    @Test
+    void eventsAreKeptOnceAFeedDrainsTheBook() {
+        rest(OTHER, "100", "5", null);
+        assertThat(orderBook.drainOrderEvents()).isEmpty();
+        assertThat(orderBook.drainDepthUpdates()).isEmpty();
+        assertThat(orderBook.getMarketByOrder().getSequence()).isEqualTo(1);
+
+        rest(OTHER, "101", "8", "2");
+        assertThat(orderBook.removeOrder(1L)).isTrue();
+
+        assertThat(orderBook.drainOrderEvents()).satisfiesExactly(
+            add -> {
+                assertThat(add.getSequence()).isEqualTo(2);
+                assertThat(add.getType()).isEqualTo("ADD");
+                assertThat(add.getOrderId()).isEqualTo(2L);
+                assertThat(add.getSide()).isEqualTo("SELL");
+                assertThat(add.getPrice()).isEqualByComparingTo("101");
+                assertThat(add.getQuantity()).isEqualByComparingTo("2");
+                assertThat(add.getTradeQuantity()).isNull();
+            },
+            delete -> {
+                assertThat(delete.getSequence()).isEqualTo(3);
+                assertThat(delete.getType()).isEqualTo("DELETE");
+                assertThat(delete.getOrderId()).isEqualTo(1L);
+                assertThat(delete.getQuantity()).isEqualByComparingTo("0");
+            });
+        assertThat(orderBook.drainDepthUpdates()).extracting(DepthUpdate::getPrice)
+            .usingElementComparator(BigDecimal::compareTo)
+            .containsExactly(new BigDecimal("101"), new BigDecimal("100"));
+        assertThat(orderBook.drainOrderEvents()).isEmpty();
+    }
+
+    @Test
+    void undrainedEventsAreDroppedPastTheCap() {
+        orderBook.drainOrderEvents();
+        for (int i = 0; i <= OrderBook.MAX_PENDING_EVENTS; i++) {
+            rest(OTHER, "100", "1", null);
+        }
+
+        // Only the event after the drop is left, readers see the gap in the sequence
+        assertThat(orderBook.drainOrderEvents()).singleElement()
+            .satisfies(event -> assertThat(event.getSequence()).isEqualTo(OrderBook.MAX_PENDING_EVENTS + 1));
+        assertThat(orderBook.getDroppedOrderEvents()).isEqualTo(OrderBook.MAX_PENDING_EVENTS);
+    }
+
+    private void rest(long userId, String price, String quantity, String displayed) {
+        Order order = order(userId, false, "LIMIT", quantity);
+        order.setPrice(new BigDecimal(price));
+        order.setDisplayedQuantity(displayed != null ? new BigDecimal(displayed) : null);
+        orderBook.addOrder(order);
+    }
+
+    private Order order(long userId, boolean buy, String type, String quantity) {
+        Order order = new Order();
+        order.setId(nextId++);
+        order.setUserId(userId);
+        order.setSymbol("TEST");
+        order.setSign(buy ? 1 : -1);
+        order.setOrderTypeId(type);
+        order.setQuantity(new BigDecimal(quantity));
+        order.setExecQty(BigDecimal.ZERO);
+        order.setStatId("PENDING");
+        order.setDateEntry(LocalDateTime.now());
+        return order;
+    }
+}
@@ -0,0 +1,162 @@
+package com.sypexfs.msin_bourse_enligne.trading.matching;
+
+import com.sypexfs.msin_bourse_enligne.trading.entity.Order;
+import com.sypexfs.msin_bourse_enligne.trading.journal.JournalRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderMatchingEngineTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void selfTradeCancelIsWrittenAfterTheShardIsReleased() {
+        EngineFixture fixture = new EngineFixture();
+        fixture.price("100");
+        Order resting = fixture.limit(1L, false, "105", "10");
+        fixture.submit(resting);
+        List<Boolean> heldWhileWriting = recordShardHeld(fixture, resting.getId());
+        Order aggressor = fixture.limit(1L, true, "105", "4");
+        aggressor.setStpMode("CANCEL_OLDEST");
+
+        fixture.submit(aggressor);
+
+        verify(fixture.orderRepository).cancelOpenOrders(List.of(resting.getId()));
+        verify(fixture.marketOrderbookWriter).markDeleted(List.of(resting.getId()));
+        assertThat(heldWhileWriting).isNotEmpty().containsOnly(false);
+        assertThat(resting.getStatId()).isEqualTo("CANCELLED");
+        assertThat(fixture.engine.getOrderBook(EngineFixture.SYMBOL).getSellOrders()).isEmpty();
+    }
+
+    @Test
+    void selfTradeReductionIsWrittenAfterTheShardIsReleased() {
+        EngineFixture fixture = new EngineFixture();
+        fixture.price("100");
+        Order resting = fixture.limit(1L, false, "105", "10");
+        fixture.submit(resting);
+        List<Boolean> heldWhileWriting = recordShardHeld(fixture, resting.getId());
+        Order aggressor = fixture.limit(1L, true, "105", "4");
+        aggressor.setStpMode("DECREMENT");
+
+        fixture.submit(aggressor);
+
+        verify(fixture.orderRepository).updateMatchingState(eq(resting.getId()), any(), eq("LIMIT"), eq("PENDING"),
+            argThat(quantity -> quantity.compareTo(new BigDecimal("6")) == 0), any());
+        verify(fixture.marketOrderbookWriter).setQuantity(eq(resting.getId()),
+            argThat(quantity -> quantity.compareTo(new BigDecimal("6")) == 0));
+        assertThat(heldWhileWriting).isNotEmpty().containsOnly(false);
+        assertThat(fixture.engine.getOrderBook(EngineFixture.SYMBOL).getSellOrders())
+            .singleElement().satisfies(order -> assertThat(order.getRemainingQuantity()).isEqualByComparingTo("6"));
+    }
+
+    @Test
+    void stopEnteredWithoutAPriceRests() {
+        EngineFixture fixture = new EngineFixture();
+        Order stop = fixture.stop(1L, false, "95", "4");
+        Order stopLimit = fixture.stop(1L, false, "95", "4");
+        stopLimit.setOrderTypeId("STOP_LIMIT");
+        stopLimit.setPrice(new BigDecimal("94"));
+
+        fixture.price(null);
+        assertThat(fixture.submit(stop).getOrder().getStatId()).isEqualTo("PENDING");
+        fixture.price("0");
+        assertThat(fixture.submit(stopLimit).getOrder().getStatId()).isEqualTo("PENDING");
+
+        assertThat(stop.getOrderTypeId()).isEqualTo("STOP");
+        assertThat(stopLimit.getOrderTypeId()).isEqualTo("STOP_LIMIT");
+        assertThat(fixture.engine.getOrderBook(EngineFixture.SYMBOL).getStopOrders()).containsExactly(stop, stopLimit);
+    }
+
+    @Test
+    void recoveryHandsUnwrittenExecutionsBackToThePipeline() {
+        EngineFixture before = new EngineFixture(dataDir);
+        before.price("100");
+        before.submit(before.limit(2L, false, "105", "10"));
+        before.submit(before.limit(1L, true, "105", "4"));
+        before.submit(before.limit(3L, true, "105", "3"));
+        List<JournalRecord> fills = before.journal.getUnappliedFills();
+        assertThat(fills).hasSize(2);
+        long lostFill = fills.get(0).getSequence();
+        long writtenFill = fills.get(1).getSequence();
+        before.closeJournal();
+
+        // The rows as the database holds them: the aggressors were written with their transaction,
+        // the offer only got the second execution, which carries its cumulative quantity, before the stop
+        EngineFixture after = new EngineFixture(dataDir);
+        Order offer = after.limit(2L, false, "105", "10");
+        offer.setExecQty(new BigDecimal("7"));
+        offer.setExecAvgPrice(new BigDecimal("105"));
+        Order lostBuy = after.limit(1L, true, "105", "4");
+        lostBuy.setExecQty(new BigDecimal("4"));
+        Order writtenBuy = after.limit(3L, true, "105", "3");
+        writtenBuy.setExecQty(new BigDecimal("3"));
+        when(after.orderRepository.findAllById(anyCollection())).thenReturn(List.of(offer, lostBuy, writtenBuy));
+        when(after.orderHistoryRepository.findJournalSequencesAfter(anyLong()))
+            .thenReturn(List.<Object[]>of(new Object[]{offer.getId(), writtenFill}));
+
+        assertThat(after.engine.recoverOrderBooks()).isTrue();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ExecutionEvent>> published = ArgumentCaptor.forClass(List.class);
+        verify(after.pipeline).publishAfterCommit(published.capture());
+        assertThat(published.getValue()).singleElement().satisfies(event -> {
+            assertThat(event.getJournalSequence()).isEqualTo(lostFill);
+            assertThat(event.getPassiveOrderId()).isEqualTo(offer.getId());
+            assertThat(event.getPreviousExecQty()).isEqualByComparingTo("0");
+            assertThat(event.getPassiveExecQty()).isEqualByComparingTo("4");
+            assertThat(event.getPassiveRemainingQty()).isEqualByComparingTo("3");
+            assertThat(event.getPassiveStatus()).isEqualTo("PARTIAL");
+            assertThat(event.getAggressorTransaction().getOrderId()).isEqualTo(lostBuy.getId());
+            assertThat(event.getAggressorTransaction().getQuantity()).isEqualByComparingTo("4");
+            assertThat(event.getPassiveTransaction().getUserId()).isEqualTo(2L);
+        });
+        assertThat(after.engine.getOrderBook(EngineFixture.SYMBOL).getSellOrders())
+            .singleElement().satisfies(order -> assertThat(order.getRemainingQuantity()).isEqualByComparingTo("3"));
+
+        // The written fill is released, the watermark waits for the replayed one
+        assertThat(after.journal.getAppliedSequence()).isEqualTo(lostFill - 1);
+        after.journal.fillApplied(lostFill);
+        assertThat(after.journal.getAppliedSequence()).isEqualTo(after.journal.getLastSequence());
+        after.closeJournal();
+    }
+
+    /**
+     * Whether the shard was held at each write of the order's row
+     */
+    private static List<Boolean> recordShardHeld(EngineFixture fixture, Long orderId) {
+        MatchingShard[] shards = (MatchingShard[]) ReflectionTestUtils.getField(fixture.engine, "shards");
+        List<Boolean> held = new ArrayList<>();
+        doAnswer(invocation -> {
+            if (orderId.equals(invocation.getArgument(0))) {
+                held.add(shards[0].getLock().isHeldByCurrentThread());
+            }
+            return 1;
+        }).when(fixture.orderRepository).updateMatchingState(anyLong(), any(), any(), any(), any(), any());
+        doAnswer(invocation -> {
+            if (invocation.<Collection<Long>>getArgument(0).contains(orderId)) {
+                held.add(shards[0].getLock().isHeldByCurrentThread());
+            }
+            return 1;
+        }).when(fixture.orderRepository).cancelOpenOrders(anyCollection());
+        return held;
+    }
+}